@@ -0,0 +1,153 @@
+package com.example.booksmanager.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load against a running instance, e.g. '/books'
+ * Compare the default configuration with the production datasource profile, without load shedding,
+ * which would otherwise answer most of the requests with 429 or 503:
+ *      java -jar target/booksmanager-0.0.1-SNAPSHOT.jar $NO_SHEDDING
+ *      java -jar target/booksmanager-0.0.1-SNAPSHOT.jar $NO_SHEDDING --spring.profiles.active=prod
+ *      (NO_SHEDDING="--booksmanager.rate-limit.enabled=false --booksmanager.concurrency-limit.enabled=false")
+ *      mvn -Pbenchmark test-compile exec:java \
+ *          -Dexec.mainClass=com.example.booksmanager.benchmark.BooksThroughputBenchmark \
+ *          -Dexec.args="http://localhost:8080 /books 32 30 10"
+ * args: baseUrl path threads measureSeconds warmupSeconds
+ * Prints throughput, latency percentiles and, if /actuator/metrics is exposed,
+ * the connection pool wait time (hikaricp.connections.acquire) accumulated during the measurement.
+ * @author platoiscoding.com
+ */
+public class BooksThroughputBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        String path = args.length > 1 ? args[1] : "/books";
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int measureSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        int warmupSeconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        System.out.printf("warm-up: %ds against %s%s with %d threads%n", warmupSeconds, baseUrl, path, threads);
+        run(baseUrl + path, threads, warmupSeconds);
+
+        double[] acquireBefore = poolAcquire(baseUrl);
+        Result result = run(baseUrl + path, threads, measureSeconds);
+        double[] acquireAfter = poolAcquire(baseUrl);
+
+        System.out.printf("requests:    %d (%d errors)%n", result.requests, result.errors);
+        System.out.printf("throughput:  %.1f req/s%n", result.requests / (double) measureSeconds);
+        System.out.printf("latency ms:  p50 %.2f  p95 %.2f  p99 %.2f  max %.2f%n",
+                result.percentile(0.50), result.percentile(0.95), result.percentile(0.99), result.percentile(1.0));
+        if (acquireBefore != null && acquireAfter != null) {
+            double count = acquireAfter[0] - acquireBefore[0];
+            double totalSeconds = acquireAfter[1] - acquireBefore[1];
+            System.out.printf("pool waits:  %.0f acquisitions, %.3f ms mean wait, %.3f ms max wait%n",
+                    count, count == 0 ? 0 : totalSeconds * 1000 / count, acquireAfter[2] * 1000);
+        } else {
+            System.out.println("pool waits:  /actuator/metrics/hikaricp.connections.acquire not available");
+        }
+    }
+
+    private static Result run(String url, int threads, int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong errors = new AtomicLong();
+        List<long[]> latencies = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            long[] samples = new long[1 << 18];
+            latencies.add(samples);
+            Thread worker = new Thread(() -> {
+                int n = 0;
+                while (System.nanoTime() < deadline && n < samples.length - 1) {
+                    long start = System.nanoTime();
+                    if (!get(url)) {
+                        errors.incrementAndGet();
+                    }
+                    samples[++n] = System.nanoTime() - start;
+                }
+                samples[0] = n;
+                done.countDown();
+            });
+            worker.start();
+        }
+        done.await();
+        return new Result(latencies, errors.get());
+    }
+
+    private static boolean get(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    byte[] buffer = new byte[8192];
+                    while (in.read(buffer) != -1) {
+                        //drain, so the connection is kept alive
+                    }
+                }
+            }
+            return status < 400;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return {COUNT, TOTAL_TIME in s, MAX in s} of hikaricp.connections.acquire or null
+     */
+    private static double[] poolAcquire(String baseUrl) {
+        try (InputStream in = new URL(baseUrl + "/actuator/metrics/hikaricp.connections.acquire").openStream()) {
+            double[] values = new double[3];
+            for (JsonNode measurement : MAPPER.readTree(in).get("measurements")) {
+                String statistic = measurement.get("statistic").asText();
+                double value = measurement.get("value").asDouble();
+                if ("COUNT".equals(statistic)) values[0] = value;
+                if ("TOTAL_TIME".equals(statistic)) values[1] = value;
+                if ("MAX".equals(statistic)) values[2] = value;
+            }
+            return values;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static class Result {
+        private final long requests;
+        private final long errors;
+        private final long[] sorted;
+
+        Result(List<long[]> latencies, long errors) {
+            int total = 0;
+            for (long[] samples : latencies) total += (int) samples[0];
+            long[] all = new long[total];
+            int i = 0;
+            for (long[] samples : latencies) {
+                System.arraycopy(samples, 1, all, i, (int) samples[0]);
+                i += (int) samples[0];
+            }
+            Arrays.sort(all);
+            this.sorted = all;
+            this.requests = total;
+            this.errors = errors;
+        }
+
+        double percentile(double p) {
+            if (sorted.length == 0) return 0;
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+            return sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
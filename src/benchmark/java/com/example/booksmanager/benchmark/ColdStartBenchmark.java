@@ -0,0 +1,44 @@
+package com.example.booksmanager.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cold start and memory of the fat jar against the 'cds' build (plain jar + lib/ + AppCDS archive)
+ *      mvn -DskipTests package
+ *      mvn -Pcds -DskipTests package
+ *      mvn -Pbenchmark test-compile exec:java \
+ *          -Dexec.mainClass=com.example.booksmanager.benchmark.ColdStartBenchmark \
+ *          -Dexec.args="target/booksmanager-0.0.1-SNAPSHOT.jar target/cds prod 5 /books"
+ * args: fatJar cdsDirectory profiles runs path [extra application arguments...]
+ * The two variants are started alternately, so both see the same state of the machine and the database.
+ * Prints time to the first 200 on path, time until /actuator/health is UP and the RSS when ready.
+ * @author platoiscoding.com
+ */
+public class ColdStartBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String fatJar = args.length > 0 ? args[0] : "target/booksmanager-0.0.1-SNAPSHOT.jar";
+        String cdsDirectory = args.length > 1 ? args[1] : "target/cds";
+        String profiles = args.length > 2 ? args[2] : "prod";
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        String path = args.length > 4 ? args[4] : "/books";
+        List<String> extra = args.length > 5 ? Arrays.asList(args).subList(5, args.length) : new ArrayList<>();
+
+        String cdsJar = cdsDirectory + "/" + fatJar.substring(fatJar.lastIndexOf('/') + 1).replace(".jar", "-app.jar");
+        List<String> cdsArgs = Arrays.asList("-XX:SharedArchiveFile=" + cdsDirectory + "/booksmanager.jsa", "-Xshare:auto");
+
+        long[][] fat = new long[runs][];
+        long[][] cds = new long[runs][];
+        for (int run = 0; run < runs; run++) {
+            fat[run] = StartupTimeBenchmark.start(Collections.emptyList(), fatJar, profiles, path, extra);
+            StartupTimeBenchmark.print("run " + (run + 1) + " fat jar", fat[run]);
+            cds[run] = StartupTimeBenchmark.start(cdsArgs, cdsJar, profiles, path, extra);
+            StartupTimeBenchmark.print("run " + (run + 1) + " cds    ", cds[run]);
+        }
+        StartupTimeBenchmark.printSummary("fat jar ", fat);
+        StartupTimeBenchmark.printSummary("cds     ", cds);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.booksmanager.benchmark;
+
+import com.example.booksmanager.BooksmanagerApplication;
+import com.example.booksmanager.domain.Book;
+import com.example.booksmanager.service.AuthorService;
+import com.example.booksmanager.service.BookService;
+import com.example.booksmanager.service.CategoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Time and allocation of one rendered list page (/books, /authors, /categories), in process
+ *      mvn -Pbenchmark test-compile exec:exec -Dexec.executable=java \
+ *          -Dexec.args="-cp %classpath org.openjdk.jmh.Main ListRenderingBenchmark -prof gc"
+ * gc.alloc.rate.norm is the number of bytes allocated per request; it includes the constant share of MockMvc
+ * (request, response, the rendered page), so compare it between versions rather than read it on its own.
+ * The application runs with its own application.properties on an embedded H2 database (the test classpath),
+ * without a web server and without logging of the statements; 'books' books are added to the test data.
+ * Run from the project directory.
+ * @author platoiscoding.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListRenderingBenchmark {
+
+    //system properties, they override application.properties
+    private static final String[][] PROPERTIES = {
+            {"spring.config.additional-location", "file:src/main/resources/application.properties"},
+            {"spring.datasource.url", "jdbc:h2:mem:benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1"},
+            {"spring.datasource.username", "sa"},
+            {"spring.datasource.password", ""},
+            {"spring.jpa.properties.hibernate.dialect", "org.hibernate.dialect.H2Dialect"},
+            {"spring.jpa.show-sql", "false"},
+            {"logging.level.org.hibernate.SQL", "WARN"},
+            {"logging.level.root", "WARN"},
+            {"server.port", "-1"},
+            {"spring.devtools.restart.enabled", "false"},
+            {"booksmanager.warmup.enabled", "false"},
+            {"booksmanager.rate-limit.enabled", "false"},
+            {"booksmanager.concurrency-limit.enabled", "false"}
+    };
+
+    @Param({"/books", "/authors", "/categories"})
+    private String path;
+
+    @Param({"1000"})
+    private int books;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        for (String[] property : PROPERTIES) {
+            System.setProperty(property[0], property[1]);
+        }
+        context = new SpringApplicationBuilder(BooksmanagerApplication.class).run();
+        addBooks();
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+        //the change events of the added books are relayed to the caches before the measurement
+        Thread.sleep(2000);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    /**
+     * a page in the middle of the list, ordered by id
+     */
+    @Benchmark
+    public int renderListPage() throws Exception {
+        MvcResult result = mockMvc.perform(get(path).param("page", "3")).andReturn();
+        if (result.getResponse().getStatus() != 200) {
+            throw new IllegalStateException(path + " answered " + result.getResponse().getStatus());
+        }
+        return result.getResponse().getContentLength();
+    }
+
+    private void addBooks() {
+        BookService bookService = context.getBean(BookService.class);
+        AuthorService authorService = context.getBean(AuthorService.class);
+        CategoryService categoryService = context.getBean(CategoryService.class);
+        for (int i = 0; i < books; i++) {
+            Book book = new Book();
+            book.setTitle("Benchmark Book " + i);
+            book.setYear(String.valueOf(1950 + i % 70));
+            book.setDescription("Description of benchmark book " + i + ", long enough to be summarized on the book pages.");
+            book.getAuthors().add(authorService.findById(1000L + i % 4));
+            book.getCategories().add(categoryService.findById(1000L + i % 5));
+            book.getCategories().add(categoryService.findById(1000L + (i + 1) % 5));
+            bookService.create(book);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.booksmanager.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from process start to the first served request, over several cold starts of the packaged jar
+ *      mvn -DskipTests package
+ *      mvn -Pbenchmark test-compile exec:java \
+ *          -Dexec.mainClass=com.example.booksmanager.benchmark.StartupTimeBenchmark \
+ *          -Dexec.args="target/booksmanager-0.0.1-SNAPSHOT.jar prod 5 /books"
+ * args: jar profiles runs path [extra application arguments...]
+ * Each run starts 'java -jar' on a free port and records when
+ *      first 200:  'path' is served for the first time
+ *      ready:      /actuator/health reports UP, i.e. the node would be put into the load balancer
+ *      rss:        resident set size of the process once it is ready (Linux only)
+ * The database the profile points to has to be running; with the prod profile its schema has to exist.
+ * @author platoiscoding.com
+ */
+public class StartupTimeBenchmark {
+
+    private static final long TIMEOUT_MS = 180_000;
+
+    public static void main(String[] args) throws Exception {
+        String jar = args.length > 0 ? args[0] : "target/booksmanager-0.0.1-SNAPSHOT.jar";
+        String profiles = args.length > 1 ? args[1] : "prod";
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        String path = args.length > 3 ? args[3] : "/books";
+        List<String> extra = args.length > 4 ? Arrays.asList(args).subList(4, args.length) : new ArrayList<>();
+
+        long[][] results = new long[runs][];
+        for (int run = 0; run < runs; run++) {
+            results[run] = start(new ArrayList<>(), jar, profiles, path, extra);
+            print("run " + (run + 1), results[run]);
+        }
+        printSummary("", results);
+    }
+
+    /**
+     * @param jvmArgs   options placed before '-jar'
+     * @return {ms until the first 200 on path, ms until /actuator/health is UP, rss in kB}, -1 if unknown
+     */
+    static long[] start(List<String> jvmArgs, String jar, String profiles, String path, List<String> extra)
+            throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmArgs);
+        command.addAll(Arrays.asList("-jar", jar, "--server.port=" + port, "--spring.profiles.active=" + profiles));
+        command.addAll(extra);
+        String baseUrl = "http://localhost:" + port;
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(System.getProperty("java.io.tmpdir"), "booksmanager-startup.log"))
+                .start();
+        try {
+            long firstRequest = -1;
+            long ready = -1;
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while ((firstRequest < 0 || ready < 0) && System.currentTimeMillis() < deadline && process.isAlive()) {
+                if (firstRequest < 0 && status(baseUrl + path) == 200) {
+                    firstRequest = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }
+                if (ready < 0 && status(baseUrl + "/actuator/health") == 200) {
+                    ready = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }
+                Thread.sleep(20);
+            }
+            return new long[]{firstRequest, ready, ready < 0 ? -1 : rssKb(process)};
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static int status(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(200);
+            connection.setReadTimeout(30_000);
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    byte[] buffer = new byte[8192];
+                    while (in.read(buffer) != -1) {
+                        //drain
+                    }
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    static void print(String label, long[] result) {
+        System.out.printf("%s: first 200 after %d ms, ready after %d ms, rss %d MB%n",
+                label, result[0], result[1], result[2] < 0 ? -1 : result[2] / 1024);
+    }
+
+    static void printSummary(String label, long[][] results) {
+        String[] names = {"first 200 ms", "ready ms", "rss kB"};
+        for (int i = 0; i < names.length; i++) {
+            long[] values = new long[results.length];
+            for (int run = 0; run < results.length; run++) {
+                values[run] = results[run][i];
+            }
+            System.out.printf("%-22s %s%n", label + names[i] + ":", summary(values));
+        }
+    }
+
+    /**
+     * VmRSS from /proc; Process.pid() is Java 9+, so the pid is read reflectively
+     */
+    private static long rssKb(Process process) {
+        try {
+            long pid = (Long) Process.class.getMethod("pid").invoke(process);
+            for (String line : Files.readAllLines(Paths.get("/proc/" + pid + "/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (ReflectiveOperationException | IOException | RuntimeException e) {
+            //not Linux or not Java 9+
+        }
+        return -1;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    static String summary(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return String.format("min %d  median %d  max %d", sorted[0], sorted[sorted.length / 2], sorted[sorted.length - 1]);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.booksmanager.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+
+/**
+ * Turns on the AuditingEntityListener of DateAudit: created_at is set on insert and updated_at on every
+ * flushed change, so services neither set the dates by hand nor mark entities dirty just to touch them.
+ */
+@Configuration
+@EnableJpaAuditing
+public class AuditingConfig {
+}
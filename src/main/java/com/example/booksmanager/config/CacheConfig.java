@@ -0,0 +1,30 @@
+package com.example.booksmanager.config;
+
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Application caches for the lookup lists of the book forms and list views
+ * The caches are cleared by LookupCacheInvalidator when the change_events relay delivers author or
+ * category changes, i.e. after the commit; evictions from inside a transaction are deferred to its commit.
+ * A client with the read-your-writes cookie is not served from the caches (NOT_READING_OWN_WRITES): in cluster
+ * mode its write may not have been relayed to the node that serves it yet.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String ALL_CATEGORIES = "allCategories";
+    public static final String ALL_AUTHORS = "allAuthors";
+    public static final String NOT_READING_OWN_WRITES =
+            "!T(com.example.booksmanager.config.ReplicationContext).isPrimaryForced()";
+
+    @Bean
+    public CacheManager cacheManager() {
+        return new TransactionAwareCacheManagerProxy(new ConcurrentMapCacheManager(ALL_CATEGORIES, ALL_AUTHORS));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.booksmanager.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Training run of the 'cds' build profile
+ * Waits until the StartupWarmUp has rendered the hot pages, so their classes are loaded too, and then
+ * exits the JVM; -XX:ArchiveClassesAtExit writes the AppCDS archive on exit.
+ */
+@Component
+@ConditionalOnProperty(prefix = "booksmanager.cds", name = "training", havingValue = "true")
+public class CdsTrainingRun {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CdsTrainingRun.class);
+
+    @Autowired
+    private ApplicationContext applicationContext;
+    @Autowired
+    private ObjectProvider<StartupWarmUp> startupWarmUp;
+
+    @Value("${booksmanager.warmup.timeout-ms:60000}")
+    private long timeoutMs;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void exitWhenWarm() {
+        Thread thread = new Thread(() -> {
+            StartupWarmUp warmUp = startupWarmUp.getIfAvailable();
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            try {
+                while (warmUp != null && !Status.UP.equals(warmUp.health().getStatus())
+                        && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LOG.info("cds training run finished, exiting");
+            System.exit(SpringApplication.exit(applicationContext));
+        }, "cds-training");
+        thread.start();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.booksmanager.config;
+
+import com.example.booksmanager.exception.OverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive concurrency limit of the DB-heavy endpoints
+ * Requests beyond the limit are answered with 503 and Retry-After right away, instead of queueing for a
+ * pooled connection until connection-timeout. The limit follows the load (AIMD): it shrinks by 10%, at most
+ * once per latency threshold, when a request took longer than the threshold or requests wait for a connection
+ * (hikaricp.connections.pending), and grows by one per limit requests otherwise.
+ * Exposes the limit and the requests in flight (booksmanager.concurrency-limit.*) and counts the refused ones.
+ */
+public class ConcurrencyLimitInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String STARTED = ConcurrencyLimitInterceptor.class.getName() + ".started";
+    private static final long POOL_SAMPLE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int min;
+    private final int max;
+    private final long latencyThreshold;
+    private final double poolPendingThreshold;
+    private final MeterRegistry registry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    //current limit, as the bits of a double
+    private final AtomicLong limit;
+    private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime());
+    private final AtomicLong poolSampledAt = new AtomicLong(System.nanoTime() - POOL_SAMPLE_INTERVAL);
+    private volatile double poolPending;
+    private final Counter rejected;
+
+    /**
+     * @param initial               limit to start with
+     * @param min                   the limit never gets lower
+     * @param max                   the limit never gets higher
+     * @param latencyThresholdMs    slower requests lower the limit
+     * @param poolPendingThreshold  more requests waiting for a pooled connection lower the limit
+     * @param registry              registry of the metrics and of the pool gauges, null for none
+     */
+    public ConcurrencyLimitInterceptor(int initial, int min, int max, long latencyThresholdMs,
+                                       int poolPendingThreshold, MeterRegistry registry) {
+        this.min = min;
+        this.max = max;
+        this.latencyThreshold = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.poolPendingThreshold = poolPendingThreshold;
+        this.registry = registry;
+        this.limit = new AtomicLong(Double.doubleToLongBits(Math.max(min, Math.min(max, initial))));
+        this.rejected = registry == null ? null : Counter.builder("booksmanager.concurrency-limit.rejected")
+                .description("requests answered with 503")
+                .register(registry);
+        if (registry != null) {
+            Gauge.builder("booksmanager.concurrency-limit.limit", this, ConcurrencyLimitInterceptor::getLimit)
+                    .register(registry);
+            Gauge.builder("booksmanager.concurrency-limit.in-flight", inFlight, AtomicInteger::get)
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() != DispatcherType.REQUEST) {
+            return true;
+        }
+        if (inFlight.incrementAndGet() > getLimit()) {
+            inFlight.decrementAndGet();
+            if (rejected != null) {
+                rejected.increment();
+            }
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            throw new OverloadedException("Too many concurrent requests, try again later");
+        }
+        request.setAttribute(STARTED, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * the handler went async: the request no longer occupies a thread of this limit
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(STARTED) != null) {
+            request.removeAttribute(STARTED);
+            inFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object started = request.getAttribute(STARTED);
+        if (started == null) {
+            return;
+        }
+        request.removeAttribute(STARTED);
+        inFlight.decrementAndGet();
+        long now = System.nanoTime();
+        adjust(now - (Long) started > latencyThreshold || poolPending(now) > poolPendingThreshold, now);
+    }
+
+    public double getLimit() {
+        return Double.longBitsToDouble(limit.get());
+    }
+
+    private void adjust(boolean overloaded, long now) {
+        if (overloaded) {
+            long last = lastDecrease.get();
+            if (now - last < latencyThreshold || !lastDecrease.compareAndSet(last, now)) {
+                return;
+            }
+        }
+        while (true) {
+            long bits = limit.get();
+            double current = Double.longBitsToDouble(bits);
+            double next = overloaded ? Math.max(min, current * 0.9) : Math.min(max, current + 1 / current);
+            if (next == current || limit.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return  requests waiting for a connection, over all pools; sampled at most every POOL_SAMPLE_INTERVAL
+     */
+    private double poolPending(long now) {
+        long sampledAt = poolSampledAt.get();
+        if (registry != null && now - sampledAt >= POOL_SAMPLE_INTERVAL && poolSampledAt.compareAndSet(sampledAt, now)) {
+            poolPending = registry.find("hikaricp.connections.pending").gauges().stream()
+                    .mapToDouble(Gauge::value)
+                    .filter(value -> !Double.isNaN(value))
+                    .sum();
+        }
+        return poolPending;
+    }
+}
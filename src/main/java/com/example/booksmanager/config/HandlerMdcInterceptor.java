@@ -0,0 +1,30 @@
+package com.example.booksmanager.config;
+
+import org.slf4j.MDC;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Puts the controller method that handles the request into the MDC ('handler'),
+ * so that log lines written further down, e.g. by the SlowQueryLog, can name it
+ */
+public class HandlerMdcInterceptor implements HandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod) {
+            HandlerMethod handlerMethod = (HandlerMethod) handler;
+            MDC.put(SlowQueryLog.HANDLER_MDC_KEY,
+                    handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        MDC.remove(SlowQueryLog.HANDLER_MDC_KEY);
+    }
+}
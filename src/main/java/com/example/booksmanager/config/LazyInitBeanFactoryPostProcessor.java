@@ -0,0 +1,57 @@
+package com.example.booksmanager.config;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.Lifecycle;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Marks application beans lazy, so they are created on first use instead of during startup
+ * Only beans declared by class (component scan, repositories) are changed; beans from factory methods keep
+ * their eager init, as do beans with @Scheduled methods (only scheduled when created), Lifecycle beans
+ * and beans named in excluded. @EventListener and request mappings resolve their beans on first use.
+ * What is deferred here is created by the first requests, which in prod is the StartupWarmUp.
+ */
+public class LazyInitBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
+
+    private final Set<String> excluded;
+
+    public LazyInitBeanFactoryPostProcessor(Set<String> excluded) {
+        this.excluded = excluded;
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        ClassLoader classLoader = beanFactory.getBeanClassLoader();
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            if (definition.getRole() != BeanDefinition.ROLE_APPLICATION || !definition.isSingleton()
+                    || definition.isAbstract() || definition.isLazyInit() || definition.getFactoryMethodName() != null
+                    || definition.getBeanClassName() == null || excluded.contains(name)) {
+                continue;
+            }
+            Class<?> beanClass = ClassUtils.resolveClassName(definition.getBeanClassName(), classLoader);
+            if (!Lifecycle.class.isAssignableFrom(beanClass) && !hasScheduledMethods(beanClass)) {
+                definition.setLazyInit(true);
+            }
+        }
+    }
+
+    private static boolean hasScheduledMethods(Class<?> beanClass) {
+        AtomicBoolean scheduled = new AtomicBoolean();
+        ReflectionUtils.doWithMethods(beanClass, method -> {
+            if (AnnotatedElementUtils.hasAnnotation(method, Scheduled.class)) {
+                scheduled.set(true);
+            }
+        });
+        return scheduled.get();
+    }
+}
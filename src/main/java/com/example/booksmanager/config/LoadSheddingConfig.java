@@ -0,0 +1,73 @@
+package com.example.booksmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Load shedding: requests that would overload the database are refused before anything is loaded
+ *      booksmanager.rate-limit.*           token bucket per client for the writes and the list pages (429)
+ *      booksmanager.concurrency-limit.*    adaptive limit of concurrent writes and list pages (503)
+ * The /api lists are not under the concurrency limit: they run on the bounded jpa threads already.
+ */
+@Configuration
+public class LoadSheddingConfig implements WebMvcConfigurer {
+
+    private static final String[] WRITE_PATHS = {
+            "/*/create", "/*/*/update", "/*/*/delete", "/book/*/removeFromCategory/*"};
+    private static final String[] HEAVY_READ_PATHS = {
+            "/", "/books", "/authors", "/categories", "/browse"};
+    private static final String[] HEAVY_API_PATHS = {
+            "/api/books", "/api/authors", "/api/categories"};
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${booksmanager.rate-limit.enabled:true}")
+    private boolean rateLimitEnabled;
+    @Value("${booksmanager.rate-limit.write.capacity:10}")
+    private int writeCapacity;
+    @Value("${booksmanager.rate-limit.write.per-second:1}")
+    private double writePerSecond;
+    @Value("${booksmanager.rate-limit.heavy-read.capacity:60}")
+    private int heavyReadCapacity;
+    @Value("${booksmanager.rate-limit.heavy-read.per-second:10}")
+    private double heavyReadPerSecond;
+    @Value("${booksmanager.rate-limit.heavy-read.deep-page:10}")
+    private int deepPage;
+
+    @Value("${booksmanager.concurrency-limit.enabled:true}")
+    private boolean concurrencyLimitEnabled;
+    @Value("${booksmanager.concurrency-limit.initial:20}")
+    private int initialLimit;
+    @Value("${booksmanager.concurrency-limit.min:4}")
+    private int minLimit;
+    @Value("${booksmanager.concurrency-limit.max:200}")
+    private int maxLimit;
+    @Value("${booksmanager.concurrency-limit.latency-threshold-ms:500}")
+    private long latencyThresholdMs;
+    @Value("${booksmanager.concurrency-limit.pool-pending-threshold:5}")
+    private int poolPendingThreshold;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        MeterRegistry metrics = meterRegistry.getIfAvailable();
+        if (rateLimitEnabled) {
+            registry.addInterceptor(new RateLimitInterceptor("write", writeCapacity, writePerSecond, 0, metrics))
+                    .addPathPatterns(WRITE_PATHS);
+            registry.addInterceptor(new RateLimitInterceptor("heavy-read", heavyReadCapacity, heavyReadPerSecond, deepPage, metrics))
+                    .addPathPatterns(HEAVY_READ_PATHS)
+                    .addPathPatterns(HEAVY_API_PATHS);
+        }
+        if (concurrencyLimitEnabled) {
+            registry.addInterceptor(new ConcurrencyLimitInterceptor(initialLimit, minLimit, maxLimit,
+                    latencyThresholdMs, poolPendingThreshold, metrics))
+                    .addPathPatterns(WRITE_PATHS)
+                    .addPathPatterns(HEAVY_READ_PATHS);
+        }
+    }
+}
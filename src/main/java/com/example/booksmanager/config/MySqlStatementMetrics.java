@@ -0,0 +1,90 @@
+package com.example.booksmanager.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Server-side prepared statement counters of MySQL as gauges (mysql.server.statements.*)
+ * Connector/J does not report hits of its client-side statement cache, but with useServerPrepStmts=true
+ * a working cache shows up as com_stmt_execute growing much faster than com_stmt_prepare.
+ * These are GLOBAL status variables: they count the statements of every client of the server,
+ * not only those of this instance, and every instance reports the same values.
+ * All variables are read with one query, at most once per booksmanager.mysql-status.cache-ms;
+ * the gauges of a scrape within that time share the values.
+ */
+@Component
+@Profile("prod")
+public class MySqlStatementMetrics implements MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MySqlStatementMetrics.class);
+
+    private static final String[][] STATUS_VARIABLES = {
+            {"Com_stmt_prepare", "mysql.server.statements.prepared", "statements prepared on the server, by all clients"},
+            {"Com_stmt_execute", "mysql.server.statements.executed", "prepared statements executed on the server, by all clients"},
+            {"Com_stmt_close", "mysql.server.statements.closed", "prepared statements closed on the server, by all clients"},
+            {"Prepared_stmt_count", "mysql.server.statements.open", "prepared statements currently open on the server, of all clients"}
+    };
+
+    static final String QUERY = Arrays.stream(STATUS_VARIABLES).map(variable -> "'" + variable[0] + "'")
+            .collect(Collectors.joining(", ", "SHOW GLOBAL STATUS WHERE Variable_name IN (", ")"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${booksmanager.mysql-status.cache-ms:5000}")
+    private long cacheMs;
+
+    private Map<String, Double> values;
+    private long readAt;
+
+    public MySqlStatementMetrics(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String[] variable : STATUS_VARIABLES) {
+            Gauge.builder(variable[1], this, metrics -> metrics.globalStatus(variable[0]))
+                    .description(variable[2])
+                    .register(registry);
+        }
+    }
+
+    double globalStatus(String name) {
+        return statusValues().getOrDefault(name.toLowerCase(), Double.NaN);
+    }
+
+    /**
+     * @return values by lower-case name, read again if older than cacheMs; empty if the read failed
+     */
+    private synchronized Map<String, Double> statusValues() {
+        long now = System.currentTimeMillis();
+        if (values != null && now - readAt < cacheMs) {
+            return values;
+        }
+        Map<String, Double> status = new HashMap<>();
+        try {
+            //the case of the names returned differs by server version
+            jdbcTemplate.query(QUERY, (RowCallbackHandler) rs -> status.put(rs.getString(1).toLowerCase(), rs.getDouble(2)));
+        } catch (RuntimeException e) {
+            LOG.debug("could not read status variables", e);
+            status.clear();
+        }
+        values = status;
+        readAt = now;
+        return values;
+    }
+}
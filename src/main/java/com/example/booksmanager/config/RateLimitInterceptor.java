@@ -0,0 +1,100 @@
+package com.example.booksmanager.config;
+
+import com.example.booksmanager.exception.RateLimitExceededException;
+import com.example.booksmanager.support.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limit of one class of endpoints ('write', 'heavy-read'): a TokenBucket per client (remote address)
+ * A request takes one token, a list page beyond the first deepPage pages one more per deepPage pages,
+ * as the offset scan behind it gets longer. Without tokens it is answered with 429 and Retry-After,
+ * before anything is loaded. Full buckets are dropped now and then, so idle clients cost no memory.
+ * Counts the refused requests (booksmanager.rate-limit.rejected) and the clients with a bucket.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(60);
+
+    private final String endpoint;
+    private final int capacity;
+    private final double perSecond;
+    private final int deepPage;
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL);
+    private final Counter rejected;
+
+    /**
+     * @param endpoint      class of the endpoints, tag of the metrics
+     * @param capacity      burst of requests of one client
+     * @param perSecond     sustained requests per second of one client
+     * @param deepPage      pages per additional token; 0 = all pages cost the same
+     * @param registry      registry of the metrics, null for none
+     */
+    public RateLimitInterceptor(String endpoint, int capacity, double perSecond, int deepPage, MeterRegistry registry) {
+        this.endpoint = endpoint;
+        this.capacity = capacity;
+        this.perSecond = perSecond;
+        this.deepPage = deepPage;
+        this.rejected = registry == null ? null : Counter.builder("booksmanager.rate-limit.rejected")
+                .description("requests answered with 429")
+                .tag("endpoint", endpoint)
+                .register(registry);
+        if (registry != null) {
+            registry.gaugeMapSize("booksmanager.rate-limit.clients", Collections.singleton(Tag.of("endpoint", endpoint)), buckets);
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() != DispatcherType.REQUEST) {
+            return true;
+        }
+        long now = System.nanoTime();
+        sweep(now);
+        TokenBucket bucket = buckets.computeIfAbsent(request.getRemoteAddr(), client -> new TokenBucket(capacity, perSecond, now));
+        long wait = bucket.tryTake(cost(request), now);
+        if (wait > 0) {
+            if (rejected != null) {
+                rejected.increment();
+            }
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait) + 1)));
+            throw new RateLimitExceededException("Too many " + endpoint + " requests from " + request.getRemoteAddr());
+        }
+        return true;
+    }
+
+    /**
+     * @return  tokens for the request: 1, plus 1 per deepPage pages beyond the first ones
+     */
+    private int cost(HttpServletRequest request) {
+        String page = request.getParameter("page");
+        if (deepPage <= 0 || page == null) {
+            return 1;
+        }
+        try {
+            return 1 + Math.max(0, Integer.parseInt(page.trim()) - 1) / deepPage;
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private void sweep(long now) {
+        long next = nextSweep.get();
+        if (now - next >= 0 && nextSweep.compareAndSet(next, now + SWEEP_INTERVAL)) {
+            buckets.values().removeIf(bucket -> bucket.isFull(now));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.booksmanager.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler for the reactive read path
+ * JPA is blocking, so reactive reads are bridged onto a fixed number of threads.
+ * Keep jpa-threads at or below the connection pool size: no more threads can block on the database than that.
+ */
+@Configuration
+public class ReactiveConfig {
+
+    @Value("${booksmanager.reactive.jpa-threads:8}")
+    private int jpaThreads;
+
+    /**
+     * @return  bounded scheduler all blocking repository calls of the reactive read path run on
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jpaScheduler() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "jpa-read-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(jpaThreads, threadFactory);
+        return Schedulers.fromExecutorService(executor);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.booksmanager.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Read-your-writes cookie (see ReadYourWritesInterceptor)
+ * Active with a replica (booksmanager.datasource.replica.jdbc-url) or in cluster mode (booksmanager.cluster.enabled):
+ *      replica:    reads of the writer go to the primary
+ *      cluster:    the writer's next request may land on another node, whose snapshot, list rows and lookup
+ *                  caches have not applied the change yet; they are bypassed while the cookie is set
+ * A single node without a replica doesn't need it: its own pending rows cover the redirect after a write.
+ */
+@Configuration
+@ConditionalOnExpression("!'${booksmanager.datasource.replica.jdbc-url:}'.isEmpty() or ${booksmanager.cluster.enabled:false}")
+public class ReadYourWritesConfig implements WebMvcConfigurer {
+
+    @Value("${booksmanager.datasource.read-your-writes-window:5000}")
+    private long readYourWritesWindow;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ReadYourWritesInterceptor(readYourWritesWindow));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.booksmanager.config;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Read-your-writes safeguard for the replica routing and the node-local copies of the catalog
+ * A request that wrote gets a short-lived cookie; while it is present, all reads of that client
+ * go to the primary as well and skip the CatalogSnapshot, the BookListRows cache and the lookup caches.
+ * That covers the redirect after create/update ('/book/create' -> '/book/{id}'), which would otherwise hit
+ * a replica that has not caught up yet, or another node that has not relayed the change event yet.
+ * A cookie instead of session state keeps this working when requests land on different nodes.
+ */
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+
+    protected static final String COOKIE_NAME = "bm-primary-until";
+
+    private final long windowMillis;
+
+    public ReadYourWritesInterceptor(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReplicationContext.clear();
+        if (request.getCookies() == null) {
+            return true;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE_NAME.equals(cookie.getName()) && isInFuture(cookie.getValue())) {
+                ReplicationContext.forcePrimary();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * called before the (redirect) view is rendered, so the cookie is still added to the response
+     */
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                           ModelAndView modelAndView) {
+        if (ReplicationContext.hasWritten()) {
+            Cookie cookie = new Cookie(COOKIE_NAME, String.valueOf(System.currentTimeMillis() + windowMillis));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, windowMillis / 1000));
+            response.addCookie(cookie);
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReplicationContext.clear();
+    }
+
+    private boolean isInFuture(String value) {
+        try {
+            return Long.parseLong(value) > System.currentTimeMillis();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
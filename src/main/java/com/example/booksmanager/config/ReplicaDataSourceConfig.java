@@ -0,0 +1,74 @@
+package com.example.booksmanager.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read/write splitting
+ * Active once booksmanager.datasource.replica.jdbc-url is set:
+ *      primary:    spring.datasource.*, spring.datasource.hikari.*     (writes, and reads right after a write)
+ *      replica:    booksmanager.datasource.replica.*                   (transactions with readOnly = true)
+ * Without a replica url Boot's single auto-configured datasource is used unchanged.
+ * The two pools are deliberately not beans of their own: Boot's DataSourceInitializer expects exactly one DataSource.
+ * For the same reason Boot can't find them to bind the hikaricp.* metrics, which is done here instead.
+ * The route is chosen when a transaction first uses its connection. Under open-in-view the EntityManager of
+ * a request would hold that connection until the request ends, so a read-only check before a write
+ * ('nameIsValid' before 'create') would send the write to the replica: with routing, Hibernate gives the
+ * connection back after every transaction.
+ * Reads of a client right after its write go to the primary, see ReadYourWritesConfig.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "booksmanager.datasource.replica", name = "jdbc-url")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties, Environment environment,
+                                 ObjectProvider<MeterRegistry> meterRegistry) {
+        Binder binder = Binder.get(environment);
+
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+
+        HikariDataSource replica = new HikariDataSource();
+        binder.bind("booksmanager.datasource.replica", Bindable.ofInstance(replica));
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+
+        meterRegistry.ifAvailable(registry -> {
+            primary.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+        });
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReplicationRoutingDataSource.Route.PRIMARY, primary);
+        targets.put(ReplicationRoutingDataSource.Route.REPLICA, replica);
+
+        ReplicationRoutingDataSource routingDataSource = new ReplicationRoutingDataSource();
+        routingDataSource.setTargetDataSources(targets);
+        routingDataSource.setDefaultTargetDataSource(primary);
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return properties -> properties.put("hibernate.connection.handling_mode",
+                "DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION");
+    }
+}
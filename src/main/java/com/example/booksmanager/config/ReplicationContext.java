@@ -0,0 +1,37 @@
+package com.example.booksmanager.config;
+
+/**
+ * Per-thread routing hints for ReplicationRoutingDataSource and the node-local read paths
+ * forcePrimary: the current request must see its own recent writes, so reads go to the primary as well
+ *               and the snapshot, the list rows and the lookup caches are bypassed
+ * wrote:        the current request ran a write transaction against the primary or recorded a change event
+ */
+public final class ReplicationContext {
+
+    private static final ThreadLocal<Boolean> FORCE_PRIMARY = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> WROTE = new ThreadLocal<>();
+
+    private ReplicationContext() {
+    }
+
+    public static void forcePrimary() {
+        FORCE_PRIMARY.set(Boolean.TRUE);
+    }
+
+    public static boolean isPrimaryForced() {
+        return Boolean.TRUE.equals(FORCE_PRIMARY.get());
+    }
+
+    public static void markWrite() {
+        WROTE.set(Boolean.TRUE);
+    }
+
+    public static boolean hasWritten() {
+        return Boolean.TRUE.equals(WROTE.get());
+    }
+
+    public static void clear() {
+        FORCE_PRIMARY.remove();
+        WROTE.remove();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.booksmanager.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Sends read-only transactions to the replica and everything else to the primary
+ * Has to be wrapped in a LazyConnectionDataSourceProxy: the transaction manager asks for a connection
+ * before the read-only flag of the transaction is visible to TransactionSynchronizationManager.
+ */
+public class ReplicationRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route { PRIMARY, REPLICA }
+
+    private Map<Object, Object> targets;
+
+    @Override
+    public void setTargetDataSources(Map<Object, Object> targetDataSources) {
+        super.setTargetDataSources(targetDataSources);
+        this.targets = targetDataSources;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !ReplicationContext.isPrimaryForced()) {
+            return Route.REPLICA;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            ReplicationContext.markWrite();
+        }
+        return Route.PRIMARY;
+    }
+
+    /**
+     * @param route     PRIMARY or REPLICA
+     * @return          the pool behind the route
+     */
+    public DataSource getTarget(Route route) {
+        return (DataSource) targets.get(route);
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.booksmanager.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Times every statement executed through the wrapped DataSource and hands slow ones to the SlowQueryLog
+ * Connections and statements are JDK proxies; besides the timing the only per-statement work is
+ * remembering the type of each bound parameter, never its value.
+ * equals, hashCode and toString are answered by the proxies themselves, see objectMethod.
+ */
+public class SlowQueryDataSource extends DelegatingDataSource {
+
+    private final SlowQueryLog slowQueryLog;
+
+    public SlowQueryDataSource(DataSource targetDataSource, SlowQueryLog slowQueryLog) {
+        super(targetDataSource);
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(super.getConnection()));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(super.getConnection(username, password)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(SlowQueryDataSource.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * forwarded, equals would make a proxy equal to its target but not the target to the proxy,
+     * and two proxies of one target equal; the pool and Hibernate keep connections and statements in sets and maps
+     * @return  result of equals, hashCode or toString of proxy
+     */
+    private static Object objectMethod(Object proxy, Object target, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "SlowQuery[" + target + "]";
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(proxy, target, method, args);
+            }
+            Object result = SlowQueryDataSource.invoke(target, method, args);
+            switch (method.getName()) {
+                case "prepareCall":
+                    return proxy(CallableStatement.class, new StatementHandler((Statement) result, (String) args[0]));
+                case "prepareStatement":
+                    return proxy(PreparedStatement.class, new StatementHandler((Statement) result, (String) args[0]));
+                case "createStatement":
+                    return proxy(Statement.class, new StatementHandler((Statement) result, null));
+                default:
+                    return result;
+            }
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        private final Statement target;
+        private final String sql;
+        private final Map<Integer, String> parameterShape = new TreeMap<>();
+
+        StatementHandler(Statement target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(proxy, target, method, args);
+            }
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                long start = System.nanoTime();
+                try {
+                    return SlowQueryDataSource.invoke(target, method, args);
+                } finally {
+                    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+                    if (slowQueryLog.isSlow(elapsedMillis)) {
+                        String statement = sql != null ? sql : (args != null && args.length > 0 ? String.valueOf(args[0]) : "batch");
+                        slowQueryLog.record(statement, parameterShape.values().toString(), elapsedMillis);
+                    }
+                }
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameterShape.put((Integer) args[0], "setNull".equals(name) || args[1] == null
+                        ? "null" : args[1].getClass().getSimpleName());
+            } else if ("clearParameters".equals(name)) {
+                parameterShape.clear();
+            }
+            return SlowQueryDataSource.invoke(target, method, args);
+        }
+    }
+}
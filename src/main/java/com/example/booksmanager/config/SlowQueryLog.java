@@ -0,0 +1,69 @@
+package com.example.booksmanager.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records statements that took at least thresholdMillis
+ * Every slow statement is counted (jdbc.statements.slow), a sampleRate fraction of them is logged
+ * with the parameter types it was bound with and the controller method that issued it.
+ */
+public class SlowQueryLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger("booksmanager.slow-query");
+
+    protected static final String HANDLER_MDC_KEY = "handler";
+
+    private final long thresholdMillis;
+    private final double sampleRate;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private volatile Counter slowStatements;
+
+    /**
+     * @param meterRegistry     resolved on the first slow statement; the DataSource is created before the registry
+     */
+    public SlowQueryLog(long thresholdMillis, double sampleRate, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.thresholdMillis = thresholdMillis;
+        this.sampleRate = sampleRate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return  true if a statement that took this long has to be recorded
+     */
+    public boolean isSlow(long elapsedMillis) {
+        return elapsedMillis >= thresholdMillis;
+    }
+
+    /**
+     * @param sql               statement text with placeholders
+     * @param parameterShape    types of the bound parameters, e.g. [Long, String]
+     * @param elapsedMillis     execution time
+     */
+    public void record(String sql, String parameterShape, long elapsedMillis) {
+        Counter counter = slowStatements;
+        if (counter == null) {
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            if (registry != null) {
+                counter = Counter.builder("jdbc.statements.slow")
+                        .description("statements that took longer than booksmanager.slow-query.threshold-ms")
+                        .register(registry);
+                slowStatements = counter;
+            }
+        }
+        if (counter != null) {
+            counter.increment();
+        }
+        if (sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            String handler = MDC.get(HANDLER_MDC_KEY);
+            LOG.warn("{} ms [{}] {} params={}", elapsedMillis, handler == null ? Thread.currentThread().getName() : handler,
+                    sql, parameterShape);
+        }
+    }
+}
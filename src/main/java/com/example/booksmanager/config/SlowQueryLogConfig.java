@@ -0,0 +1,50 @@
+package com.example.booksmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+/**
+ * Slow query log; replaces per-statement SQL logging in production
+ *      booksmanager.slow-query.enabled         on/off
+ *      booksmanager.slow-query.threshold-ms    statements at least this slow are recorded
+ *      booksmanager.slow-query.sample-rate     fraction of the recorded statements that is logged (0..1)
+ */
+@Configuration
+@ConditionalOnProperty(name = "booksmanager.slow-query.enabled", havingValue = "true")
+public class SlowQueryLogConfig implements WebMvcConfigurer {
+
+    /**
+     * wraps the application's DataSource; static, because it is a BeanPostProcessor
+     */
+    @Bean
+    public static BeanPostProcessor slowQueryDataSourcePostProcessor(Environment environment,
+                                                                     ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!"dataSource".equals(beanName) || !(bean instanceof DataSource) || bean instanceof SlowQueryDataSource) {
+                    return bean;
+                }
+                SlowQueryLog slowQueryLog = new SlowQueryLog(
+                        environment.getProperty("booksmanager.slow-query.threshold-ms", Long.class, 200L),
+                        environment.getProperty("booksmanager.slow-query.sample-rate", Double.class, 1.0),
+                        meterRegistry);
+                return new SlowQueryDataSource((DataSource) bean, slowQueryLog);
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerMdcInterceptor());
+    }
+}
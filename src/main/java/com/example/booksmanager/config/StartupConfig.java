@@ -0,0 +1,39 @@
+package com.example.booksmanager.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.StringUtils;
+
+/**
+ * Startup tuning of the prod profile
+ * Spring Boot 2.1 has no spring.main.lazy-initialization, so lazy init is done by a BeanFactoryPostProcessor.
+ */
+@Configuration
+public class StartupConfig {
+
+    /**
+     * With spring.data.jpa.repositories.bootstrap-mode=deferred the EntityManagerFactory is built on an
+     * AsyncTaskExecutor looked up by type, which also finds the scheduler of @EnableScheduling.
+     * This replaces Boot's applicationTaskExecutor with the same bean, marked primary.
+     * @param builder   configured by spring.task.execution.*
+     * @return          executor for the JPA bootstrap and other application tasks
+     */
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    @Primary
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "booksmanager.lazy-init", name = "enabled", havingValue = "true")
+    public static LazyInitBeanFactoryPostProcessor lazyInitBeanFactoryPostProcessor(Environment environment) {
+        return new LazyInitBeanFactoryPostProcessor(StringUtils.commaDelimitedListToSet(
+                environment.getProperty("booksmanager.lazy-init.excluded-beans", "")));
+    }
+}
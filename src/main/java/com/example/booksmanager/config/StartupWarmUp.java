@@ -0,0 +1,188 @@
+package com.example.booksmanager.config;
+
+import com.example.booksmanager.service.AuthorService;
+import com.example.booksmanager.service.CategoryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Warms the node up after startup, before it takes traffic
+ * Once the context is ready a background thread fills the application caches (allCategories, allAuthors)
+ * and then requests the hot pages from this node itself. The pages keep nothing themselves, except the rows
+ * of the /books pages in BookListRows: they warm the connection pool, Hibernate, the Thymeleaf template cache,
+ * the JIT and the MySQL buffer pool. Until that has finished /actuator/health reports OUT_OF_SERVICE (503),
+ * which keeps the node out of the load balancer.
+ * Filling the caches is critical: a node that can't read the database must not take traffic, so those steps
+ * are retried every retry-interval-ms until they succeed, and health names the step it waits for.
+ * The pages are best effort: failed ones are logged and skipped, and none is requested after timeout-ms.
+ */
+@Component
+@ConditionalOnProperty(prefix = "booksmanager.warmup", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class StartupWarmUp implements HealthIndicator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StartupWarmUp.class);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "warm-up");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean warm;
+    private volatile int succeeded;
+    private volatile int failed;
+    private volatile long durationMs;
+    //critical step being retried
+    private volatile String waitingFor;
+    private final List<String> failedSteps = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    private CategoryService categoryService;
+    @Autowired
+    private AuthorService authorService;
+    @Autowired
+    private RestTemplateBuilder restTemplateBuilder;
+    @Autowired
+    private Environment environment;
+
+    @Value("${booksmanager.warmup.pages:3}")
+    private int pages;
+    @Value("${booksmanager.warmup.list-paths:/books,/authors,/categories}")
+    private String[] listPaths;
+    @Value("${booksmanager.warmup.paths:/}")
+    private String[] paths;
+    @Value("${booksmanager.warmup.timeout-ms:60000}")
+    private long timeoutMs;
+    @Value("${booksmanager.warmup.retry-interval-ms:5000}")
+    private long retryIntervalMs;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(this::warmUp);
+        executor.shutdown();
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = warm ? Health.up() : Health.outOfService();
+        if (waitingFor != null) {
+            builder.withDetail("waitingFor", waitingFor);
+        }
+        return builder.withDetail("succeeded", succeeded)
+                .withDetail("failed", failed)
+                .withDetail("failedSteps", new ArrayList<>(failedSteps))
+                .withDetail("durationMs", durationMs)
+                .build();
+    }
+
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        if (!critical("allCategories", () -> categoryService.getAll())
+                || !critical("allAuthors", () -> authorService.getAll())) {
+            LOG.warn("warm-up interrupted, the node stays out of service");
+            return;
+        }
+        try {
+            warmUpPages(start + timeoutMs);
+        } finally {
+            durationMs = System.currentTimeMillis() - start;
+            warm = true;
+            LOG.info("warm-up finished in {} ms: {} steps succeeded, {} failed{}", durationMs, succeeded, failed,
+                    failedSteps.isEmpty() ? "" : " " + failedSteps);
+        }
+    }
+
+    /**
+     * runs step until it succeeds
+     * @return  false if interrupted by the shutdown
+     */
+    private boolean critical(String name, Runnable step) {
+        while (!step(name, Long.MAX_VALUE, step)) {
+            waitingFor = name;
+            try {
+                Thread.sleep(retryIntervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        waitingFor = null;
+        failedSteps.remove(name);
+        return true;
+    }
+
+    private void warmUpPages(long deadline) {
+        Integer port = environment.getProperty("local.server.port", Integer.class);
+        if (port == null || port <= 0) {
+            LOG.info("no local server port, skipping page warm-up");
+            return;
+        }
+        if (System.currentTimeMillis() > deadline) {
+            LOG.warn("warm-up timeout reached while filling the caches, skipping the pages");
+            return;
+        }
+        String base = "http://localhost:" + port + environment.getProperty("server.servlet.context-path", "");
+        RestTemplate restTemplate = restTemplateBuilder
+                .setConnectTimeout(Duration.ofSeconds(2))
+                .setReadTimeout(Duration.ofSeconds(10))
+                .build();
+        for (String path : listPaths) {
+            for (int page = 1; page <= pages; page++) {
+                String uri = UriComponentsBuilder.fromUriString(base + path).queryParam("page", page).toUriString();
+                step(uri, deadline, () -> restTemplate.getForEntity(uri, String.class));
+            }
+        }
+        for (String path : paths) {
+            step(base + path, deadline, () -> restTemplate.getForEntity(base + path, String.class));
+        }
+    }
+
+    /**
+     * @return  whether the step succeeded
+     */
+    private boolean step(String name, long deadline, Runnable step) {
+        if (Thread.currentThread().isInterrupted() || System.currentTimeMillis() > deadline) {
+            failed++;
+            failedSteps.add(name);
+            LOG.warn("warm-up step {} skipped: timeout or shutdown", name);
+            return false;
+        }
+        try {
+            step.run();
+            succeeded++;
+            return true;
+        } catch (RuntimeException e) {
+            failed++;
+            if (!failedSteps.contains(name)) {
+                failedSteps.add(name);
+            }
+            LOG.warn("warm-up step {} failed: {}", name, e.toString());
+            return false;
+        }
+    }
+}
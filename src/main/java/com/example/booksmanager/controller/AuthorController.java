@@ -2,19 +2,22 @@ package com.example.booksmanager.controller;
 
 import com.example.booksmanager.domain.Author;
 import com.example.booksmanager.domain.Book;
+import com.example.booksmanager.exception.ConcurrentUpdateException;
+import com.example.booksmanager.service.AssociationService;
 import com.example.booksmanager.service.AuthorService;
 import com.example.booksmanager.service.BookService;
+import com.example.booksmanager.service.CatalogSnapshot;
 import com.example.booksmanager.support.Message;
 import com.example.booksmanager.support.PageModel;
+import com.example.booksmanager.support.SortWhitelist;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
-import org.springframework.web.servlet.support.RequestContextUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
@@ -36,17 +39,35 @@ public class AuthorController {
     protected static final String NEW_AUTHOR_SUCCESS = "New Author has been added.";
     protected static final String NO_AUTHORS_IN_DB_INFO = "There are no Authors in the Database.";
     protected static final String AUTHOR_UPDATED_SUCCESS = "Author has been updated.";
+    protected static final String AUTHOR_CHANGED_CONCURRENTLY = "This Author has been changed by someone else in the meantime. Please apply your changes to the current version.";
     protected static final String AUTHOR_DELETED_SUCCESS = "Author has been deleted.";
     protected static final String NO_BOOKS_BY_THIS_AUTHOR_INFO = "There are no books written by this Author.";
     protected static final String FIELD_VALIDATION_ERROR = "Please correct the field errors.";
     protected static final String AUTHOR_ALREADY_EXISTS = "An Author with the same Name already exists in the database.";
 
+    //list orders
+    protected static final String SORT_BY_ID = "id";
+    protected static final String SORT_BY_BOOK_COUNT = "books";
+    protected static final String SORT_BY_NAME = "name";
+    protected static final String SORT_BY_CREATED = "created";
+    protected static final String SORT_BY_UPDATED = "updated";
+
+    //allowed list orders, each backed by an index on authors (see Author)
+    protected static final SortWhitelist AUTHOR_SORTS = new SortWhitelist(SORT_BY_ID)
+            .allow(SORT_BY_ID, Sort.Direction.ASC, "id")
+            .allow(SORT_BY_BOOK_COUNT, Sort.Direction.DESC, "bookCount")
+            .allow(SORT_BY_NAME, Sort.Direction.ASC, "lastName", "firstName")
+            .allow(SORT_BY_CREATED, Sort.Direction.DESC, "createdAt")
+            .allow(SORT_BY_UPDATED, Sort.Direction.DESC, "updatedAt");
+
     @Autowired
     private AuthorService authorService;
     @Autowired
     private BookService bookService;
     @Autowired
-    private Message message;
+    private AssociationService associationService;
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
     @Autowired
     private PageModel pageModel;
 
@@ -54,21 +75,32 @@ public class AuthorController {
      * GET author by id + show all booksByAuthor
      * After redirect from author/create: model contains attribute "message"(success)
      * nested table: books written by author
+     * "coAuthors" are the authors of shared books, from the in-memory catalog graph
+     * Served from the CatalogSnapshot if it is enabled and has the author, otherwise from the database
      * @param authorId        author_id
      * @param model     attributeValues
      * @return          view template for single author
      */
     @RequestMapping( path = "/author/{id}")
     public String showSingleAuthor(@PathVariable("id") long authorId, Model model) {
+        Message message = Message.of(model);
+        CatalogSnapshot.AuthorView view = catalogSnapshot.author(authorId);
+        if (view != null) {
+            Page<CatalogSnapshot.BookView> books = catalogSnapshot.booksOfAuthor(view, pageModel.pageRequest());
+            if(books.getTotalElements() == 0) message.setInfo(NO_BOOKS_BY_THIS_AUTHOR_INFO);
+            model.addAttribute("books", books);
+            model.addAttribute("author", view);
+            model.addAttribute("coAuthors", associationService.findCoAuthors(authorId));
+            return AUTHOR_VIEW;
+        }
         Author author = authorService.findById(authorId);
         Set<Book> booksByAuthor = author.getBooks();
 
         if(booksByAuthor.isEmpty()) message.setInfo(NO_BOOKS_BY_THIS_AUTHOR_INFO);
 
-        pageModel.initPageAndSize();
-        model.addAttribute("books", bookService.findAllByAuthors(author, PageRequest.of(pageModel.getPAGE(), pageModel.getSIZE())));
+        model.addAttribute("books", bookService.findAllByAuthors(author, pageModel.pageRequest()));
         model.addAttribute("author", author);
-        model.addAttribute("message", message);
+        model.addAttribute("coAuthors", associationService.findCoAuthors(authorId));
         return AUTHOR_VIEW;
     }
 
@@ -76,20 +108,36 @@ public class AuthorController {
      * GET all authors from database
      * If redirected from /delete, contains FlashAttribute "message"
      * With Pagination
+     * @param sort          key of AUTHOR_SORTS; unknown keys are answered with 400
+     * @param dir           'asc' or 'desc', otherwise the default direction of the key
      * @return              list view of authors
      */
     @RequestMapping({"/authors"})
-    public ModelAndView showAllAuthors(Model model, HttpServletRequest request ) {
+    public String showAllAuthors(Model model, HttpServletRequest request,
+                                 @RequestParam(name = "sort", required = false) String sort,
+                                 @RequestParam(name = "dir", required = false) String dir) {
+        Sort order = AUTHOR_SORTS.sort(sort, dir);
 
-        if(!model.containsAttribute("message")){ message.reset(); }
-        if(authorService.getAll().isEmpty()) message.setInfo(NO_AUTHORS_IN_DB_INFO);
+        Message message = Message.of(model);
+        Page<Author> authors = authorService.findAll(pageModel.pageRequest(order));
+        if(authors.getTotalElements() == 0) message.setInfo(NO_AUTHORS_IN_DB_INFO);
 
-        ModelAndView modelAndView = new ModelAndView(AUTHOR_LIST_VIEW);
+        model.addAttribute("authors", authors);
+        model.addAttribute("pageNumbers", pageModel.pageNumbers(authors));
+        model.addAttribute("sort", AUTHOR_SORTS.key(sort));
+        model.addAttribute("dir", AUTHOR_SORTS.direction(sort, dir).name().toLowerCase());
+        return AUTHOR_LIST_VIEW;
+    }
 
-        pageModel.initPageAndSize();
-        modelAndView.addObject("authors", authorService.findAll(PageRequest.of(pageModel.getPAGE(), pageModel.getSIZE())));
-        modelAndView.addObject("message", message);
-        return modelAndView;
+    /**
+     * GET one row of the author list, used by the live list updates to replace a changed row
+     * @param id        author_id
+     * @return          fragment 'row' of the list view
+     */
+    @GetMapping("/author/{id}/row")
+    public String showAuthorRow(@PathVariable("id") long id, Model model) {
+        model.addAttribute("authors", Collections.singletonList(authorService.findById(id)));
+        return AUTHOR_LIST_VIEW + " :: row";
     }
 
     /**
@@ -103,10 +151,7 @@ public class AuthorController {
         if (!model.containsAttribute("author")) {
             model.addAttribute("author", new Author());
         }
-        //retrieve message from FlashAttribute
-        //Map<String, ?> inputFlashMap = RequestContextUtils.getInputFlashMap(request);
-        //if (inputFlashMap != null) { message = (Message) inputFlashMap.get("message"); }
-        model.addAttribute("message", message);
+        Message.of(model);
         return AUTHOR_ADD_FORM_VIEW;
     }
 
@@ -124,22 +169,19 @@ public class AuthorController {
     @RequestMapping(path = "/author/create", method = RequestMethod.POST)
     public String createAuthor(@Valid Author author, BindingResult result,
                              RedirectAttributes attr) {
-        message.reset();
         if (result.hasErrors()) {
             attr.addFlashAttribute("org.springframework.validation.BindingResult.author", result);
             attr.addFlashAttribute("author", author);
             if(!authorService.authorNameValid(author)){
-                message.setError(AUTHOR_ALREADY_EXISTS);
+                attr.addFlashAttribute("message", Message.error(AUTHOR_ALREADY_EXISTS));
             }else{
-                message.setError(FIELD_VALIDATION_ERROR);
+                attr.addFlashAttribute("message", Message.error(FIELD_VALIDATION_ERROR));
             }
-            //attr.addFlashAttribute("message", message);
             return "redirect:/author/new";
         }
         Author createdAuthor = authorService.create(author);
 
-        message.setSuccess(NEW_AUTHOR_SUCCESS);
-        //attr.addFlashAttribute("message", message);
+        attr.addFlashAttribute("message", Message.success(NEW_AUTHOR_SUCCESS));
 
         return "redirect:/author/" + createdAuthor.getId();
     }
@@ -156,8 +198,7 @@ public class AuthorController {
         if (!model.containsAttribute("author")) {
             model.addAttribute("author", authorService.findById(authorId));
         }
-        //message.reset();
-        model.addAttribute("message", message);
+        Message.of(model);
         return AUTHOR_EDIT_FORM_VIEW;
     }
 
@@ -179,17 +220,21 @@ public class AuthorController {
             attr.addFlashAttribute("org.springframework.validation.BindingResult.author", result);
             attr.addFlashAttribute("author", authorDetails);
             if(!authorService.authorNameValid(authorDetails)){
-                message.setError(AUTHOR_ALREADY_EXISTS);
+                attr.addFlashAttribute("message", Message.error(AUTHOR_ALREADY_EXISTS));
             }else{
-                message.setError(FIELD_VALIDATION_ERROR);
+                attr.addFlashAttribute("message", Message.error(FIELD_VALIDATION_ERROR));
             }
-            //attr.addFlashAttribute("message", message);
             return "redirect:/author/" + authorId + "/edit";
         }
 
-        authorService.update(authorId, authorDetails);
-        message.setSuccess(AUTHOR_UPDATED_SUCCESS);
-        attr.addFlashAttribute("message", message);
+        try {
+            authorService.update(authorId, authorDetails);
+        } catch (ConcurrentUpdateException e) {
+            //no flash attribute "author": the form is reloaded with the current version
+            attr.addFlashAttribute("message", Message.error(AUTHOR_CHANGED_CONCURRENTLY));
+            return "redirect:/author/" + authorId + "/edit";
+        }
+        attr.addFlashAttribute("message", Message.success(AUTHOR_UPDATED_SUCCESS));
         return "redirect:/author/" + authorId;
     }
 
@@ -201,8 +246,7 @@ public class AuthorController {
     @RequestMapping(path = "/author/{id}/delete", method = RequestMethod.GET)
     public String deleteAuthor(@PathVariable("id") long authorId, RedirectAttributes attr) {
         authorService.delete(authorId);
-        message.setSuccess(AUTHOR_DELETED_SUCCESS);
-        //attr.addFlashAttribute("message", message);
+        attr.addFlashAttribute("message", Message.success(AUTHOR_DELETED_SUCCESS));
         return "redirect:/authors";
         //TODO werden dann auch alle betroffenen Bücher gelöscht? NEIN! beheben!! PopUp bei Löschversuch!!
         //TODO bei removeBookFromCategory functs: abgucken
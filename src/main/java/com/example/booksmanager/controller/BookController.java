@@ -3,20 +3,28 @@ package com.example.booksmanager.controller;
 import com.example.booksmanager.domain.Author;
 import com.example.booksmanager.domain.Book;
 import com.example.booksmanager.domain.Category;
+import com.example.booksmanager.dto.BookRow;
+import com.example.booksmanager.exception.ConcurrentUpdateException;
+import com.example.booksmanager.exception.ResourceNotFoundException;
 import com.example.booksmanager.service.AuthorService;
+import com.example.booksmanager.service.BookListRows;
 import com.example.booksmanager.service.BookService;
+import com.example.booksmanager.service.CatalogSnapshot;
 import com.example.booksmanager.service.CategoryService;
+import com.example.booksmanager.service.RecommendationService;
 import com.example.booksmanager.support.Message;
 import com.example.booksmanager.support.PageModel;
+import com.example.booksmanager.support.SortWhitelist;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import javax.validation.Valid;
+import java.util.Collections;
 import java.util.Set;
 
 /**
@@ -40,6 +48,23 @@ public class BookController {
     protected static final String MUST_BE_AT_LEAST_ONE_AUTHOR_AND_CATEGRORY = "First, create at least one Category and one Author to add a new Book.";
     protected static final String BOOK_MUST_AT_LEAST_HAVE_ONE_CATEGORY = "Couldn't remove Book. A Book must have at least one Category.";
     protected static final String BOOK_ALREADY_EXISTS= "A Book of this title already exists. Please choose another title.";
+    protected static final String BOOK_CHANGED_CONCURRENTLY = "This Book has been changed by someone else in the meantime. Please apply your changes to the current version.";
+
+    //list orders
+    protected static final String SORT_BY_ID = "id";
+    protected static final String SORT_BY_TITLE = "title";
+    protected static final String SORT_BY_PUBLISHED = "published";
+    protected static final String SORT_BY_CREATED = "created";
+    protected static final String SORT_BY_UPDATED = "updated";
+
+    //allowed list orders, each backed by an index on books (see Book);
+    //sorting by author name would need a join and a filesort and is not offered
+    protected static final SortWhitelist BOOK_SORTS = new SortWhitelist(SORT_BY_ID)
+            .allow(SORT_BY_ID, Sort.Direction.ASC, "id")
+            .allow(SORT_BY_TITLE, Sort.Direction.ASC, "title")
+            .allow(SORT_BY_PUBLISHED, Sort.Direction.DESC, "publishedOn")
+            .allow(SORT_BY_CREATED, Sort.Direction.DESC, "createdAt")
+            .allow(SORT_BY_UPDATED, Sort.Direction.DESC, "updatedAt");
 
     @Autowired
     private BookService bookService;
@@ -48,43 +73,75 @@ public class BookController {
     @Autowired
     private AuthorService authorService;
     @Autowired
-    private Message message;
+    private RecommendationService recommendationService;
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+    @Autowired
+    private BookListRows bookListRows;
     @Autowired
     private PageModel pageModel;
 
     /**
      * GET book by id
      * After redirect from book/create: model contains attribute "message"(success)
+     * "relatedBooks" are the precomputed recommendations
+     * Served from the CatalogSnapshot if it is enabled and has the book, otherwise from the database
      * @param id        book_id
      * @param model     attributeValues
      * @return          view template for single book
      */
     @RequestMapping( path = "/book/{id}")
     public String showSingleBook(@PathVariable("id") long id, Model model) {
-        if(!model.containsAttribute("message")){
-            message.reset();
-            model.addAttribute("message", message);
+        Message.of(model);
+        CatalogSnapshot.BookView view = catalogSnapshot.book(id);
+        if (view != null) {
+            model.addAttribute("book", view);
+            model.addAttribute("relatedBooks", catalogSnapshot.books(recommendationService.findRelatedIds(id)));
+            return BOOK_VIEW;
         }
-        model.addAttribute("book", bookService.findById(id));
+        Book book = bookService.findById(id);
+        model.addAttribute("book", book);
+        model.addAttribute("relatedBooks", recommendationService.findRelated(book));
         return BOOK_VIEW;
     }
 
     /**
      * GET all books from database
+     * The rows are the shared BookRows of BookListRows, not entities
+     * @param sort          key of BOOK_SORTS; unknown keys are answered with 400
+     * @param dir           'asc' or 'desc', otherwise the default direction of the key
      * @return              list view of books
      */
     @RequestMapping({"/books", "/"})
-    public ModelAndView showAllBooks(Model model) {
+    public String showAllBooks(Model model,
+                               @RequestParam(name = "sort", required = false) String sort,
+                               @RequestParam(name = "dir", required = false) String dir) {
+        Sort order = BOOK_SORTS.sort(sort, dir);
 
-        if(!model.containsAttribute("message")){ message.reset(); }
-        if(bookService.getAll().isEmpty()) message.setInfo(NO_BOOKS_IN_DB_INFO);
+        Message message = Message.of(model);
+        Page<BookRow> books = bookListRows.page(pageModel.pageRequest(order));
+        if(books.getTotalElements() == 0) message.setInfo(NO_BOOKS_IN_DB_INFO);
 
-        ModelAndView modelAndView = new ModelAndView(BOOK_LIST_VIEW);
-        pageModel.initPageAndSize();
-        modelAndView.addObject("books", bookService.findAll(PageRequest.of(pageModel.getPAGE(), pageModel.getSIZE())));
-        modelAndView.addObject("message", message);
+        model.addAttribute("books", books);
+        model.addAttribute("pageNumbers", pageModel.pageNumbers(books));
+        model.addAttribute("sort", BOOK_SORTS.key(sort));
+        model.addAttribute("dir", BOOK_SORTS.direction(sort, dir).name().toLowerCase());
+        return BOOK_LIST_VIEW;
+    }
 
-        return modelAndView;
+    /**
+     * GET one row of the book list, used by the live list updates to replace a changed row
+     * @param id        book_id
+     * @return          fragment 'row' of the list view
+     */
+    @GetMapping("/book/{id}/row")
+    public String showBookRow(@PathVariable("id") long id, Model model) {
+        BookRow row = bookListRows.row(id);
+        if (row == null) {
+            throw new ResourceNotFoundException("Book " + id + " not found");
+        }
+        model.addAttribute("books", Collections.singletonList(row));
+        return BOOK_LIST_VIEW + " :: row";
     }
 
     /**
@@ -105,9 +162,8 @@ public class BookController {
         Set<Author> allAuthors = authorService.getAll();
 
         if(allCategories.isEmpty() || allAuthors.isEmpty()){
-            message.setInfo(MUST_BE_AT_LEAST_ONE_AUTHOR_AND_CATEGRORY);
+            Message.of(model).setInfo(MUST_BE_AT_LEAST_ONE_AUTHOR_AND_CATEGRORY);
         }
-        model.addAttribute("message", message);
         model.addAttribute("allCategories", allCategories);
         model.addAttribute("allAuthors", allAuthors);
         return BOOK_ADD_FORM_VIEW;
@@ -132,16 +188,15 @@ public class BookController {
             attr.addFlashAttribute("org.springframework.validation.BindingResult.book", result);
             attr.addFlashAttribute("book", book);
             if(!bookService.titleValid(book)){
-                message.setError(BOOK_ALREADY_EXISTS);
+                attr.addFlashAttribute("message", Message.error(BOOK_ALREADY_EXISTS));
             }else{
-                message.setError(FIELD_VALIDATION_ERROR);
+                attr.addFlashAttribute("message", Message.error(FIELD_VALIDATION_ERROR));
             }
             return "redirect:/book/new";
         }
 
         Book createdBook = bookService.create(book);
-        message.reset();
-        message.setSuccess(NEW_BOOK_SUCCESS);
+        attr.addFlashAttribute("message", Message.success(NEW_BOOK_SUCCESS));
         return "redirect:/book/" + createdBook.getId();
     }
 
@@ -161,7 +216,7 @@ public class BookController {
 
         model.addAttribute("allCategories", categoryService.getAll());
         model.addAttribute("allAuthors", authorService.getAll());
-        model.addAttribute("message", message);
+        Message.of(model);
         return BOOK_EDIT_FORM_VIEW;
     }
 
@@ -183,27 +238,33 @@ public class BookController {
             attr.addFlashAttribute("org.springframework.validation.BindingResult.book", result);
             attr.addFlashAttribute("book", bookDetails);
             if(!bookService.titleValid(bookDetails)){
-                message.setError(BOOK_ALREADY_EXISTS);
+                attr.addFlashAttribute("message", Message.error(BOOK_ALREADY_EXISTS));
             }else{
-                message.setError(FIELD_VALIDATION_ERROR);
+                attr.addFlashAttribute("message", Message.error(FIELD_VALIDATION_ERROR));
             }
             return "redirect:/book/" + bookId + "/edit";
         }
-        bookService.update(bookId, bookDetails);
-        message.setSuccess(BOOK_UPDATED_SUCCESS);
-        attr.addFlashAttribute("message", message);
+        try {
+            bookService.update(bookId, bookDetails);
+        } catch (ConcurrentUpdateException e) {
+            //no flash attribute "book": the form is reloaded with the current version
+            attr.addFlashAttribute("message", Message.error(BOOK_CHANGED_CONCURRENTLY));
+            return "redirect:/book/" + bookId + "/edit";
+        }
+        attr.addFlashAttribute("message", Message.success(BOOK_UPDATED_SUCCESS));
         return "redirect:/book/" + bookId;
     }
 
     /**
      * DELETE book by id from database
      * @param bookId            book_id
+     * @param attr              stores flash attributes; used when method returns a redirect view name
      * @return              redirect: '/books'
      */
     @RequestMapping(path = "/book/{id}/delete", method = RequestMethod.GET)
-    public String deleteBook(@PathVariable("id") long bookId) {
+    public String deleteBook(@PathVariable("id") long bookId, RedirectAttributes attr) {
         bookService.delete(bookId);
-        message.setSuccess(BOOK_DELETED_SUCCESS);
+        attr.addFlashAttribute("message", Message.success(BOOK_DELETED_SUCCESS));
         return "redirect:/books";
     }
 
@@ -219,10 +280,15 @@ public class BookController {
         Book book = bookService.findById(bookId);
         Category category = categoryService.findById(catId);
 
-        if(bookService.removeFromCategory(book, category)){
-            message.setSuccess(book.getTitle() +" has been deleted from " + category.getName() +".");
-        }else{
-            message.setError(BOOK_MUST_AT_LEAST_HAVE_ONE_CATEGORY);
+        Message message;
+        try {
+            if(bookService.removeFromCategory(book, category)){
+                message = Message.success(book.getTitle() +" has been deleted from " + category.getName() +".");
+            }else{
+                message = Message.error(BOOK_MUST_AT_LEAST_HAVE_ONE_CATEGORY);
+            }
+        } catch (ConcurrentUpdateException e) {
+            message = Message.error(BOOK_CHANGED_CONCURRENTLY);
         }
         attr.addFlashAttribute("message", message);
         return "redirect:/category/" + category.getId();
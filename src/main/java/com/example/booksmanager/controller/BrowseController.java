@@ -0,0 +1,75 @@
+package com.example.booksmanager.controller;
+
+import com.example.booksmanager.dto.BrowseResult;
+import com.example.booksmanager.dto.FacetQuery;
+import com.example.booksmanager.service.BrowseService;
+import com.example.booksmanager.support.Message;
+import com.example.booksmanager.support.PageModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.Set;
+
+/**
+ * @author platoiscoding.com
+ */
+@Controller
+public class BrowseController {
+
+    //view templates
+    protected static final String BROWSE_VIEW = "books/browseBooks";                //faceted list view of books
+
+    //messages
+    protected static final String NO_MATCHING_BOOKS_INFO = "No Books match the selected filters.";
+
+    @Autowired
+    private BrowseService browseService;
+    @Autowired
+    private PageModel pageModel;
+
+    /**
+     * GET books filtered by any combination of categories, authors and year range
+     * @param categoryIds   category_ids, OR-ed
+     * @param authorIds     author_ids, OR-ed
+     * @param fromYear      first year of publication
+     * @param toYear        last year of publication
+     * @param model         attributeValues
+     * @return              faceted list view of books
+     */
+    @GetMapping("/browse")
+    public String browseBooks(@RequestParam(name = "category", required = false) Set<Long> categoryIds,
+                              @RequestParam(name = "author", required = false) Set<Long> authorIds,
+                              @RequestParam(name = "from", required = false) Integer fromYear,
+                              @RequestParam(name = "to", required = false) Integer toYear,
+                              Model model) {
+        Message message = Message.of(model);
+        FacetQuery query = new FacetQuery(categoryIds, authorIds, fromYear, toYear);
+
+        BrowseResult result = browseService.browse(query, pageModel.pageRequest());
+        if (result.getBooks().getTotalElements() == 0) message.setInfo(NO_MATCHING_BOOKS_INFO);
+
+        model.addAttribute("books", result.getBooks());
+        model.addAttribute("categoryFacets", result.getCategories());
+        model.addAttribute("authorFacets", result.getAuthors());
+        model.addAttribute("yearFacets", result.getYears());
+        model.addAttribute("from", fromYear);
+        model.addAttribute("to", toYear);
+        model.addAttribute("filterParams", filterParams(query));
+        return BROWSE_VIEW;
+    }
+
+    /**
+     * @return  query string of the filter for the pagination links, ends with '&' if not empty
+     */
+    private String filterParams(FacetQuery query) {
+        StringBuilder params = new StringBuilder();
+        query.getCategoryIds().forEach(id -> params.append("category=").append(id).append('&'));
+        query.getAuthorIds().forEach(id -> params.append("author=").append(id).append('&'));
+        if (query.getFromYear() != null) params.append("from=").append(query.getFromYear()).append('&');
+        if (query.getToYear() != null) params.append("to=").append(query.getToYear()).append('&');
+        return params.toString();
+    }
+}
@@ -2,18 +2,21 @@ package com.example.booksmanager.controller;
 
 import com.example.booksmanager.domain.Book;
 import com.example.booksmanager.domain.Category;
+import com.example.booksmanager.exception.ConcurrentUpdateException;
+import com.example.booksmanager.service.AssociationService;
 import com.example.booksmanager.service.CategoryService;
 import com.example.booksmanager.support.Message;
 import com.example.booksmanager.support.PageModel;
+import com.example.booksmanager.support.SortWhitelist;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
-import org.springframework.web.servlet.support.RequestContextUtils;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.util.*;
@@ -36,16 +39,32 @@ public class CategoryController {
     protected static final String NEW_CATEGORY_SUCCESS = "New Category has been added.";
     protected static final String NO_CATEGORIES_IN_DB_INFO = "There are no Categories in the Database.";
     protected static final String CATEGORY_UPDATED_SUCCESS = "Category has been updated.";
+    protected static final String CATEGORY_CHANGED_CONCURRENTLY = "This Category has been changed by someone else in the meantime. Please apply your changes to the current version.";
     protected static final String CATEGORY_DELETED_SUCCESS = "Category has been deleted.";
     protected static final String NO_BOOKS_IN_THIS_CATEGORY_INFO = "There are no books in this Category.";
     protected static final String FIELD_VALIDATION_ERROR = "Please correct the field errors.";
     protected static final String NO_DUPLICATES_ALLOWED_ERROR = "A Category with the same Name already exists in the database.";
 
+    //list orders
+    protected static final String SORT_BY_ID = "id";
+    protected static final String SORT_BY_BOOK_COUNT = "books";
+    protected static final String SORT_BY_NAME = "name";
+    protected static final String SORT_BY_CREATED = "created";
+    protected static final String SORT_BY_UPDATED = "updated";
+
+    //allowed list orders, each backed by an index on categories (see Category)
+    protected static final SortWhitelist CATEGORY_SORTS = new SortWhitelist(SORT_BY_ID)
+            .allow(SORT_BY_ID, Sort.Direction.ASC, "id")
+            .allow(SORT_BY_BOOK_COUNT, Sort.Direction.DESC, "bookCount")
+            .allow(SORT_BY_NAME, Sort.Direction.ASC, "name")
+            .allow(SORT_BY_CREATED, Sort.Direction.DESC, "createdAt")
+            .allow(SORT_BY_UPDATED, Sort.Direction.DESC, "updatedAt");
+
 
     @Autowired
     private CategoryService categoryService;
     @Autowired
-    private Message message;
+    private AssociationService associationService;
     @Autowired
     private PageModel pageModel;
 
@@ -56,51 +75,56 @@ public class CategoryController {
      * @param model     attributeValues
      * @return          view template for single category
      *                  pageable list of books per category
+     *                  "overlappingCategories" from the in-memory catalog graph
      */
     @GetMapping("/category/{id}")
-    public ModelAndView showSingleCategory(@PathVariable("id") long catId, Model model, HttpServletRequest request) {
+    public ModelAndView showSingleCategory(@PathVariable("id") long catId, Model model) {
         ModelAndView modelAndView = new ModelAndView(CATEGORY_VIEW);
         Category category = categoryService.findById(catId);
         Set<Book> books = category.getBooks();
 
-        //TODO umstrukturieren
-        Map<String, ?> inputFlashMap = RequestContextUtils.getInputFlashMap(request);
-        if(/* if redirected*/ inputFlashMap != null){
-            message = (Message) inputFlashMap.get("message");
-            if(books.isEmpty()) message.setInfo(NO_BOOKS_IN_THIS_CATEGORY_INFO);
-        }else{
-            message = new Message();
-            if(books.isEmpty()) message.setInfo(NO_BOOKS_IN_THIS_CATEGORY_INFO);
-            model.addAttribute("message", message);
-        }
+        //after a redirect the flashed message, e.g. from removeBookFromCategory
+        Message message = Message.of(model);
+        if(books.isEmpty()) message.setInfo(NO_BOOKS_IN_THIS_CATEGORY_INFO);
 
         modelAndView.addObject("booksList",books);
         model.addAttribute("category", category);
+        model.addAttribute("overlappingCategories", associationService.findOverlappingCategories(category.getId()));
 
         return modelAndView;
     }
 
     /**
      * GET all category from database
+     * @param sort          key of CATEGORY_SORTS; unknown keys are answered with 400
+     * @param dir           'asc' or 'desc', otherwise the default direction of the key
      * @return              list view of category
      */
     @RequestMapping("/categories")
-    public ModelAndView showAllCategories(Model model,HttpServletRequest request) {
-        if(!model.containsAttribute("message")){
-            message.reset();
-        }
-        Set<Category>  allCategories = categoryService.getAll();
-        ModelAndView modelAndView = new ModelAndView(CATEGORY_LIST_VIEW);
-
-        //Map<String, ?> inputFlashMap = RequestContextUtils.getInputFlashMap(request);
-        //if(inputFlashMap != null){message = (Message) inputFlashMap.get("message");}
-        if(allCategories.isEmpty()){message.setInfo(NO_CATEGORIES_IN_DB_INFO);}
-
-        pageModel.initPageAndSize();
-        modelAndView.addObject("categories", categoryService.findAll(PageRequest.of(pageModel.getPAGE(), pageModel.getSIZE())));
-        modelAndView.addObject("message", message);
+    public String showAllCategories(Model model,HttpServletRequest request,
+                                    @RequestParam(name = "sort", required = false) String sort,
+                                    @RequestParam(name = "dir", required = false) String dir) {
+        Sort order = CATEGORY_SORTS.sort(sort, dir);
+        Message message = Message.of(model);
+        Page<Category> categories = categoryService.findAll(pageModel.pageRequest(order));
+        if(categories.getTotalElements() == 0){message.setInfo(NO_CATEGORIES_IN_DB_INFO);}
+
+        model.addAttribute("categories", categories);
+        model.addAttribute("pageNumbers", pageModel.pageNumbers(categories));
+        model.addAttribute("sort", CATEGORY_SORTS.key(sort));
+        model.addAttribute("dir", CATEGORY_SORTS.direction(sort, dir).name().toLowerCase());
+        return CATEGORY_LIST_VIEW;
+    }
 
-        return modelAndView;
+    /**
+     * GET one row of the category list, used by the live list updates to replace a changed row
+     * @param id        category_id
+     * @return          fragment 'row' of the list view
+     */
+    @GetMapping("/category/{id}/row")
+    public String showCategoryRow(@PathVariable("id") long id, Model model) {
+        model.addAttribute("categories", Collections.singletonList(categoryService.findById(id)));
+        return CATEGORY_LIST_VIEW + " :: row";
     }
 
     /**
@@ -111,10 +135,10 @@ public class CategoryController {
      */
     @RequestMapping(path = "/category/new")
     public String newCategoryForm(Model model) {
-        if (!model.containsAttribute("category") || !model.containsAttribute("message")) {
+        if (!model.containsAttribute("category")) {
             model.addAttribute("category", new Category());
-            model.addAttribute("message", message);
         }
+        Message.of(model);
         return CATEGORY_ADD_FORM_VIEW;
     }
 
@@ -138,17 +162,15 @@ public class CategoryController {
             attr.addFlashAttribute("org.springframework.validation.BindingResult.category", result);
             attr.addFlashAttribute("category", category);
             if(!categoryService.nameIsValid(category)){
-                message.setError(NO_DUPLICATES_ALLOWED_ERROR);
+                attr.addFlashAttribute("message", Message.error(NO_DUPLICATES_ALLOWED_ERROR));
             }else{
-                message.setError(FIELD_VALIDATION_ERROR);
+                attr.addFlashAttribute("message", Message.error(FIELD_VALIDATION_ERROR));
             }
-            attr.addFlashAttribute("message", message);
             return "redirect:/category/new";
         }
         Category createdCategory = categoryService.create(category);
         model.addAttribute("category", createdCategory);
-        message.setSuccess(NEW_CATEGORY_SUCCESS);
-        attr.addFlashAttribute("message", message);
+        attr.addFlashAttribute("message", Message.success(NEW_CATEGORY_SUCCESS));
 
         return "redirect:/category/" + createdCategory.getId();
     }
@@ -162,11 +184,11 @@ public class CategoryController {
      */
     @GetMapping("/category/{id}/edit")
     public String editCategoryForm(@PathVariable("id") long catId, Model model){
-        if(!model.containsAttribute("category") || !model.containsAttribute("message") ){
+        if(!model.containsAttribute("category")){
             Category category = categoryService.findById(catId);
             model.addAttribute("category", category);
-            model.addAttribute("message", message);
         }
+        Message.of(model);
         return CATEGORY_EDIT_FORM_VIEW;
     }
 
@@ -190,31 +212,33 @@ public class CategoryController {
             attr.addFlashAttribute("category", categoryDetails);
 
             if(!categoryService.nameIsValid(categoryDetails)){
-                message.setError(NO_DUPLICATES_ALLOWED_ERROR);
+                attr.addFlashAttribute("message", Message.error(NO_DUPLICATES_ALLOWED_ERROR));
             }else{
-                message.setError(FIELD_VALIDATION_ERROR);
+                attr.addFlashAttribute("message", Message.error(FIELD_VALIDATION_ERROR));
             }
-            attr.addFlashAttribute("message", message);
             return "redirect:/category/" + categoryDetails.getId() + "/edit";
         }
-        categoryService.update(id, categoryDetails);
-        message.setSuccess(CATEGORY_UPDATED_SUCCESS);
-        attr.addFlashAttribute("message", message);
+        try {
+            categoryService.update(id, categoryDetails);
+        } catch (ConcurrentUpdateException e) {
+            //no flash attribute "category": the form is reloaded with the current version
+            attr.addFlashAttribute("message", Message.error(CATEGORY_CHANGED_CONCURRENTLY));
+            return "redirect:/category/" + id + "/edit";
+        }
+        attr.addFlashAttribute("message", Message.success(CATEGORY_UPDATED_SUCCESS));
         return "redirect:/category/" + id;
     }
 
     /**
      * DELETE book by id from database
      * @param id            category_id
-     * @param model         attributeValues
+     * @param attr          stores flash attributes; used when method returns a redirect view name
      * @return              redirect: '/categories'
      */
     @RequestMapping(path = "/category/{id}/delete", method = RequestMethod.GET)
-    public String deleteCategory(@PathVariable("id") long id, Model model) {
+    public String deleteCategory(@PathVariable("id") long id, RedirectAttributes attr) {
         categoryService.delete(id);
-        //TODo flashattr
-        message.setSuccess(CATEGORY_DELETED_SUCCESS);
-        model.addAttribute("message", message);
+        attr.addFlashAttribute("message", Message.success(CATEGORY_DELETED_SUCCESS));
         return "redirect:/categories";
     }
 }
@@ -0,0 +1,67 @@
+package com.example.booksmanager.controller;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.dto.ChangeFeedEvent;
+import com.example.booksmanager.service.CatalogChangeFeed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Server-Sent Events stream of catalog changes, used by the list views to patch themselves
+ * (see fragments/liveUpdates). Events:
+ *      changes:    JSON array of {type, id, operation}, coalesced per row
+ *      resync:     changes were dropped, the view has to be reloaded
+ * The handler must not touch the database: with open-in-view the entity manager stays bound to the
+ * request for as long as the stream is open.
+ * @author platoiscoding.com
+ */
+@RestController
+public class ChangeFeedController {
+
+    @Autowired
+    private CatalogChangeFeed changeFeed;
+
+    @Value("${booksmanager.feed.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    /**
+     * @param types     BOOK, AUTHOR and/or CATEGORY; all if missing
+     * @return          open stream; EventSource reconnects after the timeout
+     */
+    @GetMapping(path = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter changes(@RequestParam(name = "types", required = false) Set<ChangeEvent.EntityType> types) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        CatalogChangeFeed.Subscription subscription = changeFeed.subscribe(
+                types == null || types.isEmpty() ? EnumSet.allOf(ChangeEvent.EntityType.class) : EnumSet.copyOf(types),
+                new CatalogChangeFeed.Sink() {
+                    @Override
+                    public void send(List<ChangeFeedEvent> events) throws IOException {
+                        emitter.send(SseEmitter.event().name("changes").data(events, MediaType.APPLICATION_JSON));
+                    }
+
+                    @Override
+                    public void resync() throws IOException {
+                        emitter.send(SseEmitter.event().name("resync").data(""));
+                    }
+
+                    @Override
+                    public void heartbeat() throws IOException {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    }
+                });
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(e -> subscription.cancel());
+        return emitter;
+    }
+}
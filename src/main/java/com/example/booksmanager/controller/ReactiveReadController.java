@@ -0,0 +1,67 @@
+package com.example.booksmanager.controller;
+
+import com.example.booksmanager.dto.AuthorDto;
+import com.example.booksmanager.dto.BookDto;
+import com.example.booksmanager.dto.CategoryDto;
+import com.example.booksmanager.service.ReactiveReadService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Read-only JSON endpoints for books, authors and categories
+ * Handlers return Flux/Mono: the request thread is released while the data is loaded on the jpaScheduler.
+ * List endpoints stream element by element with backpressure when requested as application/stream+json
+ * and are collected into a JSON array for application/json.
+ * @author platoiscoding.com
+ */
+@RestController
+@RequestMapping("/api")
+public class ReactiveReadController {
+
+    protected static final String DEFAULT_PAGE_SIZE = "50";
+    protected static final int MAX_PAGE_SIZE = 500;
+
+    @Autowired
+    private ReactiveReadService reactiveReadService;
+
+    @GetMapping(path = "/books", produces = {MediaType.APPLICATION_STREAM_JSON_VALUE, MediaType.APPLICATION_JSON_UTF8_VALUE})
+    public Flux<BookDto> streamBooks(@RequestParam(name = "pageSize", defaultValue = DEFAULT_PAGE_SIZE) int pageSize) {
+        return reactiveReadService.streamBooks(boundedPageSize(pageSize));
+    }
+
+    @GetMapping("/book/{id}")
+    public Mono<BookDto> showBook(@PathVariable("id") long id) {
+        return reactiveReadService.findBook(id);
+    }
+
+    @GetMapping(path = "/authors", produces = {MediaType.APPLICATION_STREAM_JSON_VALUE, MediaType.APPLICATION_JSON_UTF8_VALUE})
+    public Flux<AuthorDto> streamAuthors(@RequestParam(name = "pageSize", defaultValue = DEFAULT_PAGE_SIZE) int pageSize) {
+        return reactiveReadService.streamAuthors(boundedPageSize(pageSize));
+    }
+
+    @GetMapping("/author/{id}")
+    public Mono<AuthorDto> showAuthor(@PathVariable("id") long id) {
+        return reactiveReadService.findAuthor(id);
+    }
+
+    @GetMapping(path = "/categories", produces = {MediaType.APPLICATION_STREAM_JSON_VALUE, MediaType.APPLICATION_JSON_UTF8_VALUE})
+    public Flux<CategoryDto> streamCategories(@RequestParam(name = "pageSize", defaultValue = DEFAULT_PAGE_SIZE) int pageSize) {
+        return reactiveReadService.streamCategories(boundedPageSize(pageSize));
+    }
+
+    @GetMapping("/category/{id}")
+    public Mono<CategoryDto> showCategory(@PathVariable("id") long id) {
+        return reactiveReadService.findCategory(id);
+    }
+
+    private int boundedPageSize(int pageSize) {
+        return Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+    }
+}
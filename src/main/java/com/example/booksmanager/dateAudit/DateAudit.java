@@ -28,6 +28,11 @@ public abstract class DateAudit implements Serializable {
     @LastModifiedDate
     private Date updatedAt;
 
+    //optimistic lock: incremented by every flushed change, checked by every UPDATE
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     public Date getCreatedAt() {
         return createdAt;
     }
@@ -43,4 +48,12 @@ public abstract class DateAudit implements Serializable {
     public void setUpdatedAt(Date updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
\ No newline at end of file
@@ -1,16 +1,22 @@
 package com.example.booksmanager.domain;
 
 import com.example.booksmanager.dateAudit.DateAudit;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Type;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotEmpty;
-import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "authors")
+@DynamicUpdate
+@Table(name = "authors", indexes = {
+        @Index(name = "idx_authors_book_count", columnList = "book_count, author_id"),
+        @Index(name = "idx_authors_last_name", columnList = "lastName, firstName, author_id"),
+        @Index(name = "idx_authors_created_at", columnList = "created_at, author_id"),
+        @Index(name = "idx_authors_updated_at", columnList = "updated_at, author_id")
+})
 public class Author extends DateAudit {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -27,16 +33,15 @@ public class Author extends DateAudit {
 
     @Lob
     @NotEmpty
-    @Type(type = "org.hibernate.type.TextType") //heroku config
+    @Type(type = "com.example.booksmanager.domain.CompressedTextType") //heroku config: a TextType, stored compressed
     private String bio;
 
     @ManyToMany(mappedBy = "authors")
     private Set<Book> books = new HashSet<>();
 
-    public Author() {
-        setCreatedAt(new Date());
-        setUpdatedAt(new Date());
-    }
+    //denormalized size of books; only changed by AuthorRepository.adjustBookCount, never by a flush
+    @Column(name = "book_count", nullable = false, updatable = false, columnDefinition = "integer default 0")
+    private int bookCount;
 
     public Long getId() {
         return id;
@@ -78,6 +83,14 @@ public class Author extends DateAudit {
         this.books = books;
     }
 
+    public int getBookCount() {
+        return bookCount;
+    }
+
+    public void setBookCount(int bookCount) {
+        this.bookCount = bookCount;
+    }
+
     public String getBio() {
         return bio;
     }
@@ -1,17 +1,27 @@
 package com.example.booksmanager.domain;
 
 import com.example.booksmanager.dateAudit.DateAudit;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Type;
 import javax.persistence.*;
 import javax.validation.constraints.NotEmpty;
-import java.util.Date;
+import java.time.DateTimeException;
+import java.time.LocalDate;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "books")
+@DynamicUpdate
+@Table(name = "books", indexes = {
+        @Index(name = "idx_books_published_on", columnList = "published_on, book_id"),
+        @Index(name = "idx_books_title", columnList = "title, book_id"),
+        @Index(name = "idx_books_created_at", columnList = "created_at, book_id"),
+        @Index(name = "idx_books_updated_at", columnList = "updated_at, book_id")
+})
 public class Book extends DateAudit {
 
+    public static final int SUMMARY_LENGTH = 200;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "book_id")
@@ -38,15 +48,24 @@ public class Book extends DateAudit {
     @Column(name = "published")
     private String year;
 
+    /**
+     * typed copy of 'year' (first day of the month), derived on every write;
+     * range filters and chronological sorts use this column and its index
+     */
+    @Column(name = "published_on")
+    private LocalDate publishedOn;
+
     @Lob
     @NotEmpty
-    @Type(type = "org.hibernate.type.TextType") //heroku config
+    @Type(type = "com.example.booksmanager.domain.CompressedTextType") //heroku config: a TextType, stored compressed
     private String description;
 
-    public Book(){
-        setCreatedAt(new Date());
-        setUpdatedAt(new Date());
-    }
+    /**
+     * start of 'description' for lists and previews, derived on every write;
+     * they read this short column instead of inflating the whole description
+     */
+    @Column(name = "summary", length = SUMMARY_LENGTH)
+    private String summary;
 
     public Long getId() {
         return id;
@@ -72,6 +91,10 @@ public class Book extends DateAudit {
         this.description = description;
     }
 
+    public String getSummary() {
+        return summary;
+    }
+
     public String getYear() {
         return year;
     }
@@ -80,6 +103,58 @@ public class Book extends DateAudit {
         this.year = year;
     }
 
+    public LocalDate getPublishedOn() {
+        return publishedOn;
+    }
+
+    @PrePersist
+    @PreUpdate
+    protected void deriveColumns() {
+        publishedOn = parsePublished(year);
+        summary = summarize(description);
+    }
+
+    /**
+     * @param published 'MM/yyyy' as entered in the book form
+     * @return          first day of that month or null if it can't be parsed
+     */
+    public static LocalDate parsePublished(String published) {
+        if (published == null) {
+            return null;
+        }
+        String[] parts = published.trim().split("/");
+        try {
+            if (parts.length == 2) {
+                return LocalDate.of(Integer.parseInt(parts[1].trim()), Integer.parseInt(parts[0].trim()), 1);
+            }
+            if (parts.length == 1) {
+                return LocalDate.of(Integer.parseInt(parts[0]), 1, 1);
+            }
+        } catch (NumberFormatException | DateTimeException e) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * @param description   full description
+     * @return              description cut at the last word boundary within SUMMARY_LENGTH, with an ellipsis
+     */
+    public static String summarize(String description) {
+        if (description == null) {
+            return null;
+        }
+        String text = description.trim().replaceAll("\\s+", " ");
+        if (text.length() <= SUMMARY_LENGTH) {
+            return text;
+        }
+        int end = text.lastIndexOf(' ', SUMMARY_LENGTH - 1);
+        if (end < SUMMARY_LENGTH / 2) {
+            end = SUMMARY_LENGTH - 1;
+        }
+        return text.substring(0, end).trim() + "\u2026";
+    }
+
     public Set<Category> getCategories() {
         return categories;
     }
@@ -1,14 +1,20 @@
 package com.example.booksmanager.domain;
 
 import com.example.booksmanager.dateAudit.DateAudit;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotEmpty;
-import java.util.Date;
 import java.util.Set;
 
 @Entity
-@Table(name = "categories")
+@DynamicUpdate
+@Table(name = "categories", indexes = {
+        @Index(name = "idx_categories_book_count", columnList = "book_count, category_id"),
+        @Index(name = "idx_categories_name", columnList = "name, category_id"),
+        @Index(name = "idx_categories_created_at", columnList = "created_at, category_id"),
+        @Index(name = "idx_categories_updated_at", columnList = "updated_at, category_id")
+})
 public class Category extends DateAudit {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -21,10 +27,9 @@ public class Category extends DateAudit {
     @ManyToMany(mappedBy = "categories")
     private Set<Book> books;
 
-    public Category() {
-        setCreatedAt(new Date());
-        setUpdatedAt(new Date());
-    }
+    //denormalized size of books; only changed by CategoryRepository.adjustBookCount, never by a flush
+    @Column(name = "book_count", nullable = false, updatable = false, columnDefinition = "integer default 0")
+    private int bookCount;
 
     public Long getId() {
         return id;
@@ -49,4 +54,12 @@ public class Category extends DateAudit {
     public void setBooks(Set<Book> books) {
         this.books = books;
     }
+
+    public int getBookCount() {
+        return bookCount;
+    }
+
+    public void setBookCount(int bookCount) {
+        this.bookCount = bookCount;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.example.booksmanager.domain;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Row of the change_events outbox: written in the transaction of a book, author or category change
+ * and handed to the ChangeEventListeners by the ChangeEventRelay after the commit.
+ */
+@Entity
+@Table(name = "change_events", indexes = {
+        @Index(name = "idx_change_events_unpublished", columnList = "published_at, event_id")
+})
+public class ChangeEvent {
+
+    public enum EntityType { BOOK, AUTHOR, CATEGORY }
+
+    public enum Operation { CREATED, UPDATED, DELETED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "event_id")
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity_type", nullable = false, length = 16)
+    private EntityType entityType;
+
+    @Column(name = "entity_id", nullable = false)
+    private Long entityId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "operation", nullable = false, length = 16)
+    private Operation operation;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Date createdAt;
+
+    //null until the relay has handed the event to all listeners
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "published_at")
+    private Date publishedAt;
+
+    protected ChangeEvent() {
+    }
+
+    public ChangeEvent(EntityType entityType, Long entityId, Operation operation) {
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.operation = operation;
+        this.createdAt = new Date();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public EntityType getEntityType() {
+        return entityType;
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public Date getPublishedAt() {
+        return publishedAt;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.booksmanager.domain;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encoding of the long texts (Book.description, Author.bio) in their TEXT column, see CompressedTextType
+ * A compressed value is PREFIX + Base64 of the zlib (Deflate) stream, so the column type stays the same on
+ * every database and rows written as plain text (data.sql, rows from before the encoding) are still read;
+ * TextCompressionBackfill compresses those. Texts below MIN_LENGTH, and texts that don't get shorter,
+ * are stored as they are. A plain text that starts with PREFIX is always compressed when written; one stored
+ * before the encoding is told apart by not decoding, and is read as it is.
+ * Code that reads the columns past JPA decodes them with decode().
+ */
+public final class CompressedText {
+
+    //starts no text a user can enter in a form
+    public static final String PREFIX = "\u0001z:";
+    //shorter texts don't get shorter by compressing them
+    static final int MIN_LENGTH = 256;
+
+    private CompressedText() {
+    }
+
+    /**
+     * @return  whether column holds a compressed text
+     */
+    public static boolean isEncoded(String column) {
+        return column != null && column.startsWith(PREFIX);
+    }
+
+    /**
+     * @param text  plain text
+     * @return      value to store in the column
+     */
+    public static String encode(String text) {
+        if (text == null) {
+            return null;
+        }
+        //a plain text that looks compressed is always compressed, so that decode can tell them apart
+        boolean ambiguous = isEncoded(text);
+        if (text.length() < MIN_LENGTH && !ambiguous) {
+            return text;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 16);
+            byte[] chunk = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            String encoded = PREFIX + Base64.getEncoder().encodeToString(out.toByteArray());
+            return encoded.length() < text.length() || ambiguous ? encoded : text;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param column    value of the column, compressed or plain
+     * @return          plain text
+     */
+    public static String decode(String column) {
+        if (!isEncoded(column)) {
+            return column;
+        }
+        byte[] compressed;
+        try {
+            compressed = Base64.getDecoder().decode(column.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            //plain text from before the encoding
+            return column;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 3);
+            byte[] chunk = new byte[4096];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(chunk);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return column;
+                }
+                out.write(chunk, 0, inflated);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            return column;
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.booksmanager.domain;
+
+import org.hibernate.type.AbstractSingleColumnStandardBasicType;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.StringTypeDescriptor;
+import org.hibernate.type.descriptor.sql.LongVarcharTypeDescriptor;
+
+/**
+ * org.hibernate.type.TextType whose values are compressed with CompressedText
+ * Same column type (LONGVARCHAR: 'longtext' on MySQL, 'text' on PostgreSQL) and same binding as TextType,
+ * so existing schemas validate; entities and dirty checking only ever see the plain text.
+ */
+public class CompressedTextType extends AbstractSingleColumnStandardBasicType<String> {
+
+    public CompressedTextType() {
+        super(LongVarcharTypeDescriptor.INSTANCE, new CompressedStringDescriptor());
+    }
+
+    @Override
+    public String getName() {
+        return "compressed_text";
+    }
+
+    private static final class CompressedStringDescriptor extends StringTypeDescriptor {
+
+        @Override
+        public <X> X unwrap(String value, Class<X> type, WrapperOptions options) {
+            return super.unwrap(CompressedText.encode(value), type, options);
+        }
+
+        @Override
+        public <X> String wrap(X value, WrapperOptions options) {
+            return CompressedText.decode(super.wrap(value, options));
+        }
+    }
+}
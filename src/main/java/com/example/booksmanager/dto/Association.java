@@ -0,0 +1,21 @@
+package com.example.booksmanager.dto;
+
+/**
+ * Entity linked to another one through shared books, e.g. a co-author and the number of books written together
+ */
+public class Association extends EntityRef {
+
+    private final int count;
+
+    public Association(Long id, String name, int count) {
+        super(id, name);
+        this.count = count;
+    }
+
+    /**
+     * @return number of shared books
+     */
+    public int getCount() {
+        return count;
+    }
+}
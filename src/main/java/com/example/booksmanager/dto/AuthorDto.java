@@ -0,0 +1,71 @@
+package com.example.booksmanager.dto;
+
+import com.example.booksmanager.domain.Author;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only view of an author
+ * has to be created inside a transaction, because it resolves the lazy books
+ */
+public class AuthorDto {
+
+    private final Long id;
+    private final String firstName;
+    private final String lastName;
+    private final String fullName;
+    private final String bio;
+    private final Long version;
+    private final List<EntityRef> books;
+
+    private AuthorDto(Author author) {
+        this.id = author.getId();
+        this.firstName = author.getFirstName();
+        this.lastName = author.getLastName();
+        this.fullName = author.getFullName();
+        this.bio = author.getBio();
+        this.version = author.getVersion();
+        this.books = new ArrayList<>();
+        author.getBooks().forEach(b -> books.add(new EntityRef(b.getId(), b.getTitle())));
+    }
+
+    /**
+     * @param author    managed entity
+     * @return          detached view of the author
+     */
+    public static AuthorDto from(Author author) {
+        return new AuthorDto(author);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public String getBio() {
+        return bio;
+    }
+
+    /**
+     * @return  version to send back with a change; a stale version is answered with 409
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    public List<EntityRef> getBooks() {
+        return books;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.booksmanager.dto;
+
+import com.example.booksmanager.domain.Book;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Read-only view of a book
+ * has to be created inside a transaction, because it resolves the lazy authors and categories
+ * Views for lists carry the summary only, without the description.
+ */
+public class BookDto {
+
+    private final Long id;
+    private final String title;
+    private final String year;
+    private final String summary;
+    private final String description;
+    private final List<EntityRef> authors;
+    private final List<EntityRef> categories;
+    private final Date createdAt;
+    private final Date updatedAt;
+    private final Long version;
+
+    private BookDto(Book book, boolean withDescription) {
+        this.id = book.getId();
+        this.title = book.getTitle();
+        this.year = book.getYear();
+        this.summary = book.getSummary() != null ? book.getSummary() : Book.summarize(book.getDescription());
+        this.description = withDescription ? book.getDescription() : null;
+        this.authors = new ArrayList<>();
+        book.getAuthors().forEach(a -> authors.add(new EntityRef(a.getId(), a.getFullName())));
+        this.categories = new ArrayList<>();
+        book.getCategories().forEach(c -> categories.add(new EntityRef(c.getId(), c.getName())));
+        this.createdAt = book.getCreatedAt();
+        this.updatedAt = book.getUpdatedAt();
+        this.version = book.getVersion();
+    }
+
+    /**
+     * @param book      managed entity
+     * @return          detached view of the book
+     */
+    public static BookDto from(Book book) {
+        return new BookDto(book, true);
+    }
+
+    /**
+     * @param book      managed entity
+     * @return          detached view of the book for lists, without the description
+     */
+    public static BookDto summaryOf(Book book) {
+        return new BookDto(book, false);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getYear() {
+        return year;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getDescription() {
+        return description;
+    }
+
+    public List<EntityRef> getAuthors() {
+        return authors;
+    }
+
+    public List<EntityRef> getCategories() {
+        return categories;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * @return  version to send back with a change; a stale version is answered with 409
+     */
+    public Long getVersion() {
+        return version;
+    }
+}
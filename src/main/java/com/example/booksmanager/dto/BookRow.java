@@ -0,0 +1,44 @@
+package com.example.booksmanager.dto;
+
+import java.util.List;
+
+/**
+ * One row of the book list: the shown fields of a book and the names of its authors and categories
+ * Immutable, so one instance is rendered by every request showing the book (see service.BookListRows).
+ */
+public class BookRow {
+
+    private final Long id;
+    private final String title;
+    private final String year;
+    private final List<EntityRef> authors;
+    private final List<EntityRef> categories;
+
+    public BookRow(Long id, String title, String year, List<EntityRef> authors, List<EntityRef> categories) {
+        this.id = id;
+        this.title = title;
+        this.year = year;
+        this.authors = authors;
+        this.categories = categories;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getYear() {
+        return year;
+    }
+
+    public List<EntityRef> getAuthors() {
+        return authors;
+    }
+
+    public List<EntityRef> getCategories() {
+        return categories;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.booksmanager.dto;
+
+import com.example.booksmanager.domain.Book;
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+
+/**
+ * Page of books matching a FacetQuery plus the facet values to refine it with
+ */
+public class BrowseResult {
+
+    private final Page<Book> books;
+    private final List<FacetValue> categories;
+    private final List<FacetValue> authors;
+    private final List<FacetValue> years;
+
+    public BrowseResult(Page<Book> books, List<FacetValue> categories, List<FacetValue> authors, List<FacetValue> years) {
+        this.books = books;
+        this.categories = categories;
+        this.authors = authors;
+        this.years = years;
+    }
+
+    public Page<Book> getBooks() {
+        return books;
+    }
+
+    public List<FacetValue> getCategories() {
+        return categories;
+    }
+
+    public List<FacetValue> getAuthors() {
+        return authors;
+    }
+
+    public List<FacetValue> getYears() {
+        return years;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.booksmanager.dto;
+
+import com.example.booksmanager.domain.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only view of a category
+ * has to be created inside a transaction, because it resolves the lazy books
+ */
+public class CategoryDto {
+
+    private final Long id;
+    private final String name;
+    private final Long version;
+    private final List<EntityRef> books;
+
+    private CategoryDto(Category category) {
+        this.id = category.getId();
+        this.name = category.getName();
+        this.version = category.getVersion();
+        this.books = new ArrayList<>();
+        if (category.getBooks() != null) {
+            category.getBooks().forEach(b -> books.add(new EntityRef(b.getId(), b.getTitle())));
+        }
+    }
+
+    /**
+     * @param category  managed entity
+     * @return          detached view of the category
+     */
+    public static CategoryDto from(Category category) {
+        return new CategoryDto(category);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return  version to send back with a change; a stale version is answered with 409
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    public List<EntityRef> getBooks() {
+        return books;
+    }
+}
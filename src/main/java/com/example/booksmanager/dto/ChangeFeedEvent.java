@@ -0,0 +1,31 @@
+package com.example.booksmanager.dto;
+
+import com.example.booksmanager.domain.ChangeEvent;
+
+/**
+ * One coalesced change as sent to the subscribers of /changes
+ */
+public class ChangeFeedEvent {
+
+    private final ChangeEvent.EntityType type;
+    private final Long id;
+    private final ChangeEvent.Operation operation;
+
+    public ChangeFeedEvent(ChangeEvent.EntityType type, Long id, ChangeEvent.Operation operation) {
+        this.type = type;
+        this.id = id;
+        this.operation = operation;
+    }
+
+    public ChangeEvent.EntityType getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public ChangeEvent.Operation getOperation() {
+        return operation;
+    }
+}
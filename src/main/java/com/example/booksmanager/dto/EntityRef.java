@@ -0,0 +1,24 @@
+package com.example.booksmanager.dto;
+
+/**
+ * Id and display name of a related entity
+ * used instead of the entity itself so that serialized views don't follow lazy associations
+ */
+public class EntityRef {
+
+    private final Long id;
+    private final String name;
+
+    public EntityRef(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.booksmanager.dto;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Filter for the faceted browse
+ * Values within one facet are OR-ed, the facets are AND-ed; an empty facet does not filter.
+ */
+public class FacetQuery {
+
+    private final Set<Long> categoryIds;
+    private final Set<Long> authorIds;
+    private final Integer fromYear;
+    private final Integer toYear;
+
+    /**
+     * @param categoryIds   books in any of these categories
+     * @param authorIds     books by any of these authors
+     * @param fromYear      published in or after this year, null for no lower bound
+     * @param toYear        published in or before this year, null for no upper bound
+     */
+    public FacetQuery(Set<Long> categoryIds, Set<Long> authorIds, Integer fromYear, Integer toYear) {
+        this.categoryIds = categoryIds == null ? Collections.emptySet() : categoryIds;
+        this.authorIds = authorIds == null ? Collections.emptySet() : authorIds;
+        this.fromYear = fromYear;
+        this.toYear = toYear;
+    }
+
+    public Set<Long> getCategoryIds() {
+        return categoryIds;
+    }
+
+    public Set<Long> getAuthorIds() {
+        return authorIds;
+    }
+
+    public Integer getFromYear() {
+        return fromYear;
+    }
+
+    public Integer getToYear() {
+        return toYear;
+    }
+
+    public boolean hasYearRange() {
+        return fromYear != null || toYear != null;
+    }
+}
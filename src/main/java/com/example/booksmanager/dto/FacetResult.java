@@ -0,0 +1,53 @@
+package com.example.booksmanager.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answer of the FacetIndex: one page of matching book ids and the counts of every facet value
+ * The counts of a facet are computed with the filters of the other facets only,
+ * so selecting a category still shows how many books the other categories would add.
+ */
+public class FacetResult {
+
+    private final List<Long> bookIds;
+    private final int total;
+    private final Map<Long, Integer> categoryCounts;
+    private final Map<Long, Integer> authorCounts;
+    private final Map<Integer, Integer> yearCounts;
+
+    public FacetResult(List<Long> bookIds, int total, Map<Long, Integer> categoryCounts,
+                       Map<Long, Integer> authorCounts, Map<Integer, Integer> yearCounts) {
+        this.bookIds = bookIds;
+        this.total = total;
+        this.categoryCounts = categoryCounts;
+        this.authorCounts = authorCounts;
+        this.yearCounts = yearCounts;
+    }
+
+    /**
+     * @return ids of the requested page, latest publication first
+     */
+    public List<Long> getBookIds() {
+        return bookIds;
+    }
+
+    /**
+     * @return number of books matching all facets
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    public Map<Long, Integer> getCategoryCounts() {
+        return categoryCounts;
+    }
+
+    public Map<Long, Integer> getAuthorCounts() {
+        return authorCounts;
+    }
+
+    public Map<Integer, Integer> getYearCounts() {
+        return yearCounts;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.booksmanager.dto;
+
+/**
+ * One selectable value of a facet in the browse view, e.g. category 'Fantasy' (7 books)
+ */
+public class FacetValue {
+
+    private final Object value;
+    private final String label;
+    private final int count;
+    private final boolean selected;
+
+    public FacetValue(Object value, String label, int count, boolean selected) {
+        this.value = value;
+        this.label = label;
+        this.count = count;
+        this.selected = selected;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isSelected() {
+        return selected;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.booksmanager.exception;
+
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * the DB-heavy endpoints are at their concurrency limit, see ConcurrencyLimitInterceptor
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class OverloadedException extends RuntimeException {
+
+    public OverloadedException(String message) {
+        //thrown while shedding load: no stack trace
+        super(message, null, false, false);
+    }
+}
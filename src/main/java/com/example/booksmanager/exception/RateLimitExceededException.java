@@ -0,0 +1,17 @@
+package com.example.booksmanager.exception;
+
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * the client has used up its token bucket for the endpoint, see RateLimitInterceptor
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class RateLimitExceededException extends RuntimeException {
+
+    public RateLimitExceededException(String message) {
+        //thrown while shedding load: no stack trace
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.booksmanager.exception;
+
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * the change feed has reached booksmanager.feed.max-subscribers
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class TooManySubscribersException extends RuntimeException {
+
+    public TooManySubscribersException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.booksmanager.exception;
+
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * a list was asked to be sorted by a key that no index backs
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class UnsupportedSortException extends RuntimeException {
+
+    public UnsupportedSortException(String message) {
+        super(message);
+    }
+}
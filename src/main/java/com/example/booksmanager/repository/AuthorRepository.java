@@ -3,11 +3,15 @@ package com.example.booksmanager.repository;
 import com.example.booksmanager.domain.Author;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
 import java.awt.print.Book;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 public interface AuthorRepository extends PagingAndSortingRepository<Author, Long> {
@@ -24,6 +28,32 @@ public interface AuthorRepository extends PagingAndSortingRepository<Author, Lon
      */
     Page<Author> findAll(Pageable pageable);
 
+    /**
+     * first half of a deferred join: with a whitelisted sort this only reads the index of the sort key
+     * @param pageable  page, size and sort
+     * @return          a page of ids in sort order
+     */
+    @Query(value = "SELECT a.id FROM Author a", countQuery = "SELECT COUNT(a) FROM Author a")
+    Page<Long> findIds(Pageable pageable);
+
+    /**
+     * keyset paging, used by the streams of the reactive read path: no count and no offset,
+     * and rows inserted or deleted meanwhile don't shift the following pages
+     * @param after     id of the last row of the previous page, 0 for the first page
+     * @param limit     page 0 and the page size
+     * @return          ids of the next page, ascending
+     */
+    @Query("SELECT a.id FROM Author a WHERE a.id > :after ORDER BY a.id")
+    List<Long> findIdsAfter(@Param("after") long after, Pageable limit);
+
+    /**
+     * second half of a keyset page: the authors with their books, in one query
+     * @param ids       ids of the page
+     * @return          the authors in any order
+     */
+    @EntityGraph(attributePaths = {"books"})
+    List<Author> findWithAssociationsByIdIn(Collection<Long> ids);
+
     /**
      * @return author by fullname
      */
@@ -32,4 +62,33 @@ public interface AuthorRepository extends PagingAndSortingRepository<Author, Lon
 
     Page<Author> findAllByBooks(Book book, Pageable pageable);
 
+    /**
+     * uses idx_authors_book_count
+     * @param pageable  page and size
+     * @return          authors with the most books first
+     */
+    Page<Author> findAllByOrderByBookCountDesc(Pageable pageable);
+
+    /**
+     * single UPDATE, no entity is loaded
+     * @param ids       author_ids
+     * @param delta     added to book_count of each author
+     * @return          number of updated authors
+     */
+    @Modifying
+    @Query(value = "UPDATE Author a SET a.bookCount = a.bookCount + :delta WHERE a.id IN :ids")
+    int adjustBookCount(@Param("ids") Collection<Long> ids, @Param("delta") int delta);
+
+    /**
+     * sets book_count to the number of rows in books_authors where the two differ
+     * @return          number of repaired authors
+     */
+    @Modifying
+    @Query(value = "UPDATE authors SET book_count = " +
+            "(SELECT COUNT(*) FROM books_authors ba WHERE ba.author_id = authors.author_id) " +
+            "WHERE book_count <> " +
+            "(SELECT COUNT(*) FROM books_authors ba WHERE ba.author_id = authors.author_id)",
+            nativeQuery = true)
+    int reconcileBookCounts();
+
 }
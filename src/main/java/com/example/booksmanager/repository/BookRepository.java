@@ -6,10 +6,14 @@ import com.example.booksmanager.domain.Book;
 import com.example.booksmanager.domain.Category;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 public interface BookRepository extends PagingAndSortingRepository<Book, Long> {
@@ -33,6 +37,32 @@ public interface BookRepository extends PagingAndSortingRepository<Book, Long> {
      */
     Page<Book> findAll(Pageable pageable);
 
+    /**
+     * first half of a deferred join: with a whitelisted sort this only reads the index of the sort key
+     * @param pageable  page, size and sort
+     * @return          a page of ids in sort order
+     */
+    @Query(value = "SELECT b.id FROM Book b", countQuery = "SELECT COUNT(b) FROM Book b")
+    Page<Long> findIds(Pageable pageable);
+
+    /**
+     * keyset paging, used by the streams of the reactive read path: no count and no offset,
+     * and rows inserted or deleted meanwhile don't shift the following pages
+     * @param after     id of the last row of the previous page, 0 for the first page
+     * @param limit     page 0 and the page size
+     * @return          ids of the next page, ascending
+     */
+    @Query("SELECT b.id FROM Book b WHERE b.id > :after ORDER BY b.id")
+    List<Long> findIdsAfter(@Param("after") long after, Pageable limit);
+
+    /**
+     * second half of a keyset page: the books with their authors and categories, in one query
+     * @param ids       ids of the page
+     * @return          the books in any order
+     */
+    @EntityGraph(attributePaths = {"authors", "categories"})
+    List<Book> findWithAssociationsByIdIn(Collection<Long> ids);
+
     /**
      * DB has table 'books_authors:(book_id, author_id)'
      * @param author            Author object, contains author_Id
@@ -43,4 +73,25 @@ public interface BookRepository extends PagingAndSortingRepository<Book, Long> {
 
     Page<Book> findAllByCategories(Category category, Pageable pageable);
 
+    /**
+     * range scan on idx_books_published_on
+     * @param from      first day of the first month, inclusive
+     * @param to        first day of the last month, inclusive
+     * @param pageable  page and size; the order is published_on, book_id
+     * @return          Page<T> Object with Book Objects published in [from, to]
+     */
+    Page<Book> findAllByPublishedOnBetweenOrderByPublishedOnAscIdAsc(LocalDate from, LocalDate to, Pageable pageable);
+
+    /**
+     * backward scan on idx_books_published_on; book_id breaks ties within a month
+     * @param pageable  page and size
+     * @return          Page<T> Object with Book Objects, newest first
+     */
+    Page<Book> findAllByOrderByPublishedOnDescIdDesc(Pageable pageable);
+
+    /**
+     * @return  number of books without a typed publication date
+     */
+    long countByPublishedOnIsNull();
+
 }
@@ -4,10 +4,14 @@ import com.example.booksmanager.domain.Book;
 import com.example.booksmanager.domain.Category;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 public interface CategoryRepository extends PagingAndSortingRepository<Category, Long> {
@@ -24,6 +28,32 @@ public interface CategoryRepository extends PagingAndSortingRepository<Category,
      */
     Page<Category> findAll(Pageable pageable);
 
+    /**
+     * first half of a deferred join: with a whitelisted sort this only reads the index of the sort key
+     * @param pageable  page, size and sort
+     * @return          a page of ids in sort order
+     */
+    @Query(value = "SELECT c.id FROM Category c", countQuery = "SELECT COUNT(c) FROM Category c")
+    Page<Long> findIds(Pageable pageable);
+
+    /**
+     * keyset paging, used by the streams of the reactive read path: no count and no offset,
+     * and rows inserted or deleted meanwhile don't shift the following pages
+     * @param after     id of the last row of the previous page, 0 for the first page
+     * @param limit     page 0 and the page size
+     * @return          ids of the next page, ascending
+     */
+    @Query("SELECT c.id FROM Category c WHERE c.id > :after ORDER BY c.id")
+    List<Long> findIdsAfter(@Param("after") long after, Pageable limit);
+
+    /**
+     * second half of a keyset page: the categories with their books, in one query
+     * @param ids       ids of the page
+     * @return          the categories in any order
+     */
+    @EntityGraph(attributePaths = {"books"})
+    List<Category> findWithAssociationsByIdIn(Collection<Long> ids);
+
     /**
      * for validation whether a category with same name already exists
      * @param categoryName
@@ -33,4 +63,33 @@ public interface CategoryRepository extends PagingAndSortingRepository<Category,
     Set<Category> findCategoryByName(@Param("categoryName") String categoryName);
 
     Page<Category> findAllByBooks(Book book, Pageable pageable);
+
+    /**
+     * uses idx_categories_book_count
+     * @param pageable  page and size
+     * @return          categories with the most books first
+     */
+    Page<Category> findAllByOrderByBookCountDesc(Pageable pageable);
+
+    /**
+     * single UPDATE, no entity is loaded
+     * @param ids       category_ids
+     * @param delta     added to book_count of each category
+     * @return          number of updated categories
+     */
+    @Modifying
+    @Query(value = "UPDATE Category c SET c.bookCount = c.bookCount + :delta WHERE c.id IN :ids")
+    int adjustBookCount(@Param("ids") Collection<Long> ids, @Param("delta") int delta);
+
+    /**
+     * sets book_count to the number of rows in books_categories where the two differ
+     * @return          number of repaired categories
+     */
+    @Modifying
+    @Query(value = "UPDATE categories SET book_count = " +
+            "(SELECT COUNT(*) FROM books_categories bc WHERE bc.category_id = categories.category_id) " +
+            "WHERE book_count <> " +
+            "(SELECT COUNT(*) FROM books_categories bc WHERE bc.category_id = categories.category_id)",
+            nativeQuery = true)
+    int reconcileBookCounts();
 }
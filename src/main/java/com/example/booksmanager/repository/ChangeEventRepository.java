@@ -0,0 +1,62 @@
+package com.example.booksmanager.repository;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public interface ChangeEventRepository extends CrudRepository<ChangeEvent, Long> {
+
+    /**
+     * uses idx_change_events_unpublished
+     * @param pageable  batch size
+     * @return          oldest events not yet handed to the listeners
+     */
+    List<ChangeEvent> findByPublishedAtIsNullOrderByIdAsc(Pageable pageable);
+
+    /**
+     * cluster mode: every node reads all events, see ChangeEventRelay
+     * @param id        events after this one
+     * @param pageable  batch size
+     * @return          the next events, oldest first
+     */
+    List<ChangeEvent> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * cluster mode: events committed late, into the gaps of the ids already read
+     * @param from      first event_id
+     * @param to        last event_id
+     * @return          the events in the range, oldest first
+     */
+    List<ChangeEvent> findByIdBetweenOrderByIdAsc(Long from, Long to);
+
+    /**
+     * @return  highest event_id, 0 if there are no events
+     */
+    @Query(value = "SELECT COALESCE(MAX(e.id), 0) FROM ChangeEvent e")
+    long findMaxId();
+
+    /**
+     * keeps the time of the first delivery, in cluster mode every node delivers the events
+     * @param ids           event_ids of a delivered batch
+     * @param publishedAt   time of delivery
+     * @return              number of updated events
+     */
+    @Modifying
+    @Query(value = "UPDATE ChangeEvent e SET e.publishedAt = :publishedAt WHERE e.id IN :ids AND e.publishedAt IS NULL")
+    int markPublished(@Param("ids") Collection<Long> ids, @Param("publishedAt") Date publishedAt);
+
+    /**
+     * @param before    events published before this time are removed
+     * @return          number of removed events
+     */
+    @Modifying
+    @Query(value = "DELETE FROM ChangeEvent e WHERE e.publishedAt < :before")
+    int deletePublishedBefore(@Param("before") Date before);
+}
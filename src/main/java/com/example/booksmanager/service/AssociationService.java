@@ -0,0 +1,24 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.dto.Association;
+
+import java.util.List;
+
+/**
+ * Queries over the book-author-category graph, answered from the CatalogGraph
+ * @author platoiscoding.com
+ */
+public interface AssociationService {
+
+    /**
+     * @param authorId  author_id
+     * @return          authors with books in common with the author, most shared books first
+     */
+    List<Association> findCoAuthors(Long authorId);
+
+    /**
+     * @param categoryId    category_id
+     * @return              other categories of the books in the category, most shared books first
+     */
+    List<Association> findOverlappingCategories(Long categoryId);
+}
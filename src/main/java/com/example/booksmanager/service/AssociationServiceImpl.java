@@ -0,0 +1,131 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.Author;
+import com.example.booksmanager.domain.Category;
+import com.example.booksmanager.dto.Association;
+import com.example.booksmanager.repository.AuthorRepository;
+import com.example.booksmanager.repository.CategoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The traversal runs on the int arrays of one CatalogGraph snapshot: the neighbours of the neighbours
+ * are collected into an int array, sorted and counted. The database is only asked for the names of
+ * the results, by primary key, or not at all if the CatalogSnapshot is serving.
+ * @author platoiscoding.com
+ */
+@Service
+@Transactional(readOnly = true)
+public class AssociationServiceImpl implements AssociationService {
+
+    @Autowired
+    private CatalogGraph catalogGraph;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
+    @Value("${booksmanager.associations.limit:10}")
+    private int limit;
+
+    @Override
+    public List<Association> findCoAuthors(Long authorId) {
+        CatalogGraph.Snapshot graph = catalogGraph.snapshot();
+        int node = graph.author(authorId);
+        if (node < 0) {
+            return Collections.emptyList();
+        }
+        int[][] top = twoHops(graph.booksOfAuthor(), graph.authorsOfBook(), node);
+        List<Long> ids = Arrays.stream(top[0]).mapToObj(graph::authorId).collect(Collectors.toList());
+        if (catalogSnapshot.isServing()) {
+            return named(ids, top[1], catalogSnapshot.authors(ids), CatalogSnapshot.AuthorView::getId,
+                    CatalogSnapshot.AuthorView::getFullName);
+        }
+        return named(ids, top[1], authorRepository.findAllById(ids), Author::getId, Author::getFullName);
+    }
+
+    @Override
+    public List<Association> findOverlappingCategories(Long categoryId) {
+        CatalogGraph.Snapshot graph = catalogGraph.snapshot();
+        int node = graph.category(categoryId);
+        if (node < 0) {
+            return Collections.emptyList();
+        }
+        int[][] top = twoHops(graph.booksOfCategory(), graph.categoriesOfBook(), node);
+        List<Long> ids = Arrays.stream(top[0]).mapToObj(graph::categoryId).collect(Collectors.toList());
+        return named(ids, top[1], categoryRepository.findAllById(ids), Category::getId, Category::getName);
+    }
+
+    /**
+     * @param out       node -> books
+     * @param back      book -> nodes of the same kind
+     * @param node      start
+     * @return          the limit nodes reached through most books (without node itself) and their counts,
+     *                  as {nodes, counts}, most first and then by index
+     */
+    private int[][] twoHops(CatalogGraph.Csr out, CatalogGraph.Csr back, int node) {
+        int size = 0;
+        for (int i = out.start(node); i < out.end(node); i++) {
+            size += back.degree(out.target(i));
+        }
+        int[] reached = new int[size];
+        size = 0;
+        for (int i = out.start(node); i < out.end(node); i++) {
+            int book = out.target(i);
+            for (int j = back.start(book); j < back.end(book); j++) {
+                if (back.target(j) != node) {
+                    reached[size++] = back.target(j);
+                }
+            }
+        }
+        Arrays.sort(reached, 0, size);
+        //runs of the same node, packed as count << 32 | ~node so that one sort orders by count, then index
+        long[] runs = new long[size];
+        int distinct = 0;
+        for (int i = 0; i < size; ) {
+            int j = i;
+            while (j < size && reached[j] == reached[i]) {
+                j++;
+            }
+            runs[distinct++] = (long) (j - i) << 32 | (~reached[i] & 0xffffffffL);
+            i = j;
+        }
+        Arrays.sort(runs, 0, distinct);
+        int results = Math.min(limit, distinct);
+        int[][] top = new int[2][results];
+        for (int r = 0; r < results; r++) {
+            long run = runs[distinct - 1 - r];
+            top[0][r] = ~(int) run;
+            top[1][r] = (int) (run >>> 32);
+        }
+        return top;
+    }
+
+    private static <T> List<Association> named(List<Long> ids, int[] counts, Iterable<T> entities,
+                                               Function<T, Long> idOf, Function<T, String> nameOf) {
+        Map<Long, String> names = new HashMap<>();
+        entities.forEach(entity -> names.put(idOf.apply(entity), nameOf.apply(entity)));
+        List<Association> result = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            String name = names.get(ids.get(i));
+            //deleted since the snapshot was built
+            if (name != null) {
+                result.add(new Association(ids.get(i), name, counts[i]));
+            }
+        }
+        return result;
+    }
+}
@@ -19,6 +19,8 @@ public interface AuthorService extends CrudService<Author, Long> {
     Set<Author> getAll();
     /**
      * finds a book from database by id
+     * Outside of a read-write transaction the author may be shared with concurrent callers: it is detached
+     * then, with its books loaded, and must not be modified.
      * @param id    author_id
      * @return      author with matching id
      */
@@ -34,7 +36,8 @@ public interface AuthorService extends CrudService<Author, Long> {
     /**
      * updates book from database with fields values in authordetails
      * @param id    author_id
-     * @param author  authordetails
+     * @param author  authordetails, including the version that was edited
+     * @throws com.example.booksmanager.exception.ConcurrentUpdateException if the author has been changed since
      */
     void update(Long id, Author author);
 
@@ -64,4 +67,11 @@ public interface AuthorService extends CrudService<Author, Long> {
     Page<Author> findAll(Pageable pageable);
 
     Page<Author> findAllByBooks(Book book, Pageable pageable);
+
+    /**
+     * ordered by the denormalized book count, no aggregation over books_authors
+     * @param pageable  page and size
+     * @return          authors with the most books first
+     */
+    Page<Author> findMostPopular(Pageable pageable);
 }
@@ -1,15 +1,23 @@
 package com.example.booksmanager.service;
 
+import com.example.booksmanager.config.CacheConfig;
 import com.example.booksmanager.domain.Author;
+import com.example.booksmanager.domain.ChangeEvent;
 import com.example.booksmanager.exception.ResourceNotFoundException;
 import com.example.booksmanager.repository.AuthorRepository;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import java.awt.print.Book;
-import java.util.Date;
 import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
@@ -18,15 +26,23 @@ import java.util.Set;
  * @author platoiscoding.com
  */
 @Service
+@Transactional(readOnly = true)
 public class AuthorServiceImpl implements AuthorService{
 
     @Autowired
     private  AuthorRepository authorRepository;
+    @Autowired
+    private ChangeEventOutbox changeEventOutbox;
+    @Autowired
+    private CoalescedReads coalescedReads;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     /**
      * @return all authors from database
      */
     @Override
+    @Cacheable(value = CacheConfig.ALL_AUTHORS, condition = CacheConfig.NOT_READING_OWN_WRITES)
     public Set<Author> getAll() {
         Set<Author> authorSet = new HashSet<>();
         authorRepository.findAll().iterator().forEachRemaining(authorSet::add);
@@ -34,30 +50,37 @@ public class AuthorServiceImpl implements AuthorService{
     }
 
     /**
-     * finds an author from database by id
+     * finds an author from database by id, shared with identical lookups in flight (see CoalescedReads)
      * @param id    author_id
-     * @return      author with matching id
+     * @return      author with matching id, with its books
      */
     @Override
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public Author findById(Long id) {
-        Optional<Author> authorOptional = authorRepository.findById(id);
-        if(!authorOptional.isPresent()){
-            throw new RuntimeException("Author Not Found!");
-        }
-        return authorOptional.get();
+        return coalescedReads.read("author.findById", id, () -> {
+            Optional<Author> authorOptional = authorRepository.findById(id);
+            if(!authorOptional.isPresent()){
+                throw new RuntimeException("Author Not Found!");
+            }
+            Author author = authorOptional.get();
+            Hibernate.initialize(author.getBooks());
+            return author;
+        });
     }
 
     /**
      * creates and saves new author into database
      * @param author  entity
-     * @return        newest Author from database (this author)
+     * @return        the saved author
      */
     @Override
+    @Transactional
     public Author create(Author author) {
         //TODO structure to enforce this function??
         author.setFullName();
-        authorRepository.save(author);
-        return getLatestEntry();
+        Author savedAuthor = authorRepository.save(author);
+        changeEventOutbox.record(ChangeEvent.EntityType.AUTHOR, savedAuthor.getId(), ChangeEvent.Operation.CREATED);
+        return savedAuthor;
     }
 
     /**
@@ -66,14 +89,16 @@ public class AuthorServiceImpl implements AuthorService{
      * @param author  authordetails
      */
     @Override
+    @Transactional
     public void update(Long id, Author author) {
-        Author currentAuthor = findById(id);
+        Author currentAuthor = EntityWriteSupport.writable(entityManager, findById(id));
+        EntityWriteSupport.checkVersion(currentAuthor, author.getVersion());
         currentAuthor.setFirstName(author.getFirstName());
         currentAuthor.setLastName(author.getLastName());
         currentAuthor.setFullName();
         currentAuthor.setBio(author.getBio());
-        currentAuthor.setUpdatedAt(new Date());
-        authorRepository.save(currentAuthor);
+        EntityWriteSupport.flush(entityManager);
+        changeEventOutbox.record(ChangeEvent.EntityType.AUTHOR, id, ChangeEvent.Operation.UPDATED);
     }
 
     /**
@@ -81,8 +106,10 @@ public class AuthorServiceImpl implements AuthorService{
      * @param id    author_id
      */
     @Override
+    @Transactional
     public void delete(Long id) {
         authorRepository.deleteById(id);
+        changeEventOutbox.record(ChangeEvent.EntityType.AUTHOR, id, ChangeEvent.Operation.DELETED);
     }
 
     /**
@@ -117,12 +144,20 @@ public class AuthorServiceImpl implements AuthorService{
      * @return          all authors from databse as Page<> object
      */
     @Override
-    public Page<Author> findAll(Pageable pageable){
-        return authorRepository.findAll(pageable);
+    public Page<Author> findAll(Pageable pageable) {
+        if (pageable.getSort().isUnsorted()) {
+            return authorRepository.findAll(pageable);
+        }
+        return DeferredJoin.load(authorRepository.findIds(pageable), authorRepository::findAllById, Author::getId);
     }
 
     @Override
     public Page<Author> findAllByBooks(Book book, Pageable pageable){
         return authorRepository.findAllByBooks(book, pageable);
     }
+
+    @Override
+    public Page<Author> findMostPopular(Pageable pageable){
+        return authorRepository.findAllByOrderByBookCountDesc(pageable);
+    }
 }
@@ -0,0 +1,18 @@
+package com.example.booksmanager.service;
+
+/**
+ * Outcome of one batch of a backfill, written in one transaction
+ * @author platoiscoding.com
+ */
+final class BackfillBatch {
+
+    final long lastId;
+    final int migrated;
+    final int skipped;
+
+    BackfillBatch(long lastId, int migrated, int skipped) {
+        this.lastId = lastId;
+        this.migrated = migrated;
+        this.skipped = skipped;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.repository.AuthorRepository;
+import com.example.booksmanager.repository.CategoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Repairs drift between the denormalized book_count columns and the join tables
+ * The counters are maintained by BookServiceImpl, but rows written past it (data.sql, manual SQL,
+ * deleted authors/categories) are only picked up here: once after startup and then periodically.
+ * @author platoiscoding.com
+ */
+@Component
+public class BookCountReconciler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BookCountReconciler.class);
+
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void reconcileOnStartup() {
+        reconcile();
+    }
+
+    /**
+     * @return number of repaired authors and categories
+     */
+    @Scheduled(fixedDelayString = "${booksmanager.book-count.reconcile-interval:3600000}",
+               initialDelayString = "${booksmanager.book-count.reconcile-interval:3600000}")
+    @Transactional
+    public int reconcile() {
+        int authors = authorRepository.reconcileBookCounts();
+        int categories = categoryRepository.reconcileBookCounts();
+        if (authors + categories > 0) {
+            LOG.info("repaired book counts of {} authors and {} categories", authors, categories);
+        }
+        return authors + categories;
+    }
+}
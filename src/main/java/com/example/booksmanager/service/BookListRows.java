@@ -0,0 +1,209 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.config.ReplicationContext;
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.dto.BookRow;
+import com.example.booksmanager.dto.EntityRef;
+import com.example.booksmanager.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rows of the book list, built once and shared by all requests until the book, one of its authors
+ * or one of its categories changes. A page costs the query of its ids; only the rows that are not
+ * cached are loaded, with three queries for the whole page instead of one per row and association,
+ * and without the entities, their collections and their descriptions.
+ * Rows are loaded from the primary: a row read from a lagging replica could outlive its change event.
+ * A book changed by a committed transaction whose event has not been relayed yet is read from the
+ * database (see pending), so a writer sees its change in the list right after the redirect.
+ * Pending changes are only known to the node that wrote them; while the writer has the read-your-writes
+ * cookie, all its rows are read from the database and not cached, whichever node serves it.
+ * @author platoiscoding.com
+ */
+@Component
+public class BookListRows implements ChangeEventListener {
+
+    private static final String BOOKS_SQL = "SELECT book_id, title, published FROM books WHERE book_id IN (%s)";
+    private static final String AUTHORS_SQL = "SELECT ba.book_id, a.author_id, CONCAT(a.first_name, ' ', a.last_name) FROM books_authors ba"
+            + " JOIN authors a ON a.author_id = ba.author_id WHERE ba.book_id IN (%s) ORDER BY a.author_id";
+    private static final String CATEGORIES_SQL = "SELECT bc.book_id, c.category_id, c.name FROM books_categories bc"
+            + " JOIN categories c ON c.category_id = bc.category_id WHERE bc.book_id IN (%s) ORDER BY c.category_id";
+
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${booksmanager.list-rows.max-size:10000}")
+    private int maxSize;
+
+    private final Map<Long, BookRow> rows = new ConcurrentHashMap<>();
+    //changed entity (type:id) -> newest event id, from the commit until the event is relayed
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    //incremented by every batch of changes; rows loaded before a batch are not stored after it
+    private volatile long generation;
+
+    /**
+     * @param pageable  page, size and sort
+     * @return          page of rows in the order of pageable
+     */
+    public Page<BookRow> page(Pageable pageable) {
+        Page<Long> ids = bookRepository.findIds(pageable);
+        return new PageImpl<>(rows(ids.getContent()), ids.getPageable(), ids.getTotalElements());
+    }
+
+    /**
+     * @param bookId    book_id
+     * @return          row of the book, or null if there is no such book
+     */
+    public BookRow row(long bookId) {
+        List<BookRow> found = rows(Collections.singletonList(bookId));
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * @param bookIds   book_ids
+     * @return          rows of the books that exist, in the order of bookIds
+     */
+    public List<BookRow> rows(List<Long> bookIds) {
+        boolean anyPending = !pending.isEmpty();
+        boolean cacheable = !ReplicationContext.isPrimaryForced() && (!anyPending || !hasPendingLookups());
+        long loadedIn = generation;
+        List<Long> missing = new ArrayList<>();
+        for (Long bookId : bookIds) {
+            if (!cacheable || !rows.containsKey(bookId)
+                    || anyPending && pending.containsKey(key(ChangeEvent.EntityType.BOOK, bookId))) {
+                missing.add(bookId);
+            }
+        }
+        Map<Long, BookRow> loaded = missing.isEmpty() ? Collections.emptyMap() : load(missing);
+        if (cacheable) {
+            store(loaded, loadedIn);
+        }
+        List<BookRow> result = new ArrayList<>(bookIds.size());
+        for (Long bookId : bookIds) {
+            BookRow row = loaded.isEmpty() ? rows.get(bookId) : loaded.getOrDefault(bookId, rows.get(bookId));
+            if (row != null) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * called by the write path inside its transaction, like CatalogSnapshot.pending
+     * @param event     change event just written
+     */
+    public void pending(ChangeEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        String key = key(event.getEntityType(), event.getEntityId());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                pending.merge(key, event.getId(), Math::max);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                    pending.remove(key, event.getId());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onChanges(List<ChangeEvent> events) {
+        synchronized (this) {
+            generation++;
+            //a changed author or category name is shown in many rows
+            if (events.stream().anyMatch(e -> e.getEntityType() != ChangeEvent.EntityType.BOOK)) {
+                rows.clear();
+            } else {
+                events.forEach(e -> rows.remove(e.getEntityId()));
+            }
+        }
+        for (ChangeEvent event : events) {
+            pending.computeIfPresent(key(event.getEntityType(), event.getEntityId()),
+                    (key, newest) -> newest <= event.getId() ? null : newest);
+        }
+    }
+
+    private boolean hasPendingLookups() {
+        for (String key : pending.keySet()) {
+            if (!key.startsWith(ChangeEvent.EntityType.BOOK.name())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param loaded        rows loaded by this request
+     * @param loadedIn      generation before they were loaded
+     */
+    private synchronized void store(Map<Long, BookRow> loaded, long loadedIn) {
+        if (loaded.isEmpty() || generation != loadedIn) {
+            return;
+        }
+        if (rows.size() + loaded.size() > maxSize) {
+            //no order of use is kept on the read path; starting over is cheaper than tracking it
+            rows.clear();
+        }
+        loaded.forEach((bookId, row) -> {
+            if (!pending.containsKey(key(ChangeEvent.EntityType.BOOK, bookId))) {
+                rows.put(bookId, row);
+            }
+        });
+    }
+
+    private Map<Long, BookRow> load(List<Long> bookIds) {
+        Object[] args = bookIds.toArray();
+        String in = String.join(",", Collections.nCopies(args.length, "?"));
+        Map<Long, List<EntityRef>> authors = refs(String.format(AUTHORS_SQL, in), args);
+        Map<Long, List<EntityRef>> categories = refs(String.format(CATEGORIES_SQL, in), args);
+        Map<Long, BookRow> loaded = new HashMap<>();
+        jdbcTemplate.query(String.format(BOOKS_SQL, in), rs -> {
+            long bookId = rs.getLong(1);
+            loaded.put(bookId, new BookRow(bookId, rs.getString(2), rs.getString(3),
+                    authors.getOrDefault(bookId, Collections.emptyList()),
+                    categories.getOrDefault(bookId, Collections.emptyList())));
+        }, args);
+        return loaded;
+    }
+
+    /**
+     * @param sql   selects book_id, the id and the name of the related entity
+     * @return      book_id -> related entities, in the order of sql
+     */
+    private Map<Long, List<EntityRef>> refs(String sql, Object[] args) {
+        Map<Long, List<EntityRef>> refs = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            refs.computeIfAbsent(rs.getLong(1), bookId -> new ArrayList<>(2))
+                    .add(new EntityRef(rs.getLong(2), rs.getString(3)));
+        }, args);
+        refs.replaceAll((bookId, list) -> Collections.unmodifiableList(list));
+        return refs;
+    }
+
+    private static String key(ChangeEvent.EntityType type, Long id) {
+        return type + ":" + id;
+    }
+}
@@ -24,6 +24,8 @@ public interface BookService extends CrudService<Book, Long> {
 
     /**
      * finds a book from database by id
+     * Outside of a read-write transaction the book may be shared with concurrent callers: it is detached
+     * then, with its authors and categories loaded, and must not be modified.
      * @param id    book_id
      * @return      book with matching id
      */
@@ -39,7 +41,8 @@ public interface BookService extends CrudService<Book, Long> {
     /**
      * updates book from database with fields values in bookdetails
      * @param id    book_id
-     * @param book  bookdetails
+     * @param book  bookdetails, including the version that was edited
+     * @throws com.example.booksmanager.exception.ConcurrentUpdateException if the book has been changed since
      */
     void update(Long id, Book book);
 
@@ -76,11 +79,28 @@ public interface BookService extends CrudService<Book, Long> {
     boolean titleValid(Book book);
 
     /**
-     *
+     * may be shared with concurrent callers like findById; the authors and categories of the books are not loaded then
      * @param author
      * @param pageable
      */
     Page<Book> findAllByAuthors(Author author, Pageable pageable);
 
+    /**
+     * may be shared with concurrent callers like findById; the authors and categories of the books are not loaded then
+     */
     Page<Book> findAllByCategories(Category category, Pageable pageable);
+
+    /**
+     * @param from      first year, inclusive
+     * @param to        last year, inclusive
+     * @param pageable  page and size
+     * @return          books published in [from, to], oldest first
+     */
+    Page<Book> findAllPublishedBetween(int from, int to, Pageable pageable);
+
+    /**
+     * @param pageable  page and size
+     * @return          books ordered by publication date, newest first
+     */
+    Page<Book> findAllNewestFirst(Pageable pageable);
 }
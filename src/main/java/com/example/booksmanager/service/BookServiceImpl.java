@@ -3,28 +3,48 @@ package com.example.booksmanager.service;
 import com.example.booksmanager.domain.Author;
 import com.example.booksmanager.domain.Book;
 import com.example.booksmanager.domain.Category;
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.repository.AuthorRepository;
 import com.example.booksmanager.repository.BookRepository;
 import com.example.booksmanager.repository.CategoryRepository;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Date;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @author platoiscoding.com
  */
 @Service
+@Transactional(readOnly = true)
 public class BookServiceImpl implements BookService {
 
     @Autowired
     private BookRepository bookRepository;
     @Autowired
     private CategoryRepository categoryRepository;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private ChangeEventOutbox changeEventOutbox;
+    @Autowired
+    private CoalescedReads coalescedReads;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     /**
      * @return all books in database
@@ -37,45 +57,65 @@ public class BookServiceImpl implements BookService {
     }
 
     /**
-     * finds a book from database by id
+     * finds a book from database by id, shared with identical lookups in flight (see CoalescedReads)
      * @param id    book_id
-     * @return      book with matching id
+     * @return      book with matching id, with its authors and categories
      */
     @Override
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public Book findById(Long id){
-        Optional<Book> bookOptional = bookRepository.findById(id);
-        if (!bookOptional.isPresent()) {
-            throw new RuntimeException("Book Not Found!");
-        }
-        return bookOptional.get();
+        return coalescedReads.read("book.findById", id, () -> {
+            Optional<Book> bookOptional = bookRepository.findById(id);
+            if (!bookOptional.isPresent()) {
+                throw new RuntimeException("Book Not Found!");
+            }
+            Book book = bookOptional.get();
+            Hibernate.initialize(book.getAuthors());
+            Hibernate.initialize(book.getCategories());
+            return book;
+        });
     }
 
     /**
      * creates and saves new book into database
      * @param book  entity
-     * @return      newest book from database(this book)
+     * @return      the saved book
      */
     @Override
+    @Transactional
     public Book create(Book book){
-        bookRepository.save(book);
-        return getLatestEntry();
+        Book savedBook = bookRepository.save(book);
+        adjustBookCounts(authorIds(savedBook.getAuthors()), categoryIds(savedBook.getCategories()), 1);
+        changeEventOutbox.record(ChangeEvent.EntityType.BOOK, savedBook.getId(), ChangeEvent.Operation.CREATED);
+        return savedBook;
     }
 
     /**
-     * updates book from database with fields values in bookdetails
+     * updates book from database with fields values in bookdetails;
+     * the managed book is changed in place and written by dirty checking, so only changed columns
+     * and join rows are written, and updated_at is set by auditing
      * @param id    book_id
      * @param book  bookdetails
      */
     @Override
+    @Transactional
     public void update(Long id, Book book){
-        Book currentBook = findById(id);
+        Book currentBook = EntityWriteSupport.writable(entityManager, findById(id));
+        EntityWriteSupport.checkVersion(currentBook, book.getVersion());
+        Set<Long> oldAuthorIds = authorIds(currentBook.getAuthors());
+        Set<Long> oldCategoryIds = categoryIds(currentBook.getCategories());
         currentBook.setTitle(book.getTitle());
-        currentBook.setAuthors(book.getAuthors());
-        currentBook.setCategories(book.getCategories());
+        EntityWriteSupport.replaceById(currentBook.getAuthors(), book.getAuthors(), Author::getId);
+        EntityWriteSupport.replaceById(currentBook.getCategories(), book.getCategories(), Category::getId);
         currentBook.setDescription(book.getDescription());
         currentBook.setYear(book.getYear());
-        currentBook.setUpdatedAt(new Date());
-        bookRepository.save(currentBook);
+        EntityWriteSupport.flush(entityManager);
+
+        Set<Long> newAuthorIds = authorIds(currentBook.getAuthors());
+        Set<Long> newCategoryIds = categoryIds(currentBook.getCategories());
+        adjustBookCounts(difference(newAuthorIds, oldAuthorIds), difference(newCategoryIds, oldCategoryIds), 1);
+        adjustBookCounts(difference(oldAuthorIds, newAuthorIds), difference(oldCategoryIds, newCategoryIds), -1);
+        changeEventOutbox.record(ChangeEvent.EntityType.BOOK, id, ChangeEvent.Operation.UPDATED);
     }
 
     /**
@@ -83,8 +123,12 @@ public class BookServiceImpl implements BookService {
      * @param id    book_id
      */
     @Override
+    @Transactional
     public void delete(Long id){
+        Book book = findById(id);
+        adjustBookCounts(authorIds(book.getAuthors()), categoryIds(book.getCategories()), -1);
         bookRepository.deleteById(id);
+        changeEventOutbox.record(ChangeEvent.EntityType.BOOK, id, ChangeEvent.Operation.DELETED);
     }
 
     /**
@@ -105,24 +149,26 @@ public class BookServiceImpl implements BookService {
      * @param category      category to remove from book
      */
     @Override
+    @Transactional
     public boolean removeFromCategory(Book book, Category category){
+        Long bookId = book.getId();
+        Long categoryId = category.getId();
+        book = EntityWriteSupport.managed(entityManager, book);
+        category = EntityWriteSupport.managed(entityManager, category);
         Set<Category> categoriesOfBook = book.getCategories();
         Set<Book> booksOfCategory = category.getBooks();
 
         if(categoriesOfBook.size() < 2){
             return false;
         }
-        //remove Book from Category
-        booksOfCategory.removeIf( b -> (b.getId() == book.getId()));
-        category.setBooks(booksOfCategory);
-        category.setUpdatedAt(new Date());
-        categoryRepository.save(category);
-
-        //remove Category from Book
-        categoriesOfBook.removeIf( cat -> (cat.getId() == category.getId()));
-        book.setCategories(categoriesOfBook);
-        book.setUpdatedAt(new Date());
-        bookRepository.save(book);
+        //remove Book from Category (inverse side, keeps the loaded category consistent)
+        booksOfCategory.removeIf( b -> b.getId().equals(bookId));
+
+        //remove Category from Book: deletes this one row of books_categories
+        categoriesOfBook.removeIf( cat -> cat.getId().equals(categoryId));
+        EntityWriteSupport.flush(entityManager);
+        categoryRepository.adjustBookCount(Collections.singleton(categoryId), -1);
+        changeEventOutbox.record(ChangeEvent.EntityType.BOOK, bookId, ChangeEvent.Operation.UPDATED);
         return true;
     }
 
@@ -137,27 +183,75 @@ public class BookServiceImpl implements BookService {
         bookRepository.findByTitle(bookDetails.getTitle()).iterator().forEachRemaining(bookSet::add);
 
         if(bookDetails.getId() != null){
-            Book currentBook = findById(bookDetails.getId());
-            return (bookDetails.getTitle().equals(currentBook.getTitle())
-                    && (bookSet.size() == 1));
+            return bookSet.isEmpty()
+                    || (bookSet.size() == 1 && bookSet.iterator().next().getId().equals(bookDetails.getId()));
         }
         else{
-            bookRepository.findByTitle(bookDetails.getTitle()).iterator().forEachRemaining(bookSet::add);
             return bookSet.isEmpty();
         }
     }
 
+    /**
+     * keeps the denormalized book_count of authors and categories in step with the join tables;
+     * runs in the transaction of the calling write method
+     * @param authorIds     author_ids whose count changes
+     * @param categoryIds   category_ids whose count changes
+     * @param delta         +1 for added books, -1 for removed books
+     */
+    private void adjustBookCounts(Set<Long> authorIds, Set<Long> categoryIds, int delta) {
+        if (!authorIds.isEmpty()) {
+            authorRepository.adjustBookCount(authorIds, delta);
+        }
+        if (!categoryIds.isEmpty()) {
+            categoryRepository.adjustBookCount(categoryIds, delta);
+        }
+    }
+
+    private static Set<Long> authorIds(Set<Author> authors) {
+        return authors == null ? Collections.emptySet()
+                : authors.stream().map(Author::getId).collect(Collectors.toSet());
+    }
+
+    private static Set<Long> categoryIds(Set<Category> categories) {
+        return categories == null ? Collections.emptySet()
+                : categories.stream().map(Category::getId).collect(Collectors.toSet());
+    }
+
+    private static Set<Long> difference(Set<Long> a, Set<Long> b) {
+        Set<Long> result = new HashSet<>(a);
+        result.removeAll(b);
+        return result;
+    }
+
     @Override
     public Page<Book> findAll(Pageable pageable) {
-        return bookRepository.findAll(pageable);
+        if (pageable.getSort().isUnsorted()) {
+            return bookRepository.findAll(pageable);
+        }
+        return DeferredJoin.load(bookRepository.findIds(pageable), bookRepository::findAllById, Book::getId);
     }
     @Override
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public Page<Book> findAllByAuthors(Author author, Pageable pageable){
-        return bookRepository.findAllByAuthors(author, pageable);
+        return coalescedReads.read("book.findAllByAuthors", Arrays.asList(author.getId(), pageable),
+                () -> bookRepository.findAllByAuthors(author, pageable));
     }
 
     @Override
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public Page<Book> findAllByCategories(Category category, Pageable pageable){
-        return bookRepository.findAllByCategories(category, pageable);
+        return coalescedReads.read("book.findAllByCategories", Arrays.asList(category.getId(), pageable),
+                () -> bookRepository.findAllByCategories(category, pageable));
+    }
+
+    @Override
+    public Page<Book> findAllPublishedBetween(int from, int to, Pageable pageable) {
+        return bookRepository.findAllByPublishedOnBetweenOrderByPublishedOnAscIdAsc(
+                LocalDate.of(from, 1, 1), LocalDate.of(to, 12, 1), pageable);
+    }
+
+    @Override
+    public Page<Book> findAllNewestFirst(Pageable pageable) {
+        return bookRepository.findAllByOrderByPublishedOnDescIdDesc(pageable);
     }
 }
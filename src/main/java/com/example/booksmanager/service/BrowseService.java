@@ -0,0 +1,19 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.dto.BrowseResult;
+import com.example.booksmanager.dto.FacetQuery;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Faceted browsing of books by category, author and publication year
+ * @author platoiscoding.com
+ */
+public interface BrowseService {
+
+    /**
+     * @param query     selected categories, authors and year range
+     * @param pageable  page and size
+     * @return          matching books, latest publication first, with the facet counts
+     */
+    BrowseResult browse(FacetQuery query, Pageable pageable);
+}
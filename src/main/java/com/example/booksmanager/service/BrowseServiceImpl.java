@@ -0,0 +1,70 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.Author;
+import com.example.booksmanager.domain.Book;
+import com.example.booksmanager.domain.Category;
+import com.example.booksmanager.dto.BrowseResult;
+import com.example.booksmanager.dto.FacetQuery;
+import com.example.booksmanager.dto.FacetResult;
+import com.example.booksmanager.dto.FacetValue;
+import com.example.booksmanager.repository.AuthorRepository;
+import com.example.booksmanager.repository.BookRepository;
+import com.example.booksmanager.repository.CategoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Filtering and counting is done by the FacetIndex; the database is only asked
+ * for the books of the requested page and the names of the facet values shown
+ * @author platoiscoding.com
+ */
+@Service
+@Transactional(readOnly = true)
+public class BrowseServiceImpl implements BrowseService {
+
+    @Autowired
+    private FacetIndex facetIndex;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Override
+    public BrowseResult browse(FacetQuery query, Pageable pageable) {
+        FacetResult result = facetIndex.query(query, (int) pageable.getOffset(), pageable.getPageSize());
+
+        //load the page by primary key and restore the order of the index
+        List<Book> books = DeferredJoin.inOrder(result.getBookIds(),
+                bookRepository.findAllById(result.getBookIds()), Book::getId);
+
+        Map<Long, String> categoryNames = new HashMap<>();
+        categoryRepository.findAllById(result.getCategoryCounts().keySet())
+                .forEach((Category c) -> categoryNames.put(c.getId(), c.getName()));
+        Map<Long, String> authorNames = new HashMap<>();
+        authorRepository.findAllById(result.getAuthorCounts().keySet())
+                .forEach((Author a) -> authorNames.put(a.getId(), a.getFullName()));
+
+        List<FacetValue> categories = new ArrayList<>();
+        result.getCategoryCounts().forEach((id, count) -> categories.add(
+                new FacetValue(id, categoryNames.getOrDefault(id, String.valueOf(id)), count, query.getCategoryIds().contains(id))));
+        List<FacetValue> authors = new ArrayList<>();
+        result.getAuthorCounts().forEach((id, count) -> authors.add(
+                new FacetValue(id, authorNames.getOrDefault(id, String.valueOf(id)), count, query.getAuthorIds().contains(id))));
+        List<FacetValue> years = new ArrayList<>();
+        new TreeMap<>(result.getYearCounts()).forEach((year, count) -> years.add(
+                new FacetValue(year, String.valueOf(year), count, false)));
+
+        return new BrowseResult(new PageImpl<>(books, pageable, result.getTotal()), categories, authors, years);
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.dto.ChangeFeedEvent;
+import com.example.booksmanager.exception.TooManySubscribersException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live feed of catalog changes for open list views (served as Server-Sent Events on /changes)
+ * Fed by the ChangeEventRelay. Every subscriber has a coalescing buffer: several changes of the same row
+ * between two flushes are sent as one, and a subscriber that falls more than buffer-size rows behind is
+ * told to reload instead. The relay only fills buffers; a separate thread flushes them, so a slow client
+ * never holds up the relay. The number of subscribers is bounded, each one holds an open connection.
+ * @author platoiscoding.com
+ */
+@Component
+public class CatalogChangeFeed implements ChangeEventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CatalogChangeFeed.class);
+
+    /**
+     * connection of one subscriber
+     */
+    public interface Sink {
+
+        void send(List<ChangeFeedEvent> events) throws IOException;
+
+        /**
+         * the subscriber missed changes and has to reload the view
+         */
+        void resync() throws IOException;
+
+        /**
+         * keeps idle connections open through proxies and detects closed ones
+         */
+        void heartbeat() throws IOException;
+    }
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "change-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${booksmanager.feed.max-subscribers:200}")
+    private int maxSubscribers;
+    @Value("${booksmanager.feed.buffer-size:100}")
+    private int bufferSize;
+    @Value("${booksmanager.feed.flush-interval:1000}")
+    private long flushIntervalMs;
+    @Value("${booksmanager.feed.heartbeat-interval:15000}")
+    private long heartbeatIntervalMs;
+
+    @PostConstruct
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        meterRegistry.ifAvailable(registry -> registry.gaugeCollectionSize("booksmanager.feed.subscribers",
+                Collections.emptyList(), subscriptions));
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdownNow();
+    }
+
+    /**
+     * @param types     entity types the subscriber wants to see
+     * @param sink      connection of the subscriber
+     * @return          subscription, to be cancelled when the connection ends
+     * @throws TooManySubscribersException  if max-subscribers connections are open
+     */
+    public synchronized Subscription subscribe(Set<ChangeEvent.EntityType> types, Sink sink) {
+        if (subscriptions.size() >= maxSubscribers) {
+            throw new TooManySubscribersException("The change feed has " + maxSubscribers + " subscribers");
+        }
+        Subscription subscription = new Subscription(types, sink);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    @Override
+    public void onChanges(List<ChangeEvent> events) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(events);
+        }
+    }
+
+    /**
+     * sends the buffered changes of every subscriber; run by the flusher thread
+     */
+    void flush() {
+        long now = System.currentTimeMillis();
+        for (Subscription subscription : subscriptions) {
+            try {
+                subscription.flush(now);
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("change feed subscriber gone", e);
+                subscription.cancel();
+            }
+        }
+    }
+
+    public final class Subscription {
+
+        private final Set<ChangeEvent.EntityType> types;
+        private final Sink sink;
+        //type:id -> pending change, in order of the first change since the last flush
+        private final Map<String, ChangeFeedEvent> pending = new LinkedHashMap<>();
+        private boolean overflow;
+        private long lastSent = System.currentTimeMillis();
+
+        private Subscription(Set<ChangeEvent.EntityType> types, Sink sink) {
+            this.types = types;
+            this.sink = sink;
+        }
+
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+
+        private synchronized void offer(List<ChangeEvent> events) {
+            for (ChangeEvent event : events) {
+                if (overflow || !types.contains(event.getEntityType())) {
+                    continue;
+                }
+                String key = event.getEntityType() + ":" + event.getEntityId();
+                ChangeFeedEvent previous = pending.get(key);
+                //a row created since the last flush stays 'created' until it is deleted
+                ChangeEvent.Operation operation = previous != null && previous.getOperation() == ChangeEvent.Operation.CREATED
+                        && event.getOperation() == ChangeEvent.Operation.UPDATED ? ChangeEvent.Operation.CREATED : event.getOperation();
+                pending.put(key, new ChangeFeedEvent(event.getEntityType(), event.getEntityId(), operation));
+                if (pending.size() > bufferSize) {
+                    pending.clear();
+                    overflow = true;
+                }
+            }
+        }
+
+        private void flush(long now) throws IOException {
+            List<ChangeFeedEvent> events;
+            boolean resync;
+            synchronized (this) {
+                events = new ArrayList<>(pending.values());
+                resync = overflow;
+                pending.clear();
+                overflow = false;
+            }
+            if (resync) {
+                sink.resync();
+            } else if (!events.isEmpty()) {
+                sink.send(events);
+            } else if (now - lastSent >= heartbeatIntervalMs) {
+                sink.heartbeat();
+            } else {
+                return;
+            }
+            lastSent = now;
+        }
+    }
+}
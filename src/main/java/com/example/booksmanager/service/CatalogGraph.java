@@ -0,0 +1,401 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * In-memory book-author-category graph on primitive arrays
+ * Books, authors and categories are numbered densely in id order (sorted long[] of ids, binary search
+ * for the way back); each relation is stored in both directions in compressed sparse row form:
+ * the neighbours of node i are targets[offsets[i] .. offsets[i + 1]). Two ints per edge and direction,
+ * no boxing, no entities; traversals never touch the database.
+ * Loaded by streaming the join tables after startup. A Snapshot is immutable: a batch of changes from
+ * the change_events relay builds a new one from the current arrays and the reloaded rows of the changed
+ * books (linear in the size of the graph, no full reload), and readers keep the snapshot they started with.
+ * Delivered before the other listeners, which may read the graph.
+ * @author platoiscoding.com
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CatalogGraph implements ChangeEventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CatalogGraph.class);
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    /**
+     * runs after the published_on backfill and before the indexes that read the graph
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    public synchronized void load() {
+        long start = System.currentTimeMillis();
+        long[] books = ids("SELECT book_id FROM books ORDER BY book_id");
+        long[] authors = ids("SELECT author_id FROM authors ORDER BY author_id");
+        long[] categories = ids("SELECT category_id FROM categories ORDER BY category_id");
+        Edges bookAuthors = new Edges();
+        jdbcTemplate.query("SELECT book_id, author_id FROM books_authors", rs -> {
+            bookAuthors.add(indexOf(books, rs.getLong(1)), indexOf(authors, rs.getLong(2)));
+        });
+        Edges bookCategories = new Edges();
+        jdbcTemplate.query("SELECT book_id, category_id FROM books_categories", rs -> {
+            bookCategories.add(indexOf(books, rs.getLong(1)), indexOf(categories, rs.getLong(2)));
+        });
+        snapshot = new Snapshot(books, authors, categories, bookAuthors, bookCategories);
+        meterRegistry.ifAvailable(registry -> registry.gauge("booksmanager.catalog-graph.bytes", this,
+                graph -> graph.snapshot().bytes()));
+        LOG.info("catalog graph loaded: {} books, {} authors, {} categories, {} kB in {} ms",
+                books.length, authors.length, categories.length, snapshot.bytes() / 1024, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * serves a graph read from a snapshot file until load() has read the database;
+     * ignored once the graph has been loaded
+     * @param bookAuthors       book_id, author_id pairs
+     * @param bookCategories    book_id, category_id pairs
+     */
+    public synchronized void restore(long[] books, long[] authors, long[] categories, long[] bookAuthors, long[] bookCategories) {
+        if (snapshot != Snapshot.EMPTY) {
+            return;
+        }
+        Edges authorEdges = new Edges();
+        for (int i = 0; i < bookAuthors.length; i += 2) {
+            authorEdges.add(indexOf(books, bookAuthors[i]), indexOf(authors, bookAuthors[i + 1]));
+        }
+        Edges categoryEdges = new Edges();
+        for (int i = 0; i < bookCategories.length; i += 2) {
+            categoryEdges.add(indexOf(books, bookCategories[i]), indexOf(categories, bookCategories[i + 1]));
+        }
+        snapshot = new Snapshot(books, authors, categories, authorEdges, categoryEdges);
+    }
+
+    /**
+     * @return current graph; keep it for the whole traversal, so it doesn't change underneath
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public synchronized void onChanges(List<ChangeEvent> events) {
+        Set<Long> books = new HashSet<>();
+        Set<Long> authors = new HashSet<>();
+        Set<Long> categories = new HashSet<>();
+        for (ChangeEvent event : events) {
+            switch (event.getEntityType()) {
+                case BOOK:
+                    books.add(event.getEntityId());
+                    break;
+                case AUTHOR:
+                    authors.add(event.getEntityId());
+                    break;
+                default:
+                    categories.add(event.getEntityId());
+            }
+        }
+        Snapshot current = snapshot;
+        //ids of the changed nodes that still exist
+        long[] existingBooks = existing("books", "book_id", books);
+        long[] existingAuthors = existing("authors", "author_id", authors);
+        long[] existingCategories = existing("categories", "category_id", categories);
+
+        long[] bookIds = merge(current.bookIds, books, existingBooks);
+        long[] authorIds = merge(current.authorIds, authors, existingAuthors);
+        long[] categoryIds = merge(current.categoryIds, categories, existingCategories);
+
+        //edges of unchanged books are copied, those of changed books are reloaded
+        Edges bookAuthors = new Edges();
+        Edges bookCategories = new Edges();
+        for (int b = 0; b < current.bookIds.length; b++) {
+            long bookId = current.bookIds[b];
+            if (books.contains(bookId)) {
+                continue;
+            }
+            int book = indexOf(bookIds, bookId);
+            for (int i = current.bookAuthors.offsets[b]; i < current.bookAuthors.offsets[b + 1]; i++) {
+                int author = indexOf(authorIds, current.authorIds[current.bookAuthors.targets[i]]);
+                if (author >= 0) {
+                    bookAuthors.add(book, author);
+                }
+            }
+            for (int i = current.bookCategories.offsets[b]; i < current.bookCategories.offsets[b + 1]; i++) {
+                int category = indexOf(categoryIds, current.categoryIds[current.bookCategories.targets[i]]);
+                if (category >= 0) {
+                    bookCategories.add(book, category);
+                }
+            }
+        }
+        if (existingBooks.length > 0) {
+            Object[] args = Arrays.stream(existingBooks).boxed().toArray();
+            String in = " WHERE book_id IN (" + String.join(",", Collections.nCopies(args.length, "?")) + ")";
+            jdbcTemplate.query("SELECT book_id, author_id FROM books_authors" + in, rs -> {
+                bookAuthors.add(indexOf(bookIds, rs.getLong(1)), indexOf(authorIds, rs.getLong(2)));
+            }, args);
+            jdbcTemplate.query("SELECT book_id, category_id FROM books_categories" + in, rs -> {
+                bookCategories.add(indexOf(bookIds, rs.getLong(1)), indexOf(categoryIds, rs.getLong(2)));
+            }, args);
+        }
+        snapshot = new Snapshot(bookIds, authorIds, categoryIds, bookAuthors, bookCategories);
+    }
+
+    private long[] ids(String sql) {
+        LongArray ids = new LongArray();
+        jdbcTemplate.query(sql, rs -> {
+            ids.add(rs.getLong(1));
+        });
+        return ids.toArray();
+    }
+
+    private long[] existing(String table, String idColumn, Set<Long> ids) {
+        if (ids.isEmpty()) {
+            return new long[0];
+        }
+        Object[] args = ids.toArray();
+        LongArray existing = new LongArray();
+        jdbcTemplate.query("SELECT " + idColumn + " FROM " + table + " WHERE " + idColumn + " IN ("
+                + String.join(",", Collections.nCopies(args.length, "?")) + ")", rs -> {
+            existing.add(rs.getLong(1));
+        }, args);
+        return existing.toArray();
+    }
+
+    /**
+     * @return sorted ids without the changed ones, plus the changed ones that exist
+     */
+    private static long[] merge(long[] ids, Set<Long> changed, long[] existing) {
+        if (changed.isEmpty()) {
+            return ids;
+        }
+        LongArray merged = new LongArray();
+        for (long id : ids) {
+            if (!changed.contains(id)) {
+                merged.add(id);
+            }
+        }
+        for (long id : existing) {
+            merged.add(id);
+        }
+        long[] result = merged.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static int indexOf(long[] sortedIds, long id) {
+        int index = Arrays.binarySearch(sortedIds, id);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * immutable graph
+     */
+    public static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(new long[0], new long[0], new long[0], new Edges(), new Edges());
+
+        private final long[] bookIds;
+        private final long[] authorIds;
+        private final long[] categoryIds;
+        private final Csr bookAuthors;
+        private final Csr authorBooks;
+        private final Csr bookCategories;
+        private final Csr categoryBooks;
+
+        private Snapshot(long[] bookIds, long[] authorIds, long[] categoryIds, Edges bookAuthors, Edges bookCategories) {
+            this.bookIds = bookIds;
+            this.authorIds = authorIds;
+            this.categoryIds = categoryIds;
+            this.bookAuthors = Csr.of(bookIds.length, bookAuthors.sources, bookAuthors.targets, bookAuthors.size);
+            this.authorBooks = Csr.of(authorIds.length, bookAuthors.targets, bookAuthors.sources, bookAuthors.size);
+            this.bookCategories = Csr.of(bookIds.length, bookCategories.sources, bookCategories.targets, bookCategories.size);
+            this.categoryBooks = Csr.of(categoryIds.length, bookCategories.targets, bookCategories.sources, bookCategories.size);
+        }
+
+        /**
+         * @return dense index of the book or -1
+         */
+        public int book(long bookId) {
+            return indexOf(bookIds, bookId);
+        }
+
+        public int author(long authorId) {
+            return indexOf(authorIds, authorId);
+        }
+
+        public int category(long categoryId) {
+            return indexOf(categoryIds, categoryId);
+        }
+
+        public long bookId(int book) {
+            return bookIds[book];
+        }
+
+        public long authorId(int author) {
+            return authorIds[author];
+        }
+
+        public long categoryId(int category) {
+            return categoryIds[category];
+        }
+
+        public int books() {
+            return bookIds.length;
+        }
+
+        public int authors() {
+            return authorIds.length;
+        }
+
+        public int categories() {
+            return categoryIds.length;
+        }
+
+        public Csr authorsOfBook() {
+            return bookAuthors;
+        }
+
+        public Csr booksOfAuthor() {
+            return authorBooks;
+        }
+
+        public Csr categoriesOfBook() {
+            return bookCategories;
+        }
+
+        public Csr booksOfCategory() {
+            return categoryBooks;
+        }
+
+        /**
+         * @return size of the arrays
+         */
+        public long bytes() {
+            return 8L * (bookIds.length + authorIds.length + categoryIds.length)
+                    + bookAuthors.bytes() + authorBooks.bytes() + bookCategories.bytes() + categoryBooks.bytes();
+        }
+    }
+
+    /**
+     * one direction of a relation in compressed sparse row form
+     */
+    public static final class Csr {
+
+        private final int[] offsets;
+        private final int[] targets;
+
+        private Csr(int[] offsets, int[] targets) {
+            this.offsets = offsets;
+            this.targets = targets;
+        }
+
+        /**
+         * counting sort of the edges by source
+         */
+        static Csr of(int nodes, int[] sources, int[] targets, int edges) {
+            int[] offsets = new int[nodes + 1];
+            for (int i = 0; i < edges; i++) {
+                offsets[sources[i] + 1]++;
+            }
+            for (int node = 0; node < nodes; node++) {
+                offsets[node + 1] += offsets[node];
+            }
+            int[] next = Arrays.copyOf(offsets, nodes);
+            int[] sorted = new int[edges];
+            for (int i = 0; i < edges; i++) {
+                sorted[next[sources[i]]++] = targets[i];
+            }
+            return new Csr(offsets, sorted);
+        }
+
+        /**
+         * @return number of neighbours of node
+         */
+        public int degree(int node) {
+            return offsets[node + 1] - offsets[node];
+        }
+
+        /**
+         * @return position of the first neighbour of node, for use with target
+         */
+        public int start(int node) {
+            return offsets[node];
+        }
+
+        public int end(int node) {
+            return offsets[node + 1];
+        }
+
+        public int target(int position) {
+            return targets[position];
+        }
+
+        /**
+         * @return copy of the neighbours of node
+         */
+        public int[] neighbours(int node) {
+            return Arrays.copyOfRange(targets, offsets[node], offsets[node + 1]);
+        }
+
+        long bytes() {
+            return 4L * (offsets.length + targets.length);
+        }
+    }
+
+    /**
+     * growable edge list; edges to unknown nodes (-1, rows inserted since the node ids were read) are dropped
+     */
+    private static final class Edges {
+        private int[] sources = new int[1024];
+        private int[] targets = new int[1024];
+        private int size;
+
+        void add(int source, int target) {
+            if (source < 0 || target < 0) {
+                return;
+            }
+            if (size == sources.length) {
+                sources = Arrays.copyOf(sources, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+            }
+            sources[size] = source;
+            targets[size] = target;
+            size++;
+        }
+    }
+
+    private static final class LongArray {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
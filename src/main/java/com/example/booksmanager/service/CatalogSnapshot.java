@@ -0,0 +1,717 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.Book;
+import com.example.booksmanager.config.ReplicationContext;
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.domain.CompressedText;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only copy of the catalog outside the Java heap, for serving the book and author pages
+ * without entities (enabled by booksmanager.snapshot.enabled)
+ * Every book, author and category is one binary record in a direct ByteBuffer:
+ * [int record length][per field: int byte length (-1 = null), UTF-8 bytes]; a sorted long[] of ids and an
+ * int[] of offsets per table find them. The links between them are read from the CatalogGraph.
+ * The views handed to the templates are flyweights over a record; a field is only decoded when the
+ * template reads it, and nothing else is allocated per page view: no persistence context, no
+ * collection wrappers, no @Lob strings that are not shown. Descriptions and bios are kept as stored, compressed
+ * (see CompressedText), and inflated by the view.
+ * Changed rows are appended behind the last record and published with new id tables, so readers of
+ * the previous image never see a record being written; once more than half of the buffer holds replaced
+ * records, the live ones are compacted into a new buffer.
+ * The service write path marks the rows it writes as pending (see ChangeEventOutbox) until their change
+ * has been applied; pending rows are not served from here, so the redirect after an update shows it.
+ * A writer whose next request lands on another node is not served from here at all while it has the
+ * read-your-writes cookie (ReplicationContext.isPrimaryForced), as that node has no pending rows for the change.
+ * With booksmanager.snapshot.file set, the image and the links are written to that file in the background
+ * (see CatalogSnapshotFile) and mapped on startup: the pages are served from the file while the snapshot
+ * and the graph are rebuilt from the database, and for as long as that fails, e.g. during an outage.
+ * @author platoiscoding.com
+ */
+@Component
+public class CatalogSnapshot implements ChangeEventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CatalogSnapshot.class);
+
+    private static final int BOOK_TITLE = 0;
+    private static final int BOOK_YEAR = 1;
+    private static final int BOOK_DESCRIPTION = 2;
+    private static final int BOOK_SUMMARY = 3;
+    private static final int AUTHOR_FULL_NAME = 0;
+    private static final int AUTHOR_BIO = 1;
+    private static final int CATEGORY_NAME = 0;
+
+    private static final String BOOKS_SQL = "SELECT book_id, title, published, description, summary FROM books";
+    private static final String AUTHORS_SQL = "SELECT author_id, full_name, bio FROM authors";
+    private static final String CATEGORIES_SQL = "SELECT category_id, name FROM categories";
+    private static final String IN = " WHERE %s IN (%s) ORDER BY %1$s";
+
+    private volatile Image image;
+    //image mapped from the file, not rebuilt from the database yet
+    private boolean fromFile;
+    //image last written to the file
+    private Image written;
+
+    //type:id -> id of the newest change event written for the row and not applied yet
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private CatalogGraph catalogGraph;
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${booksmanager.snapshot.enabled:false}")
+    private boolean enabled;
+    @Value("${booksmanager.snapshot.initial-capacity:4194304}")
+    private int initialCapacity;
+    @Value("${booksmanager.snapshot.file:}")
+    private String file;
+
+    /**
+     * maps the snapshot file, if there is one, before the web server takes requests
+     */
+    @PostConstruct
+    public synchronized void open() {
+        if (!enabled) {
+            return;
+        }
+        meterRegistry.ifAvailable(registry -> registry.gauge("booksmanager.snapshot.bytes", this,
+                snapshot -> snapshot.image == null ? 0 : snapshot.image.end));
+        if (file.isEmpty() || !Files.isRegularFile(Paths.get(file))) {
+            return;
+        }
+        try {
+            CatalogSnapshotFile.Contents contents = CatalogSnapshotFile.read(Paths.get(file));
+            if (contents == null) {
+                LOG.warn("ignoring catalog snapshot file {}: not format version {}", file, CatalogSnapshotFile.VERSION);
+                return;
+            }
+            catalogGraph.restore(contents.image.books.ids, contents.image.authors.ids, contents.image.categories.ids,
+                    contents.bookAuthors, contents.bookCategories);
+            image = contents.image;
+            written = image;
+            fromFile = true;
+            LOG.info("serving catalog snapshot file {} written at {}", file, new Date(contents.writtenAt));
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("ignoring unreadable catalog snapshot file {}", file, e);
+        }
+    }
+
+    /**
+     * replaces the image by one read from the database; if that fails while the file is served,
+     * the file stays in use and the next writeFile tries again
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void build() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Writer writer = new Writer(ByteBuffer.allocateDirect(initialCapacity), 0);
+        Table books;
+        Table authors;
+        Table categories;
+        try {
+            books = writer.load(BOOKS_SQL + " ORDER BY book_id", 4);
+            authors = writer.load(AUTHORS_SQL + " ORDER BY author_id", 2);
+            categories = writer.load(CATEGORIES_SQL + " ORDER BY category_id", 1);
+        } catch (DataAccessException e) {
+            if (!fromFile) {
+                throw e;
+            }
+            LOG.warn("catalog snapshot not rebuilt, still serving {}: {}", file, e.getMessage());
+            return;
+        }
+        image = new Image(writer.buffer, writer.end, 0, books, authors, categories);
+        fromFile = false;
+        LOG.info("catalog snapshot built: {} books, {} authors, {} categories, {} kB off-heap in {} ms",
+                books.ids.length, authors.ids.length, categories.ids.length, image.end / 1024,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * writes the current image to the file, unless it has been written already
+     */
+    @Scheduled(fixedDelayString = "${booksmanager.snapshot.write-interval:300000}",
+               initialDelayString = "${booksmanager.snapshot.write-interval:300000}")
+    public void writeFile() {
+        if (!enabled || file.isEmpty()) {
+            return;
+        }
+        Image current;
+        CatalogGraph.Snapshot graph;
+        synchronized (this) {
+            if (fromFile) {
+                build();
+                return;
+            }
+            current = image;
+            if (current == null || current == written) {
+                return;
+            }
+            graph = catalogGraph.snapshot();
+        }
+        //the image is immutable, changes applied meanwhile don't disturb the writing
+        long start = System.currentTimeMillis();
+        try {
+            CatalogSnapshotFile.write(Paths.get(file), current, graph);
+            synchronized (this) {
+                written = current;
+            }
+            LOG.debug("catalog snapshot written to {} in {} ms", file, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            LOG.warn("could not write catalog snapshot file {}", file, e);
+        }
+    }
+
+    /**
+     * @return whether pages are served from the snapshot
+     */
+    public boolean isServing() {
+        return image != null;
+    }
+
+    /**
+     * @param bookId    book_id
+     * @return          the book, or null if not serving, unknown, changed and not applied yet or reading own writes
+     */
+    public BookView book(long bookId) {
+        Image current = image;
+        if (current == null || ReplicationContext.isPrimaryForced() || pending.containsKey(key(ChangeEvent.EntityType.BOOK, bookId))) {
+            return null;
+        }
+        int offset = current.books.offset(bookId);
+        return offset < 0 ? null : new BookView(current, catalogGraph.snapshot(), bookId, offset);
+    }
+
+    /**
+     * @param authorId  author_id
+     * @return          the author, or null if not serving, unknown, changed and not applied yet or reading own writes
+     */
+    public AuthorView author(long authorId) {
+        Image current = image;
+        if (current == null || ReplicationContext.isPrimaryForced() || pending.containsKey(key(ChangeEvent.EntityType.AUTHOR, authorId))) {
+            return null;
+        }
+        int offset = current.authors.offset(authorId);
+        return offset < 0 ? null : new AuthorView(current, catalogGraph.snapshot(), authorId, offset);
+    }
+
+    /**
+     * @param bookIds   book_ids
+     * @return          the books that can be served, in the order of bookIds
+     */
+    public List<BookView> books(List<Long> bookIds) {
+        List<BookView> books = new ArrayList<>(bookIds.size());
+        for (Long bookId : bookIds) {
+            BookView book = book(bookId);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+
+    /**
+     * @param authorIds author_ids
+     * @return          the authors that can be served, in the order of authorIds
+     */
+    public List<AuthorView> authors(List<Long> authorIds) {
+        List<AuthorView> authors = new ArrayList<>(authorIds.size());
+        for (Long authorId : authorIds) {
+            AuthorView author = author(authorId);
+            if (author != null) {
+                authors.add(author);
+            }
+        }
+        return authors;
+    }
+
+    /**
+     * @param author    author shown
+     * @param pageable  page and size, ordered by book_id
+     * @return          page of the books of author
+     */
+    public Page<BookView> booksOfAuthor(AuthorView author, Pageable pageable) {
+        CatalogGraph.Csr booksOfAuthor = author.graph.booksOfAuthor();
+        int node = author.graph.author(author.id);
+        long[] bookIds = new long[node < 0 ? 0 : booksOfAuthor.degree(node)];
+        for (int i = 0; i < bookIds.length; i++) {
+            bookIds[i] = author.graph.bookId(booksOfAuthor.target(booksOfAuthor.start(node) + i));
+        }
+        Arrays.sort(bookIds);
+        List<BookView> page = new ArrayList<>(pageable.getPageSize());
+        for (long i = pageable.getOffset(); i < bookIds.length && page.size() < pageable.getPageSize(); i++) {
+            int offset = author.image.books.offset(bookIds[(int) i]);
+            if (offset >= 0) {
+                page.add(new BookView(author.image, author.graph, bookIds[(int) i], offset));
+            }
+        }
+        return new PageImpl<>(page, pageable, bookIds.length);
+    }
+
+    /**
+     * called by the write path inside its transaction: from the commit until the change is applied,
+     * the row is read from the database
+     * @param event     change event just written
+     */
+    public void pending(ChangeEvent event) {
+        if (!enabled || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        String key = key(event.getEntityType(), event.getEntityId());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                pending.merge(key, event.getId(), Math::max);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                    pending.remove(key, event.getId());
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void onChanges(List<ChangeEvent> events) {
+        if (image != null) {
+            apply(image, events);
+        }
+        for (ChangeEvent event : events) {
+            pending.computeIfPresent(key(event.getEntityType(), event.getEntityId()),
+                    (key, newest) -> newest <= event.getId() ? null : newest);
+        }
+    }
+
+    private void apply(Image current, List<ChangeEvent> events) {
+        if (current.buffer.isReadOnly()) {
+            //mapped from the file: changes go to a copy
+            current = compact(current);
+        }
+        Set<Long> books = new HashSet<>();
+        Set<Long> authors = new HashSet<>();
+        Set<Long> categories = new HashSet<>();
+        for (ChangeEvent event : events) {
+            switch (event.getEntityType()) {
+                case BOOK:
+                    books.add(event.getEntityId());
+                    break;
+                case AUTHOR:
+                    authors.add(event.getEntityId());
+                    break;
+                default:
+                    categories.add(event.getEntityId());
+            }
+        }
+        Writer writer = new Writer(current.buffer, current.end);
+        Table bookTable = current.books.with(books, writer.load(BOOKS_SQL, "book_id", 4, books));
+        Table authorTable = current.authors.with(authors, writer.load(AUTHORS_SQL, "author_id", 2, authors));
+        Table categoryTable = current.categories.with(categories, writer.load(CATEGORIES_SQL, "category_id", 1, categories));
+        long garbage = current.garbage + current.size(current.books, books) + current.size(current.authors, authors)
+                + current.size(current.categories, categories);
+        Image next = new Image(writer.buffer, writer.end, garbage, bookTable, authorTable, categoryTable);
+        if (next.garbage * 2 > next.end) {
+            next = compact(next);
+        }
+        image = next;
+    }
+
+    /**
+     * @return the live records of image in a new buffer
+     */
+    private Image compact(Image image) {
+        Writer writer = new Writer(ByteBuffer.allocateDirect(Math.max(initialCapacity,
+                (int) Math.min(Integer.MAX_VALUE, 2 * (image.end - image.garbage)))), 0);
+        Table books = writer.copy(image, image.books);
+        Table authors = writer.copy(image, image.authors);
+        Table categories = writer.copy(image, image.categories);
+        LOG.debug("catalog snapshot compacted from {} to {} bytes", image.end, writer.end);
+        return new Image(writer.buffer, writer.end, 0, books, authors, categories);
+    }
+
+    private static String key(ChangeEvent.EntityType type, long id) {
+        return type + ":" + id;
+    }
+
+    /**
+     * one consistent state: a buffer, the bytes written to it and the tables pointing into it
+     */
+    static final class Image {
+        final ByteBuffer buffer;
+        final int end;
+        //bytes of records that have been replaced
+        final long garbage;
+        final Table books;
+        final Table authors;
+        final Table categories;
+
+        Image(ByteBuffer buffer, int end, long garbage, Table books, Table authors, Table categories) {
+            this.buffer = buffer;
+            this.end = end;
+            this.garbage = garbage;
+            this.books = books;
+            this.authors = authors;
+            this.categories = categories;
+        }
+
+        /**
+         * decodes field number field of the record at offset
+         */
+        String field(int offset, int field) {
+            int position = offset + 4;
+            for (int i = 0; i < field; i++) {
+                position += 4 + Math.max(0, buffer.getInt(position));
+            }
+            int length = buffer.getInt(position);
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            //bulk copy through a duplicate, like Writer.transfer
+            ByteBuffer source = buffer.duplicate();
+            ((Buffer) source).position(position + 4);
+            source.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return bytes of the records of ids
+         */
+        long size(Table table, Set<Long> ids) {
+            long size = 0;
+            for (Long id : ids) {
+                int offset = table.offset(id);
+                if (offset >= 0) {
+                    size += buffer.getInt(offset);
+                }
+            }
+            return size;
+        }
+    }
+
+    /**
+     * sorted ids and the offsets of their records
+     */
+    static final class Table {
+        final long[] ids;
+        final int[] offsets;
+
+        Table(long[] ids, int[] offsets) {
+            this.ids = ids;
+            this.offsets = offsets;
+        }
+
+        int offset(long id) {
+            int index = Arrays.binarySearch(ids, id);
+            return index < 0 ? -1 : offsets[index];
+        }
+
+        /**
+         * @param changed   changed ids
+         * @param loaded    current records of the changed ids that still exist
+         * @return          table without the old records of changed and with loaded
+         */
+        Table with(Set<Long> changed, Table loaded) {
+            if (changed.isEmpty()) {
+                return this;
+            }
+            int size = 0;
+            long[] ids = new long[this.ids.length + loaded.ids.length];
+            int[] offsets = new int[ids.length];
+            int i = 0;
+            int j = 0;
+            while (i < this.ids.length || j < loaded.ids.length) {
+                if (j == loaded.ids.length || (i < this.ids.length && this.ids[i] < loaded.ids[j])) {
+                    if (!changed.contains(this.ids[i])) {
+                        ids[size] = this.ids[i];
+                        offsets[size++] = this.offsets[i];
+                    }
+                    i++;
+                } else {
+                    if (i < this.ids.length && this.ids[i] == loaded.ids[j]) {
+                        i++;
+                    }
+                    ids[size] = loaded.ids[j];
+                    offsets[size++] = loaded.offsets[j++];
+                }
+            }
+            return new Table(Arrays.copyOf(ids, size), Arrays.copyOf(offsets, size));
+        }
+    }
+
+    /**
+     * appends records behind end; grows into a new buffer when full, offsets stay valid
+     */
+    private final class Writer {
+        ByteBuffer buffer;
+        int end;
+
+        Writer(ByteBuffer buffer, int end) {
+            this.buffer = buffer;
+            this.end = end;
+        }
+
+        /**
+         * @param sql       selects the id and then the fields
+         * @param idColumn  restricted to ids
+         * @return          table of the records of those ids that exist
+         */
+        Table load(String sql, String idColumn, int fields, Set<Long> ids) {
+            if (ids.isEmpty()) {
+                return new Table(new long[0], new int[0]);
+            }
+            Object[] args = ids.toArray();
+            return load(sql + String.format(IN, idColumn, String.join(",", Collections.nCopies(args.length, "?"))), fields, args);
+        }
+
+        /**
+         * @param sql       selects the id and then the fields, ordered by id
+         * @return          table of the loaded records
+         */
+        Table load(String sql, int fields, Object... args) {
+            long[][] ids = {new long[1024]};
+            int[][] offsets = {new int[1024]};
+            int[] size = {0};
+            jdbcTemplate.query(sql, rs -> {
+                byte[][] values = new byte[fields][];
+                for (int field = 0; field < fields; field++) {
+                    String value = rs.getString(field + 2);
+                    values[field] = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+                }
+                if (size[0] == ids[0].length) {
+                    ids[0] = Arrays.copyOf(ids[0], size[0] * 2);
+                    offsets[0] = Arrays.copyOf(offsets[0], size[0] * 2);
+                }
+                ids[0][size[0]] = rs.getLong(1);
+                offsets[0][size[0]++] = append(values);
+            }, args);
+            return new Table(Arrays.copyOf(ids[0], size[0]), Arrays.copyOf(offsets[0], size[0]));
+        }
+
+        /**
+         * @return copy of the records of table, in a table pointing into this buffer
+         */
+        Table copy(Image image, Table table) {
+            int[] offsets = new int[table.ids.length];
+            for (int i = 0; i < offsets.length; i++) {
+                int length = image.buffer.getInt(table.offsets[i]);
+                ensure(length);
+                transfer(image.buffer, table.offsets[i], length, buffer, end);
+                offsets[i] = end;
+                end += length;
+            }
+            return new Table(table.ids, offsets);
+        }
+
+        private int append(byte[][] values) {
+            int length = 4;
+            for (byte[] value : values) {
+                length += 4 + (value == null ? 0 : value.length);
+            }
+            ensure(length);
+            int offset = end;
+            buffer.putInt(end, length);
+            int position = end + 4;
+            for (byte[] value : values) {
+                buffer.putInt(position, value == null ? -1 : value.length);
+                position += 4;
+                if (value != null) {
+                    ByteBuffer target = buffer.duplicate();
+                    ((Buffer) target).position(position);
+                    target.put(value);
+                    position += value.length;
+                }
+            }
+            end += length;
+            return offset;
+        }
+
+        /**
+         * makes room for length more bytes; the old buffer stays untouched for the current readers
+         */
+        private void ensure(int length) {
+            if (end + length <= buffer.capacity()) {
+                return;
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE,
+                    Math.max(2L * buffer.capacity(), (long) end + length)));
+            transfer(buffer, 0, end, grown, 0);
+            buffer = grown;
+        }
+
+        /**
+         * bulk copy through duplicates, which leaves the positions of the buffers alone
+         */
+        private void transfer(ByteBuffer from, int offset, int length, ByteBuffer to, int at) {
+            ByteBuffer source = from.duplicate();
+            ((Buffer) source).limit(offset + length);
+            ((Buffer) source).position(offset);
+            ByteBuffer target = to.duplicate();
+            ((Buffer) target).position(at);
+            target.put(source);
+        }
+    }
+
+    /**
+     * book record as seen by the templates
+     */
+    public static final class BookView {
+        private final Image image;
+        private final CatalogGraph.Snapshot graph;
+        private final long id;
+        private final int offset;
+
+        private BookView(Image image, CatalogGraph.Snapshot graph, long id, int offset) {
+            this.image = image;
+            this.graph = graph;
+            this.id = id;
+            this.offset = offset;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return image.field(offset, BOOK_TITLE);
+        }
+
+        public String getYear() {
+            return image.field(offset, BOOK_YEAR);
+        }
+
+        public String getDescription() {
+            return CompressedText.decode(image.field(offset, BOOK_DESCRIPTION));
+        }
+
+        public String getSummary() {
+            String summary = image.field(offset, BOOK_SUMMARY);
+            return summary != null ? summary : Book.summarize(getDescription());
+        }
+
+        public List<AuthorView> getAuthors() {
+            int book = graph.book(id);
+            if (book < 0) {
+                return Collections.emptyList();
+            }
+            List<AuthorView> authors = new ArrayList<>(2);
+            CatalogGraph.Csr authorsOfBook = graph.authorsOfBook();
+            for (int i = authorsOfBook.start(book); i < authorsOfBook.end(book); i++) {
+                long authorId = graph.authorId(authorsOfBook.target(i));
+                int record = image.authors.offset(authorId);
+                if (record >= 0) {
+                    authors.add(new AuthorView(image, graph, authorId, record));
+                }
+            }
+            return authors;
+        }
+
+        public List<CategoryView> getCategories() {
+            int book = graph.book(id);
+            if (book < 0) {
+                return Collections.emptyList();
+            }
+            List<CategoryView> categories = new ArrayList<>(4);
+            CatalogGraph.Csr categoriesOfBook = graph.categoriesOfBook();
+            for (int i = categoriesOfBook.start(book); i < categoriesOfBook.end(book); i++) {
+                long categoryId = graph.categoryId(categoriesOfBook.target(i));
+                int record = image.categories.offset(categoryId);
+                if (record >= 0) {
+                    categories.add(new CategoryView(image, categoryId, record));
+                }
+            }
+            return categories;
+        }
+    }
+
+    /**
+     * author record as seen by the templates
+     */
+    public static final class AuthorView {
+        private final Image image;
+        private final CatalogGraph.Snapshot graph;
+        private final long id;
+        private final int offset;
+
+        private AuthorView(Image image, CatalogGraph.Snapshot graph, long id, int offset) {
+            this.image = image;
+            this.graph = graph;
+            this.id = id;
+            this.offset = offset;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getFullName() {
+            return image.field(offset, AUTHOR_FULL_NAME);
+        }
+
+        public String getBio() {
+            return CompressedText.decode(image.field(offset, AUTHOR_BIO));
+        }
+    }
+
+    /**
+     * category record as seen by the templates
+     */
+    public static final class CategoryView {
+        private final Image image;
+        private final long id;
+        private final int offset;
+
+        private CategoryView(Image image, long id, int offset) {
+            this.image = image;
+            this.id = id;
+            this.offset = offset;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return image.field(offset, CATEGORY_NAME);
+        }
+    }
+}
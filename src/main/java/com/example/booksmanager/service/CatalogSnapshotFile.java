@@ -0,0 +1,191 @@
+package com.example.booksmanager.service;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File format of the CatalogSnapshot, read by mapping the file into memory
+ * All numbers big-endian:
+ *   header:  int magic 'BMSF', int format version, long written at (epoch ms),
+ *            int books, int authors, int categories, int book-author links, int book-category links, int record bytes
+ *   tables:  per books, authors, categories: long[] ids (ascending), int[] record offsets
+ *   links:   long[] book_id, author_id pairs; long[] book_id, category_id pairs
+ *   records: the live records back to back, offsets relative to the start of this section
+ * The header and the tables are copied onto the heap, the records are used in place. A file of another
+ * version is ignored. The file is written next to its final name and moved over it, so a reader never
+ * maps a half-written file.
+ * @author platoiscoding.com
+ */
+final class CatalogSnapshotFile {
+
+    static final int MAGIC = 0x424d5346;
+    static final int VERSION = 2;
+
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 6 * 4;
+    private static final int CHUNK = 64 * 1024;
+
+    private CatalogSnapshotFile() {
+    }
+
+    /**
+     * contents of a file
+     */
+    static final class Contents {
+        final CatalogSnapshot.Image image;
+        final long writtenAt;
+        final long[] bookAuthors;
+        final long[] bookCategories;
+
+        Contents(CatalogSnapshot.Image image, long writtenAt, long[] bookAuthors, long[] bookCategories) {
+            this.image = image;
+            this.writtenAt = writtenAt;
+            this.bookAuthors = bookAuthors;
+            this.bookCategories = bookCategories;
+        }
+    }
+
+    /**
+     * @return contents of file, records mapped read-only; null if the file has another format or version
+     */
+    static Contents read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.capacity() < HEADER_BYTES || mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                return null;
+            }
+            long writtenAt = mapped.getLong();
+            int books = mapped.getInt();
+            int authors = mapped.getInt();
+            int categories = mapped.getInt();
+            int bookAuthorLinks = mapped.getInt();
+            int bookCategoryLinks = mapped.getInt();
+            int recordBytes = mapped.getInt();
+            CatalogSnapshot.Table bookTable = readTable(mapped, books);
+            CatalogSnapshot.Table authorTable = readTable(mapped, authors);
+            CatalogSnapshot.Table categoryTable = readTable(mapped, categories);
+            long[] bookAuthors = new long[2 * bookAuthorLinks];
+            mapped.asLongBuffer().get(bookAuthors);
+            ((Buffer) mapped).position(mapped.position() + 8 * bookAuthors.length);
+            long[] bookCategories = new long[2 * bookCategoryLinks];
+            mapped.asLongBuffer().get(bookCategories);
+            ((Buffer) mapped).position(mapped.position() + 8 * bookCategories.length);
+            ((Buffer) mapped).limit(mapped.position() + recordBytes);
+            ByteBuffer records = mapped.slice();
+            return new Contents(new CatalogSnapshot.Image(records, recordBytes, 0, bookTable, authorTable, categoryTable),
+                    writtenAt, bookAuthors, bookCategories);
+        }
+    }
+
+    /**
+     * writes image and the links of graph to file, replacing it
+     */
+    static void write(Path file, CatalogSnapshot.Image image, CatalogGraph.Snapshot graph) throws IOException {
+        long[] bookAuthors = links(graph, graph.authorsOfBook(), true);
+        long[] bookCategories = links(graph, graph.categoriesOfBook(), false);
+        CatalogSnapshot.Table[] tables = {image.books, image.authors, image.categories};
+        int recordBytes = 0;
+        for (CatalogSnapshot.Table table : tables) {
+            for (int offset : table.offsets) {
+                recordBytes += image.buffer.getInt(offset);
+            }
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate(CHUNK);
+            out.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis())
+                    .putInt(image.books.ids.length).putInt(image.authors.ids.length).putInt(image.categories.ids.length)
+                    .putInt(bookAuthors.length / 2).putInt(bookCategories.length / 2)
+                    .putInt(recordBytes);
+            //records are written without the replaced ones, so their offsets change
+            int next = 0;
+            for (CatalogSnapshot.Table table : tables) {
+                for (long id : table.ids) {
+                    ensure(channel, out, 8);
+                    out.putLong(id);
+                }
+                for (int offset : table.offsets) {
+                    ensure(channel, out, 4);
+                    out.putInt(next);
+                    next += image.buffer.getInt(offset);
+                }
+            }
+            for (long[] links : new long[][]{bookAuthors, bookCategories}) {
+                for (long id : links) {
+                    ensure(channel, out, 8);
+                    out.putLong(id);
+                }
+            }
+            for (CatalogSnapshot.Table table : tables) {
+                for (int offset : table.offsets) {
+                    ByteBuffer record = image.buffer.duplicate();
+                    ((Buffer) record).limit(offset + image.buffer.getInt(offset));
+                    ((Buffer) record).position(offset);
+                    if (record.remaining() > out.remaining()) {
+                        flush(channel, out);
+                    }
+                    if (record.remaining() > out.remaining()) {
+                        while (record.hasRemaining()) {
+                            channel.write(record);
+                        }
+                    } else {
+                        out.put(record);
+                    }
+                }
+            }
+            flush(channel, out);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static CatalogSnapshot.Table readTable(ByteBuffer mapped, int size) {
+        long[] ids = new long[size];
+        mapped.asLongBuffer().get(ids);
+        ((Buffer) mapped).position(mapped.position() + 8 * size);
+        int[] offsets = new int[size];
+        mapped.asIntBuffer().get(offsets);
+        ((Buffer) mapped).position(mapped.position() + 4 * size);
+        return new CatalogSnapshot.Table(ids, offsets);
+    }
+
+    /**
+     * @return book_id, author_id (or category_id) pairs of all links
+     */
+    private static long[] links(CatalogGraph.Snapshot graph, CatalogGraph.Csr groupsOfBook, boolean authors) {
+        int size = 0;
+        for (int book = 0; book < graph.books(); book++) {
+            size += groupsOfBook.degree(book);
+        }
+        long[] links = new long[2 * size];
+        int i = 0;
+        for (int book = 0; book < graph.books(); book++) {
+            for (int j = groupsOfBook.start(book); j < groupsOfBook.end(book); j++) {
+                links[i++] = graph.bookId(book);
+                links[i++] = authors ? graph.authorId(groupsOfBook.target(j)) : graph.categoryId(groupsOfBook.target(j));
+            }
+        }
+        return links;
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer out, int bytes) throws IOException {
+        if (out.remaining() < bytes) {
+            flush(channel, out);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+        ((Buffer) out).flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        ((Buffer) out).clear();
+    }
+}
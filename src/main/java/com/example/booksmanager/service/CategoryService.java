@@ -14,6 +14,10 @@ public interface CategoryService extends CrudService<Category, Long> {
     //TODO comments
     Set<Category> getAll();
 
+    /**
+     * Outside of a read-write transaction the category may be shared with concurrent callers: it is detached
+     * then, with its books and their authors loaded, and must not be modified.
+     */
     Category findById(Long id);
 
     void delete(Long id);
@@ -28,6 +32,16 @@ public interface CategoryService extends CrudService<Category, Long> {
 
     boolean nameIsValid(Category category);
 
+    /**
+     * may be shared with concurrent callers like findById
+     */
     Page<Category> findAllByBooks(Book book, Pageable pageable);
 
+    /**
+     * ordered by the denormalized book count, no aggregation over books_categories
+     * @param pageable  page and size
+     * @return          categories with the most books first
+     */
+    Page<Category> findMostPopular(Pageable pageable);
+
 }
@@ -1,66 +1,101 @@
 package com.example.booksmanager.service;
 
 
+import com.example.booksmanager.config.CacheConfig;
 import com.example.booksmanager.domain.Book;
+import com.example.booksmanager.domain.ChangeEvent;
 import com.example.booksmanager.domain.Category;
 import com.example.booksmanager.exception.ResourceNotFoundException;
 import com.example.booksmanager.repository.CategoryRepository;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Date;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
 
 @Service
+@Transactional(readOnly = true)
 public class CategoryServiceImpl implements CategoryService{
 
     @Autowired
     private CategoryRepository categoryRepository;
+    @Autowired
+    private ChangeEventOutbox changeEventOutbox;
+    @Autowired
+    private CoalescedReads coalescedReads;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Override
+    @Cacheable(value = CacheConfig.ALL_CATEGORIES, condition = CacheConfig.NOT_READING_OWN_WRITES)
     public Set<Category> getAll(){
         Set<Category> categorySet = new HashSet<>();
         categoryRepository.findAll().iterator().forEachRemaining(categorySet::add);
         return categorySet;
     }
 
+    /**
+     * shared with identical lookups in flight (see CoalescedReads)
+     * @return  category with its books and their authors
+     */
     @Override
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public Category findById(Long id){
-        Optional<Category> categoryOptional = categoryRepository.findById(id);
-
-        if (!categoryOptional.isPresent()) {
-            throw new ResourceNotFoundException("Category Not Found!");
-        }
-        return categoryOptional.get();
+        return coalescedReads.read("category.findById", id, () -> {
+            Optional<Category> categoryOptional = categoryRepository.findById(id);
+
+            if (!categoryOptional.isPresent()) {
+                throw new ResourceNotFoundException("Category Not Found!");
+            }
+            Category category = categoryOptional.get();
+            category.getBooks().forEach(book -> Hibernate.initialize(book.getAuthors()));
+            return category;
+        });
     }
 
     @Override
+    @Transactional
     public void delete(Long id){
         categoryRepository.deleteById(id);
+        changeEventOutbox.record(ChangeEvent.EntityType.CATEGORY, id, ChangeEvent.Operation.DELETED);
     }
 
     @Override
+    @Transactional
     public Category create(Category category){
-        categoryRepository.save(category);
-        return getLatestEntry();
+        Category savedCategory = categoryRepository.save(category);
+        changeEventOutbox.record(ChangeEvent.EntityType.CATEGORY, savedCategory.getId(), ChangeEvent.Operation.CREATED);
+        return savedCategory;
     }
 
     @Override
+    @Transactional
     public void update(Long id, Category category){
-        Category currentCat = findById(id);
+        Category currentCat = EntityWriteSupport.writable(entityManager, findById(id));
+        EntityWriteSupport.checkVersion(currentCat, category.getVersion());
         currentCat.setName(category.getName());
-        currentCat.setUpdatedAt(new Date());
-        categoryRepository.save(currentCat);
+        EntityWriteSupport.flush(entityManager);
+        changeEventOutbox.record(ChangeEvent.EntityType.CATEGORY, id, ChangeEvent.Operation.UPDATED);
     }
 
     //Pagination
     @Override
     public Page<Category> findAll(Pageable pageable) {
-        return categoryRepository.findAll(pageable);
+        if (pageable.getSort().isUnsorted()) {
+            return categoryRepository.findAll(pageable);
+        }
+        return DeferredJoin.load(categoryRepository.findIds(pageable), categoryRepository::findAllById, Category::getId);
     }
 
     //TODO getLatestEntry hat sein eigenes repoQuery
@@ -87,8 +122,15 @@ public class CategoryServiceImpl implements CategoryService{
     }
 
     @Override
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public Page<Category> findAllByBooks(Book book, Pageable pageable){
-        return categoryRepository.findAllByBooks(book, pageable);
+        return coalescedReads.read("category.findAllByBooks", Arrays.asList(book.getId(), pageable),
+                () -> categoryRepository.findAllByBooks(book, pageable));
+    }
+
+    @Override
+    public Page<Category> findMostPopular(Pageable pageable){
+        return categoryRepository.findAllByOrderByBookCountDesc(pageable);
     }
 
 }
@@ -0,0 +1,20 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+
+import java.util.List;
+
+/**
+ * Receives committed changes from the ChangeEventRelay, in batches and in event_id order,
+ * on the relay thread and outside of any transaction.
+ * Delivery is at least once: a listener that throws gets the batch again, alone and after a pause,
+ * so listeners have to be idempotent (reload or evict, don't increment) or fail before they change anything.
+ * After booksmanager.outbox.listener-attempts failures the batch is skipped for that listener.
+ */
+public interface ChangeEventListener {
+
+    /**
+     * @param events    one batch of committed changes, oldest first
+     */
+    void onChanges(List<ChangeEvent> events);
+}
@@ -0,0 +1,42 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.config.ReplicationContext;
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.repository.ChangeEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Records changes in the change_events table, inside the transaction of the change:
+ * an event exists if and only if the change was committed. Nothing is delivered here,
+ * the write request only pays for one insert. The CatalogSnapshot and the BookListRows are told about
+ * the row, so that it is not served from there until the change has been applied. Other nodes only learn
+ * about it from the relay: the request is marked as a write, so the writer gets the read-your-writes cookie
+ * and bypasses their copies until then (see ReadYourWritesInterceptor).
+ * @author platoiscoding.com
+ */
+@Component
+public class ChangeEventOutbox {
+
+    @Autowired
+    private ChangeEventRepository changeEventRepository;
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+    @Autowired
+    private BookListRows bookListRows;
+
+    /**
+     * @param entityType    changed table
+     * @param entityId      id of the changed row
+     * @param operation     kind of change
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(ChangeEvent.EntityType entityType, Long entityId, ChangeEvent.Operation operation) {
+        ChangeEvent event = changeEventRepository.save(new ChangeEvent(entityType, entityId, operation));
+        catalogSnapshot.pending(event);
+        bookListRows.pending(event);
+        ReplicationContext.markWrite();
+    }
+}
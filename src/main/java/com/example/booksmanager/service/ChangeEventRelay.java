@@ -0,0 +1,310 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.repository.ChangeEventRepository;
+import com.example.booksmanager.support.EventCursor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers the committed rows of the change_events outbox to all ChangeEventListener beans
+ * Polls in the background, once the application is ready, so cache invalidation and index updates are batched
+ * and add no latency to the write request; a listener sees a change at most one relay interval after its commit.
+ * A batch is marked as published once every listener has accepted it or, if one failed, queued it for that
+ * listener. A failed listener gets its queued batches again, in order and with growing pauses, while the others
+ * carry on; a batch it fails on too often (or that overflows its queue) is skipped for it and logged as an error.
+ * The queues are kept in memory: listeners that rebuild their state on startup lose nothing by a restart.
+ * Published events are kept for the retention time and then removed.
+ * The outbox is read from the primary, a lagging replica would deliver batches twice.
+ * In cluster mode (booksmanager.cluster.enabled, several nodes on one database) every node has to see every
+ * change, for its own caches and indexes: instead of taking the unpublished events, each node follows all events
+ * with an EventCursor of its own, starting at the newest event when the node starts. published_at is then only
+ * used for the cleanup. Until a node has relayed a change, its copies are stale; the writer itself bypasses
+ * the snapshot, list rows and lookup caches with the read-your-writes cookie (see ReadYourWritesInterceptor).
+ * @author platoiscoding.com
+ */
+@Component
+public class ChangeEventRelay {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeEventRelay.class);
+
+    @Autowired
+    private ChangeEventRepository changeEventRepository;
+    @Autowired(required = false)
+    private List<ChangeEventListener> listeners = Collections.emptyList();
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${booksmanager.outbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${booksmanager.outbox.retention-ms:86400000}")
+    private long retentionMs;
+
+    @Value("${booksmanager.cluster.enabled:false}")
+    private boolean cluster;
+
+    @Value("${booksmanager.cluster.gap-grace-ms:60000}")
+    private long gapGraceMs;
+
+    @Value("${booksmanager.outbox.listener-attempts:5}")
+    private int listenerAttempts;
+
+    @Value("${booksmanager.outbox.listener-retry-ms:1000}")
+    private long listenerRetryMs;
+
+    @Value("${booksmanager.outbox.listener-backlog:10000}")
+    private int listenerBacklog;
+
+    //set once the application is ready; the scheduler starts earlier, before the schema and the listeners are
+    private volatile boolean started;
+
+    //cluster mode: events this node has delivered; created on start
+    private EventCursor cursor;
+
+    //listeners that failed, with the batches they still have to get
+    private final Map<ChangeEventListener, Backlog> backlogs = new IdentityHashMap<>();
+
+    @Autowired
+    public ChangeEventRelay(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * cluster mode: the cursor starts at the newest event, before the listeners load their state
+     * (CatalogGraph, FacetIndex and the others load on ApplicationReadyEvent, later than this), so nothing is missed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void start() {
+        if (cluster) {
+            cursor = new EventCursor(transactionTemplate.execute(status -> changeEventRepository.findMaxId()),
+                    TimeUnit.MILLISECONDS.toNanos(gapGraceMs));
+        }
+        started = true;
+    }
+
+    /**
+     * hands batches to the listeners until the outbox is drained, after retrying the listeners that failed
+     * @return number of published events
+     */
+    @Scheduled(fixedDelayString = "${booksmanager.outbox.relay-interval:500}")
+    public int relay() {
+        if (!started) {
+            return 0;
+        }
+        retryFailedListeners();
+        return cluster ? relayFromCursor() : relayUnpublished();
+    }
+
+    private int relayUnpublished() {
+        int delivered = 0;
+        while (true) {
+            List<ChangeEvent> events = transactionTemplate.execute(status ->
+                    changeEventRepository.findByPublishedAtIsNullOrderByIdAsc(PageRequest.of(0, batchSize)));
+            if (events.isEmpty()) {
+                return delivered;
+            }
+            deliver(events);
+            List<Long> ids = events.stream().map(ChangeEvent::getId).collect(Collectors.toList());
+            transactionTemplate.execute(status -> changeEventRepository.markPublished(ids, new Date()));
+            delivered += events.size();
+            if (events.size() < batchSize) {
+                return delivered;
+            }
+        }
+    }
+
+    /**
+     * cluster mode: delivers the events after the cursor of this node, whichever node wrote them,
+     * and the events that were committed late into the gaps below it
+     */
+    private int relayFromCursor() {
+        int delivered = 0;
+        while (true) {
+            List<ChangeEvent> late = new ArrayList<>();
+            List<ChangeEvent> next = transactionTemplate.execute(status -> {
+                if (cursor.hasGaps()) {
+                    changeEventRepository.findByIdBetweenOrderByIdAsc(cursor.position() + 1, cursor.highest() - 1).stream()
+                            .filter(event -> cursor.isPending(event.getId()))
+                            .forEach(late::add);
+                }
+                return changeEventRepository.findByIdGreaterThanOrderByIdAsc(cursor.highest(), PageRequest.of(0, batchSize));
+            });
+            List<ChangeEvent> events = new ArrayList<>(late);
+            events.addAll(next);
+            cursor.settle(System.nanoTime());
+            if (events.isEmpty()) {
+                return delivered;
+            }
+            deliver(events);
+            List<Long> ids = events.stream().map(ChangeEvent::getId).collect(Collectors.toList());
+            transactionTemplate.execute(status -> changeEventRepository.markPublished(ids, new Date()));
+            long now = System.nanoTime();
+            ids.forEach(id -> cursor.delivered(id, now));
+            delivered += events.size();
+            if (next.size() < batchSize) {
+                return delivered;
+            }
+        }
+    }
+
+    /**
+     * @return number of removed events
+     */
+    @Scheduled(fixedDelayString = "${booksmanager.outbox.cleanup-interval:3600000}",
+               initialDelayString = "${booksmanager.outbox.cleanup-interval:3600000}")
+    public int removePublished() {
+        Date before = new Date(System.currentTimeMillis() - retentionMs);
+        Integer removed = transactionTemplate.execute(status -> changeEventRepository.deletePublishedBefore(before));
+        if (removed != null && removed > 0) {
+            LOG.info("removed {} published change events", removed);
+        }
+        return removed == null ? 0 : removed;
+    }
+
+    /**
+     * hands the batch to every listener, or queues it behind the batches a failed listener still has to get
+     */
+    private void deliver(List<ChangeEvent> events) {
+        List<ChangeEvent> batch = Collections.unmodifiableList(new ArrayList<>(events));
+        long now = System.nanoTime();
+        for (ChangeEventListener listener : listeners) {
+            Backlog backlog = backlogs.get(listener);
+            if (backlog != null) {
+                backlog.add(batch);
+                while (backlog.events > listenerBacklog && backlog.batches.size() > 1) {
+                    skip(listener, backlog, "its queue is full");
+                }
+                continue;
+            }
+            try {
+                listener.onChanges(batch);
+            } catch (RuntimeException e) {
+                backlog = new Backlog();
+                backlog.add(batch);
+                backlogs.put(listener, backlog);
+                failed(listener, backlog, e, now);
+                if (backlog.batches.isEmpty()) {
+                    backlogs.remove(listener);
+                }
+            }
+        }
+    }
+
+    private void retryFailedListeners() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<ChangeEventListener, Backlog>> entries = backlogs.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<ChangeEventListener, Backlog> entry = entries.next();
+            ChangeEventListener listener = entry.getKey();
+            Backlog backlog = entry.getValue();
+            if (now - backlog.retryAt < 0) {
+                continue;
+            }
+            while (!backlog.batches.isEmpty()) {
+                try {
+                    listener.onChanges(backlog.batches.peekFirst());
+                } catch (RuntimeException e) {
+                    failed(listener, backlog, e, now);
+                    if (backlog.attempts > 0) {
+                        break;
+                    }
+                    //skipped, the next batch is tried right away
+                    continue;
+                }
+                backlog.removeFirst();
+            }
+            if (backlog.batches.isEmpty()) {
+                entries.remove();
+                LOG.info("{} caught up with the change events", listener.getClass().getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * counts a failed attempt on the first queued batch and sets the next one, skips the batch after the last attempt
+     */
+    private void failed(ChangeEventListener listener, Backlog backlog, RuntimeException e, long now) {
+        List<ChangeEvent> batch = backlog.batches.peekFirst();
+        backlog.attempts++;
+        if (backlog.attempts >= listenerAttempts) {
+            LOG.warn("{} failed on change events {}..{}", listener.getClass().getSimpleName(),
+                    batch.get(0).getId(), batch.get(batch.size() - 1).getId(), e);
+            skip(listener, backlog, "it failed " + backlog.attempts + " times");
+            backlog.retryAt = now;
+            return;
+        }
+        //1, 2, 4 ... times listener-retry-ms
+        long pause = listenerRetryMs << Math.min(backlog.attempts - 1, 16);
+        backlog.retryAt = now + TimeUnit.MILLISECONDS.toNanos(pause);
+        LOG.warn("{} failed on change events {}..{} (attempt {} of {}), retried alone in {} ms",
+                listener.getClass().getSimpleName(), batch.get(0).getId(), batch.get(batch.size() - 1).getId(),
+                backlog.attempts, listenerAttempts, pause, e);
+    }
+
+    /**
+     * dead letter: the listener never gets the first queued batch
+     */
+    private void skip(ChangeEventListener listener, Backlog backlog, String reason) {
+        List<ChangeEvent> batch = backlog.removeFirst();
+        String name = listener.getClass().getSimpleName();
+        LOG.error("change events {}..{} skipped for {}, {}: {}", batch.get(0).getId(), batch.get(batch.size() - 1).getId(),
+                name, reason, batch.stream().map(event -> event.getOperation() + " " + event.getEntityType() + " "
+                        + event.getEntityId()).collect(Collectors.joining(", ")));
+        meterRegistry.ifAvailable(registry ->
+                registry.counter("booksmanager.outbox.skipped", "listener", name).increment(batch.size()));
+    }
+
+    /**
+     * batches a failed listener still has to get, oldest first
+     */
+    private static final class Backlog {
+
+        private final Deque<List<ChangeEvent>> batches = new ArrayDeque<>();
+        private int events;
+        //failed attempts on the first batch
+        private int attempts;
+        //System.nanoTime of the next attempt
+        private long retryAt;
+
+        private void add(List<ChangeEvent> batch) {
+            batches.addLast(batch);
+            events += batch.size();
+        }
+
+        private List<ChangeEvent> removeFirst() {
+            List<ChangeEvent> batch = batches.removeFirst();
+            events -= batch.size();
+            attempts = 0;
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.config.ReplicationContext;
+import com.example.booksmanager.support.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Single flight (see SingleFlight) for the entity lookups of the services: concurrent identical lookups,
+ * e.g. of a book that is linked from elsewhere, share one database round trip and one result.
+ * An entity belongs to the persistence context that loaded it, and a persistence context is not thread-safe.
+ * A shared lookup therefore runs in a read-only transaction of its own, outside the persistence context of the
+ * request (open in view): the entities it hands out are detached, with the associations the loader initialized,
+ * and are only read afterwards, as the cached lookup lists are. Write methods make them managed again,
+ * see EntityWriteSupport.managed.
+ * Only lookups outside of a transaction are shared; the services run them with Propagation.SUPPORTS and
+ * readOnly = true. A lookup that is not shared runs in a read-only transaction as well, so it is routed to the
+ * replica and its loader can initialize associations without open in view. Inside a
+ * transaction the caller needs managed entities. A request whose persistence context holds a connection
+ * already would need a second one for the shared lookup, and the pool could run dry with requests waiting for
+ * each other; neither are lookups shared for a client that reads its own writes from the primary.
+ * @author platoiscoding.com
+ */
+@Component
+public class CoalescedReads {
+
+    private final Map<String, SingleFlight<Object, Object>> flights = new ConcurrentHashMap<>();
+    private final TransactionTemplate readOnlyTx;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${booksmanager.single-flight.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    public CoalescedReads(PlatformTransactionManager transactionManager) {
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    /**
+     * @param operation     name of the lookup, tag of the metrics
+     * @param key           arguments of the lookup
+     * @param loader        the lookup; initializes the associations its callers read
+     * @param <V>           result type
+     * @return              result of loader or of an identical lookup in flight
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V read(String operation, Object key, Supplier<V> loader) {
+        EntityManagerHolder requestContext = (EntityManagerHolder) TransactionSynchronizationManager.getResource(entityManagerFactory);
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loader.get();
+        }
+        if (!enabled || ReplicationContext.isPrimaryForced() || isConnected(requestContext)) {
+            //not shared: read-only transaction in the persistence context of the request, if there is one
+            return readOnlyTx.execute(status -> loader.get());
+        }
+        return (V) flights.computeIfAbsent(operation, name -> new SingleFlight<>(name, meterRegistry.getIfAvailable()))
+                .execute(key, () -> detached(loader));
+    }
+
+    /**
+     * runs loader in a transaction with a new persistence context, closed when it returns
+     */
+    private Object detached(Supplier<?> loader) {
+        EntityManagerHolder requestContext = (EntityManagerHolder) TransactionSynchronizationManager.unbindResourceIfPossible(entityManagerFactory);
+        try {
+            return readOnlyTx.execute(status -> loader.get());
+        } finally {
+            if (requestContext != null) {
+                TransactionSynchronizationManager.bindResource(entityManagerFactory, requestContext);
+            }
+        }
+    }
+
+    private static boolean isConnected(EntityManagerHolder requestContext) {
+        return requestContext != null && requestContext.getEntityManager().unwrap(SessionImplementor.class)
+                .getJdbcCoordinator().getLogicalConnection().isPhysicallyConnected();
+    }
+}
@@ -31,8 +31,8 @@ public interface CrudService<T, ID> {
     /**
      * updates Object from Database with field values in taskDetails
      * @param id        Database ID of Object
-     * @param tDetails  field values
-     * @return          updated Object
+     * @param tDetails  field values, including the version that was edited
+     * @throws com.example.booksmanager.exception.ConcurrentUpdateException if the Object has been changed since
      */
     void update(ID id, T tDetails);
 
@@ -0,0 +1,52 @@
+package com.example.booksmanager.service;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Deep sorted pages: the ids of a page are selected first, which only reads the secondary index
+ * of the sort key (InnoDB stores the primary key in it), and the rows of that page are then loaded
+ * by primary key. The OFFSET is skipped over index entries instead of full rows.
+ * @author platoiscoding.com
+ */
+final class DeferredJoin {
+
+    private DeferredJoin() {
+    }
+
+    /**
+     * @param ids       a page of ids in the requested order
+     * @param loader    loads entities by id, in any order
+     * @param idOf      id of an entity
+     * @return          the page of entities in the order of ids
+     */
+    static <T> Page<T> load(Page<Long> ids, Function<List<Long>, Iterable<T>> loader, Function<T, Long> idOf) {
+        return new PageImpl<>(inOrder(ids.getContent(), loader.apply(ids.getContent()), idOf),
+                ids.getPageable(), ids.getTotalElements());
+    }
+
+    /**
+     * @param ids       ids in the requested order
+     * @param entities  the same entities in any order
+     * @param idOf      id of an entity
+     * @return          entities in the order of ids; ids without an entity are skipped
+     */
+    static <T> List<T> inOrder(List<Long> ids, Iterable<T> entities, Function<T, Long> idOf) {
+        Map<Long, T> byId = new HashMap<>();
+        entities.forEach(entity -> byId.put(idOf.apply(entity), entity));
+        List<T> result = new ArrayList<>(ids.size());
+        ids.forEach(id -> {
+            T entity = byId.get(id);
+            if (entity != null) {
+                result.add(entity);
+            }
+        });
+        return result;
+    }
+}
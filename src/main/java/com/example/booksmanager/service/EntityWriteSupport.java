@@ -0,0 +1,109 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.dateAudit.DateAudit;
+import com.example.booksmanager.exception.ConcurrentUpdateException;
+import com.example.booksmanager.exception.ResourceNotFoundException;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Read methods run in read-only transactions, and Hibernate loads their entities as read-only.
+ * With open-in-view the persistence context lives for the whole request, so a write method can be handed
+ * (or find) such an entity, and changes to it would silently not be flushed.
+ * Updates are guarded by the @Version of DateAudit: the version the client edited is compared before the
+ * change, and the UPDATE itself only matches the row if nobody else has written it in between.
+ * Associations are changed in place: Hibernate then writes only the added and removed join rows,
+ * whereas a new Set makes it delete and reinsert all of them.
+ */
+final class EntityWriteSupport {
+
+    private EntityWriteSupport() {
+    }
+
+    /**
+     * makes a managed entity modifiable again; has to be called before the entity is changed,
+     * Hibernate takes the dirty-checking snapshot at this point
+     * @param entityManager     current entity manager
+     * @param entity            entity that is about to be modified
+     * @param <T>               entity type
+     * @return                  the same entity
+     */
+    static <T> T writable(EntityManager entityManager, T entity) {
+        Session session = entityManager.unwrap(Session.class);
+        if (session.contains(entity) && session.isReadOnly(entity)) {
+            session.setReadOnly(entity, false);
+        }
+        return entity;
+    }
+
+    /**
+     * makes an entity handed in by the caller modifiable in this transaction; entities of other persistence
+     * contexts, e.g. the detached ones shared by CoalescedReads, are replaced by the managed instance
+     * @param entityManager     current entity manager
+     * @param entity            entity that is about to be modified
+     * @param <T>               entity type
+     * @return                  managed instance of entity
+     */
+    static <T> T managed(EntityManager entityManager, T entity) {
+        if (!entityManager.contains(entity)) {
+            Object id = entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity);
+            @SuppressWarnings("unchecked")
+            T current = (T) entityManager.find(entity.getClass(), id);
+            if (current == null) {
+                throw new ResourceNotFoundException(entity.getClass().getSimpleName() + " Not Found!");
+            }
+            entity = current;
+        }
+        return writable(entityManager, entity);
+    }
+
+    /**
+     * @param current           entity as loaded in this transaction
+     * @param editedVersion     version the client read before editing, sent back with the form
+     * @throws ConcurrentUpdateException    if the entity has been changed since
+     */
+    static void checkVersion(DateAudit current, Long editedVersion) {
+        if (editedVersion == null || !editedVersion.equals(current.getVersion())) {
+            throw new ConcurrentUpdateException(current.getClass().getSimpleName()
+                    + " was changed by someone else (version " + current.getVersion() + ", edited " + editedVersion + ")");
+        }
+    }
+
+    /**
+     * flushes inside the write method, so a version conflict between checkVersion and the UPDATE
+     * surfaces as ConcurrentUpdateException here and not as a persistence exception at commit
+     * @param entityManager     current entity manager
+     */
+    static void flush(EntityManager entityManager) {
+        try {
+            entityManager.flush();
+        } catch (OptimisticLockException e) {
+            throw new ConcurrentUpdateException("Concurrent update of " + e.getEntity(), e);
+        }
+    }
+
+    /**
+     * changes a managed association set in place to contain the elements of wanted, compared by id
+     * @param current   persistent set of the managed entity
+     * @param wanted    elements bound from the form; may be other instances of the same entities
+     * @param idOf      id of an element
+     * @param <T>       element type
+     * @return          true if elements were added or removed
+     */
+    static <T> boolean replaceById(Set<T> current, Set<T> wanted, Function<T, Long> idOf) {
+        Set<Long> wantedIds = wanted.stream().map(idOf).collect(Collectors.toSet());
+        boolean changed = current.removeIf(element -> !wantedIds.contains(idOf.apply(element)));
+        Set<Long> currentIds = current.stream().map(idOf).collect(Collectors.toSet());
+        for (T element : wanted) {
+            if (currentIds.add(idOf.apply(element))) {
+                changed |= current.add(element);
+            }
+        }
+        return changed;
+    }
+}
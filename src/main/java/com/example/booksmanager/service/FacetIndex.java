@@ -0,0 +1,453 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.dto.FacetQuery;
+import com.example.booksmanager.dto.FacetResult;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * In-memory bitmap index of books per category, per author and per publication year
+ * Book ids are used as bitmap positions directly. A facet query is a handful of OR/AND operations
+ * over compressed bitmaps and the counts are andCardinality calls, which don't materialize a result;
+ * neither touches the database.
+ * Counting asks every value of a facet, so the counts are cached per combination of filters they depend on,
+ * until the next change. Books are ordered by the bitmaps per month of publication.
+ * The facet values of each book are kept as well (a few longs per book), so that changing or removing a
+ * book only touches its own bitmaps.
+ * Loaded from the join tables after startup and kept up to date from the change_events outbox:
+ * each batch of changed books is reloaded with three IN queries.
+ * @author platoiscoding.com
+ */
+@Component
+public class FacetIndex implements ChangeEventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FacetIndex.class);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final Map<Long, RoaringBitmap> byCategory = new HashMap<>();
+    private final Map<Long, RoaringBitmap> byAuthor = new HashMap<>();
+    private final TreeMap<Integer, RoaringBitmap> byYear = new TreeMap<>();
+    //month of publication (year * 12 + month - 1) -> books, for the order of the results
+    private final TreeMap<Integer, RoaringBitmap> byMonth = new TreeMap<>();
+    private final RoaringBitmap dated = new RoaringBitmap();
+    //position -> facet values of the book
+    private final Map<Integer, Facets> facetsOf = new HashMap<>();
+    //facet and the filters of the other facets -> counts; cleared by every change, under the write lock
+    private final Map<List<Object>, Map<?, Integer>> countCache = new LinkedHashMap<List<Object>, Map<?, Integer>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Map<?, Integer>> eldest) {
+            return size() > countCacheSize;
+        }
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${booksmanager.facets.max-authors:20}")
+    private int maxAuthorFacets;
+    @Value("${booksmanager.facets.count-cache-size:1000}")
+    private int countCacheSize;
+
+    /**
+     * streams books, books_categories and books_authors into the bitmaps
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            all.clear();
+            byCategory.clear();
+            byAuthor.clear();
+            byYear.clear();
+            byMonth.clear();
+            dated.clear();
+            facetsOf.clear();
+            countCache.clear();
+            jdbcTemplate.query("SELECT book_id, published_on FROM books", rs -> {
+                int bookId = position(rs.getLong(1));
+                Date publishedOn = rs.getDate(2);
+                Facets facets = new Facets(publishedOn == null ? Facets.NO_MONTH : month(publishedOn.toLocalDate()));
+                facetsOf.put(bookId, facets);
+                addDate(bookId, facets.month);
+            });
+            jdbcTemplate.query("SELECT book_id, category_id FROM books_categories", rs -> {
+                int bookId = position(rs.getLong(1));
+                byCategory.computeIfAbsent(rs.getLong(2), id -> new RoaringBitmap()).add(bookId);
+                facetsOf.computeIfAbsent(bookId, id -> new Facets(Facets.NO_MONTH)).addCategory(rs.getLong(2));
+            });
+            jdbcTemplate.query("SELECT book_id, author_id FROM books_authors", rs -> {
+                int bookId = position(rs.getLong(1));
+                byAuthor.computeIfAbsent(rs.getLong(2), id -> new RoaringBitmap()).add(bookId);
+                facetsOf.computeIfAbsent(bookId, id -> new Facets(Facets.NO_MONTH)).addAuthor(rs.getLong(2));
+            });
+            facetsOf.keySet().forEach(all::add);
+            runOptimize();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("facet index loaded: {} books in {} ms", all.getCardinality(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * reloads the facet values of changed books; deleted books are no longer found and removed
+     * @param events    committed changes
+     */
+    @Override
+    public void onChanges(List<ChangeEvent> events) {
+        Set<Long> bookIds = new HashSet<>();
+        for (ChangeEvent event : events) {
+            if (event.getEntityType() == ChangeEvent.EntityType.BOOK) {
+                bookIds.add(event.getEntityId());
+            } else if (event.getOperation() == ChangeEvent.Operation.DELETED) {
+                removeFacet(event.getEntityType() == ChangeEvent.EntityType.AUTHOR ? byAuthor : byCategory,
+                        event.getEntityId());
+            }
+        }
+        if (!bookIds.isEmpty()) {
+            reload(bookIds);
+        }
+    }
+
+    private void reload(Set<Long> bookIds) {
+        Object[] ids = bookIds.toArray();
+        String in = " IN (" + String.join(",", Collections.nCopies(ids.length, "?")) + ")";
+        Map<Long, LocalDate> publishedOn = new HashMap<>();
+        Map<Long, List<Long>> authorIds = new HashMap<>();
+        Map<Long, List<Long>> categoryIds = new HashMap<>();
+        jdbcTemplate.query("SELECT book_id, published_on FROM books WHERE book_id" + in, rs -> {
+            Date date = rs.getDate(2);
+            publishedOn.put(rs.getLong(1), date == null ? null : date.toLocalDate());
+        }, ids);
+        jdbcTemplate.query("SELECT book_id, author_id FROM books_authors WHERE book_id" + in, rs -> {
+            authorIds.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(rs.getLong(2));
+        }, ids);
+        jdbcTemplate.query("SELECT book_id, category_id FROM books_categories WHERE book_id" + in, rs -> {
+            categoryIds.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(rs.getLong(2));
+        }, ids);
+        for (Long bookId : bookIds) {
+            if (publishedOn.containsKey(bookId)) {
+                put(bookId, authorIds.getOrDefault(bookId, Collections.emptyList()),
+                        categoryIds.getOrDefault(bookId, Collections.emptyList()), publishedOn.get(bookId));
+            } else {
+                remove(bookId);
+            }
+        }
+    }
+
+    private void removeFacet(Map<Long, RoaringBitmap> facet, Long id) {
+        lock.writeLock().lock();
+        try {
+            facet.remove(id);
+            countCache.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * adds a book or replaces its facet values
+     * @param bookId        book_id
+     * @param authorIds     author_ids of the book
+     * @param categoryIds   category_ids of the book
+     * @param publishedOn   typed publication date, may be null
+     */
+    public void put(Long bookId, Collection<Long> authorIds, Collection<Long> categoryIds, LocalDate publishedOn) {
+        int position = position(bookId);
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(position);
+            Facets facets = new Facets(publishedOn == null ? Facets.NO_MONTH : month(publishedOn));
+            all.add(position);
+            authorIds.forEach(id -> {
+                byAuthor.computeIfAbsent(id, k -> new RoaringBitmap()).add(position);
+                facets.addAuthor(id);
+            });
+            categoryIds.forEach(id -> {
+                byCategory.computeIfAbsent(id, k -> new RoaringBitmap()).add(position);
+                facets.addCategory(id);
+            });
+            addDate(position, facets.month);
+            facetsOf.put(position, facets);
+            countCache.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param bookId    book_id of a deleted book
+     */
+    public void remove(Long bookId) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(position(bookId));
+            countCache.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param query     selected facet values
+     * @param offset    index of the first book of the page
+     * @param limit     page size
+     * @return          page of book ids, latest publication first, and the counts of all facet values
+     */
+    public FacetResult query(FacetQuery query, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap categoryFilter = union(byCategory, query.getCategoryIds());
+            RoaringBitmap authorFilter = union(byAuthor, query.getAuthorIds());
+            RoaringBitmap yearFilter = query.hasYearRange()
+                    ? RoaringBitmap.or(yearRange(query).values().iterator())
+                    : null;
+
+            RoaringBitmap matches = intersect(all, categoryFilter, authorFilter, yearFilter);
+            int total = matches.getCardinality();
+            List<Long> page = latestFirst(matches, offset, limit);
+
+            Integer from = query.getFromYear();
+            Integer to = query.getToYear();
+            Map<Long, Integer> categoryCounts = cachedCounts(Arrays.asList("category", query.getAuthorIds(), from, to),
+                    () -> counts(byCategory, intersect(all, authorFilter, yearFilter), Integer.MAX_VALUE));
+            Map<Long, Integer> authorCounts = cachedCounts(Arrays.asList("author", query.getCategoryIds(), from, to),
+                    () -> counts(byAuthor, intersect(all, categoryFilter, yearFilter), maxAuthorFacets));
+            Map<Integer, Integer> yearCounts = cachedCounts(Arrays.asList("year", query.getCategoryIds(), query.getAuthorIds()),
+                    () -> counts(byYear, intersect(all, categoryFilter, authorFilter), Integer.MAX_VALUE));
+            return new FacetResult(page, total, categoryCounts, authorCounts, yearCounts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int position(long bookId) {
+        if (bookId < 0 || bookId > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("book_id out of range for the facet index: " + bookId);
+        }
+        return (int) bookId;
+    }
+
+    private static int month(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private void addDate(int position, int month) {
+        if (month == Facets.NO_MONTH) {
+            return;
+        }
+        dated.add(position);
+        byMonth.computeIfAbsent(month, m -> new RoaringBitmap()).add(position);
+        byYear.computeIfAbsent(Math.floorDiv(month, 12), y -> new RoaringBitmap()).add(position);
+    }
+
+    /**
+     * removes the book from the bitmaps of its own facet values
+     */
+    private void removeUnlocked(int position) {
+        Facets facets = facetsOf.remove(position);
+        if (facets == null) {
+            return;
+        }
+        all.remove(position);
+        for (int i = 0; i < facets.authors; i++) {
+            removeFrom(byAuthor, facets.authorIds[i], position);
+        }
+        for (int i = 0; i < facets.categories; i++) {
+            removeFrom(byCategory, facets.categoryIds[i], position);
+        }
+        if (facets.month != Facets.NO_MONTH) {
+            dated.remove(position);
+            removeFrom(byMonth, facets.month, position);
+            removeFrom(byYear, Math.floorDiv(facets.month, 12), position);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, RoaringBitmap> facet, K value, int position) {
+        RoaringBitmap bitmap = facet.get(value);
+        if (bitmap != null) {
+            bitmap.remove(position);
+            if (bitmap.isEmpty()) {
+                facet.remove(value);
+            }
+        }
+    }
+
+    private void runOptimize() {
+        all.runOptimize();
+        dated.runOptimize();
+        byCategory.values().forEach(RoaringBitmap::runOptimize);
+        byAuthor.values().forEach(RoaringBitmap::runOptimize);
+        byYear.values().forEach(RoaringBitmap::runOptimize);
+        byMonth.values().forEach(RoaringBitmap::runOptimize);
+    }
+
+    /**
+     * walks the months from the latest, skipping whole months by their count;
+     * books of the same month by highest book_id (added last), books without a date at the end
+     * @return  book ids of the page
+     */
+    private List<Long> latestFirst(RoaringBitmap matches, int offset, int limit) {
+        List<Long> page = new ArrayList<>(Math.min(limit, Math.max(0, matches.getCardinality() - offset)));
+        int skip = offset;
+        for (RoaringBitmap month : byMonth.descendingMap().values()) {
+            if (page.size() >= limit) {
+                return page;
+            }
+            int count = RoaringBitmap.andCardinality(matches, month);
+            if (count <= skip) {
+                skip -= count;
+            } else {
+                skip = addHighest(RoaringBitmap.and(matches, month), skip, limit, page);
+            }
+        }
+        if (page.size() < limit) {
+            addHighest(RoaringBitmap.andNot(matches, dated), skip, limit, page);
+        }
+        return page;
+    }
+
+    /**
+     * @return  skip left for the following bitmaps
+     */
+    private static int addHighest(RoaringBitmap books, int skip, int limit, List<Long> page) {
+        int count = books.getCardinality();
+        for (int rank = count - 1 - skip; rank >= 0 && page.size() < limit; rank--) {
+            page.add((long) books.select(rank));
+        }
+        return Math.max(0, skip - count);
+    }
+
+    /**
+     * @param key       facet and the filters the counts depend on
+     * @param counts    computes the counts, under the read lock
+     */
+    @SuppressWarnings("unchecked")
+    private <K> Map<K, Integer> cachedCounts(List<Object> key, Supplier<Map<K, Integer>> counts) {
+        synchronized (countCache) {
+            Map<K, Integer> cached = (Map<K, Integer>) countCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Map<K, Integer> computed = Collections.unmodifiableMap(counts.get());
+        synchronized (countCache) {
+            countCache.put(key, computed);
+        }
+        return computed;
+    }
+
+    private Map<Integer, RoaringBitmap> yearRange(FacetQuery query) {
+        int from = query.getFromYear() == null ? Integer.MIN_VALUE : query.getFromYear();
+        int to = query.getToYear() == null ? Integer.MAX_VALUE : query.getToYear();
+        return from > to ? new TreeMap<>() : byYear.subMap(from, true, to, true);
+    }
+
+    /**
+     * @return OR of the selected bitmaps, null if nothing is selected (no filter)
+     */
+    private static RoaringBitmap union(Map<Long, RoaringBitmap> facet, Collection<Long> selected) {
+        if (selected.isEmpty()) {
+            return null;
+        }
+        RoaringBitmap result = new RoaringBitmap();
+        for (Long id : selected) {
+            RoaringBitmap bitmap = facet.get(id);
+            if (bitmap != null) {
+                result.or(bitmap);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return AND of the non-null filters
+     */
+    private static RoaringBitmap intersect(RoaringBitmap base, RoaringBitmap... filters) {
+        RoaringBitmap result = base;
+        for (RoaringBitmap filter : filters) {
+            if (filter != null) {
+                result = RoaringBitmap.and(result, filter);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param limit     keep only the limit values with the highest counts
+     * @return          value -> number of books in base, without values that have none; highest count first
+     */
+    private static <K> Map<K, Integer> counts(Map<K, RoaringBitmap> facet, RoaringBitmap base, int limit) {
+        List<Map.Entry<K, Integer>> entries = new ArrayList<>();
+        facet.forEach((value, bitmap) -> {
+            int count = RoaringBitmap.andCardinality(bitmap, base);
+            if (count > 0) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(value, count));
+            }
+        });
+        entries.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        Map<K, Integer> result = new LinkedHashMap<>();
+        for (int i = 0; i < entries.size() && i < limit; i++) {
+            result.put(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+        return result;
+    }
+
+    /**
+     * facet values of one book, in small arrays instead of collections
+     */
+    private static final class Facets {
+        static final int NO_MONTH = Integer.MIN_VALUE;
+
+        final int month;
+        long[] authorIds = new long[1];
+        int authors;
+        long[] categoryIds = new long[2];
+        int categories;
+
+        Facets(int month) {
+            this.month = month;
+        }
+
+        void addAuthor(long authorId) {
+            if (authors == authorIds.length) {
+                authorIds = Arrays.copyOf(authorIds, authors * 2);
+            }
+            authorIds[authors++] = authorId;
+        }
+
+        void addCategory(long categoryId) {
+            if (categories == categoryIds.length) {
+                categoryIds = Arrays.copyOf(categoryIds, categories * 2);
+            }
+            categoryIds[categories++] = categoryId;
+        }
+    }
+}
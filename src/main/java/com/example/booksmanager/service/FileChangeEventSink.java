@@ -0,0 +1,59 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends every delivered change event as one JSON line to a file, for tests and for
+ * downstream systems that tail a file; enabled by setting booksmanager.outbox.file-sink
+ * @author platoiscoding.com
+ */
+@Component
+@ConditionalOnProperty("booksmanager.outbox.file-sink")
+public class FileChangeEventSink implements ChangeEventListener {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Path file;
+
+    public FileChangeEventSink(@Value("${booksmanager.outbox.file-sink}") String file) {
+        this.file = Paths.get(file);
+    }
+
+    /**
+     * the batch is serialized before the file is opened and appended with one write,
+     * so a batch that fails to serialize appends nothing that its retry would repeat
+     */
+    @Override
+    public synchronized void onChanges(List<ChangeEvent> events) {
+        StringBuilder lines = new StringBuilder();
+        try {
+            for (ChangeEvent event : events) {
+                lines.append(objectMapper.writeValueAsString(event)).append('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not serialize change events", e);
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(lines.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append change events to " + file, e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.config.CacheConfig;
+import com.example.booksmanager.domain.ChangeEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Clears the lookup lists of CacheConfig once per batch of author or category changes
+ * @author platoiscoding.com
+ */
+@Component
+public class LookupCacheInvalidator implements ChangeEventListener {
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Override
+    public void onChanges(List<ChangeEvent> events) {
+        if (events.stream().anyMatch(e -> e.getEntityType() == ChangeEvent.EntityType.AUTHOR)) {
+            clear(CacheConfig.ALL_AUTHORS);
+        }
+        if (events.stream().anyMatch(e -> e.getEntityType() == ChangeEvent.EntityType.CATEGORY)) {
+            clear(CacheConfig.ALL_CATEGORIES);
+        }
+    }
+
+    private void clear(String name) {
+        Cache cache = cacheManager.getCache(name);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.exception.ConcurrentUpdateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.OptimisticLockException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Retries a write after a version conflict, for internal bulk and background paths
+ * (no open-in-view, no user to show the conflict to). Each attempt runs in a new transaction,
+ * so it reloads the entities and sees the version that won.
+ * Used by the backfills, whose JDBC updates check the version they read (see checkUpdated).
+ * Form updates are not retried: there the user has to decide on the changed data.
+ * @author platoiscoding.com
+ */
+@Component
+public class OptimisticRetry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OptimisticRetry.class);
+
+    private static final long BACKOFF_MS = 20;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${booksmanager.optimistic-retry.attempts:3}")
+    private int attempts;
+
+    @Autowired
+    public OptimisticRetry(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * @param work      loads, changes and saves; must not keep entities from an earlier attempt
+     * @param <T>       result type
+     * @return          result of the first attempt without a version conflict
+     * @throws ConcurrentUpdateException    if every attempt ran into a conflict
+     */
+    public <T> T run(Supplier<T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> work.get());
+            } catch (OptimisticLockingFailureException | OptimisticLockException | ConcurrentUpdateException e) {
+                if (attempt >= attempts) {
+                    throw e instanceof ConcurrentUpdateException ? (ConcurrentUpdateException) e
+                            : new ConcurrentUpdateException("Gave up after " + attempt + " attempts", e);
+                }
+                LOG.debug("Version conflict on attempt {}, retrying", attempt, e);
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * @param work      loads, changes and saves; must not keep entities from an earlier attempt
+     */
+    public void run(Runnable work) {
+        run(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * for batch updates guarded by 'AND version = ?': a row that was not updated has been changed since it was read
+     * @param counts    update counts of the batch
+     * @param what      changed table, for the message
+     * @throws OptimisticLockingFailureException    if a row was not updated
+     */
+    public static void checkUpdated(int[] counts, String what) {
+        for (int count : counts) {
+            if (count == 0) {
+                throw new OptimisticLockingFailureException(what + " changed while the batch was written");
+            }
+        }
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(BACKOFF_MS * attempt + ThreadLocalRandom.current().nextLong(BACKOFF_MS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrentUpdateException("Interrupted while waiting to retry", e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.Book;
+import com.example.booksmanager.exception.ConcurrentUpdateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Migrates the 'published' text column ('MM/yyyy') into the typed published_on column
+ * Rows written through JPA get published_on from Book itself; this catches rows written past it
+ * (data.sql, rows from before the column existed, which migration V3 adds empty).
+ * Runs in batches before the FacetIndex is loaded, so the index sees the typed years.
+ * A batch only writes books whose version is still the one it read;
+ * a book edited in between fails the batch, which OptimisticRetry then reads and writes again.
+ * @author platoiscoding.com
+ */
+@Component
+public class PublishedOnBackfill {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PublishedOnBackfill.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+
+    @Value("${booksmanager.published-on.backfill-batch-size:500}")
+    private int batchSize;
+
+    /**
+     * @return number of migrated books
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public int backfill() {
+        int migrated = 0;
+        int unparseable = 0;
+        long lastId = 0;
+        while (true) {
+            long after = lastId;
+            BackfillBatch batch;
+            try {
+                batch = optimisticRetry.run(() -> migrateBatch(after));
+            } catch (ConcurrentUpdateException e) {
+                LOG.warn("published_on backfill stopped after book {}, the rest follows on the next start: {}",
+                        after, e.getMessage());
+                break;
+            }
+            if (batch == null) {
+                break;
+            }
+            migrated += batch.migrated;
+            unparseable += batch.skipped;
+            lastId = batch.lastId;
+        }
+        if (migrated + unparseable > 0) {
+            LOG.info("published_on backfilled for {} books, {} could not be parsed", migrated, unparseable);
+        }
+        return migrated;
+    }
+
+    /**
+     * @param after     book_id of the last book of the previous batch
+     * @return          the batch, null if there are no books left
+     */
+    private BackfillBatch migrateBatch(long after) {
+        List<Object[]> rows = jdbcTemplate.query(
+                "SELECT book_id, published, version FROM books WHERE published_on IS NULL AND book_id > ? ORDER BY book_id",
+                ps -> {
+                    ps.setLong(1, after);
+                    ps.setMaxRows(batchSize);
+                },
+                (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getLong(3)});
+        if (rows.isEmpty()) {
+            return null;
+        }
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            LocalDate publishedOn = Book.parsePublished((String) row[1]);
+            if (publishedOn != null) {
+                updates.add(new Object[]{Date.valueOf(publishedOn), row[0], row[2]});
+            }
+        }
+        if (!updates.isEmpty()) {
+            OptimisticRetry.checkUpdated(jdbcTemplate.batchUpdate(
+                    "UPDATE books SET published_on = ? WHERE book_id = ? AND version = ?", updates), "book");
+        }
+        return new BackfillBatch((Long) rows.get(rows.size() - 1)[0], updates.size(), rows.size() - updates.size());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.dto.AuthorDto;
+import com.example.booksmanager.dto.BookDto;
+import com.example.booksmanager.dto.CategoryDto;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking read access to books, authors and categories
+ * The list streams fetch one page at a time and only when the subscriber requests more elements.
+ * @author platoiscoding.com
+ */
+public interface ReactiveReadService {
+
+    /**
+     * @param pageSize  number of books fetched per database round trip
+     * @return          all books, ordered by id, with summaries instead of descriptions
+     */
+    Flux<BookDto> streamBooks(int pageSize);
+
+    /**
+     * @param id    book_id
+     * @return      book with matching id, or ResourceNotFoundException
+     */
+    Mono<BookDto> findBook(Long id);
+
+    /**
+     * @param pageSize  number of authors fetched per database round trip
+     * @return          all authors, ordered by id
+     */
+    Flux<AuthorDto> streamAuthors(int pageSize);
+
+    /**
+     * @param id    author_id
+     * @return      author with matching id, or ResourceNotFoundException
+     */
+    Mono<AuthorDto> findAuthor(Long id);
+
+    /**
+     * @param pageSize  number of categories fetched per database round trip
+     * @return          all categories, ordered by id
+     */
+    Flux<CategoryDto> streamCategories(int pageSize);
+
+    /**
+     * @param id    category_id
+     * @return      category with matching id, or ResourceNotFoundException
+     */
+    Mono<CategoryDto> findCategory(Long id);
+}
@@ -0,0 +1,148 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.Author;
+import com.example.booksmanager.domain.Book;
+import com.example.booksmanager.domain.Category;
+import com.example.booksmanager.dto.AuthorDto;
+import com.example.booksmanager.dto.BookDto;
+import com.example.booksmanager.dto.CategoryDto;
+import com.example.booksmanager.exception.ResourceNotFoundException;
+import com.example.booksmanager.repository.AuthorRepository;
+import com.example.booksmanager.repository.BookRepository;
+import com.example.booksmanager.repository.CategoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Bridges the blocking repositories onto the bounded jpaScheduler.
+ * Every page is loaded and converted to DTOs in its own read-only transaction,
+ * so no lazy association is touched after the session is closed.
+ * Streams page by keyset (ids after the last one sent): no count query per page, no growing offset,
+ * and rows inserted or deleted during the stream don't make it skip or repeat rows.
+ * A page is its ids and then its entities with their associations, in two queries.
+ * @author platoiscoding.com
+ */
+@Service
+public class ReactiveReadServiceImpl implements ReactiveReadService {
+
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private Scheduler jpaScheduler;
+
+    private final TransactionTemplate readOnlyTx;
+
+    @Autowired
+    public ReactiveReadServiceImpl(PlatformTransactionManager transactionManager) {
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    @Override
+    public Flux<BookDto> streamBooks(int pageSize) {
+        return streamAfter(pageSize, bookRepository::findIdsAfter, bookRepository::findWithAssociationsByIdIn,
+                Book::getId, BookDto::summaryOf);
+    }
+
+    @Override
+    public Mono<BookDto> findBook(Long id) {
+        return readOne(() -> bookRepository.findById(id).map(BookDto::from)
+                .orElseThrow(() -> new ResourceNotFoundException("Book Not Found!")));
+    }
+
+    @Override
+    public Flux<AuthorDto> streamAuthors(int pageSize) {
+        return streamAfter(pageSize, authorRepository::findIdsAfter, authorRepository::findWithAssociationsByIdIn,
+                Author::getId, AuthorDto::from);
+    }
+
+    @Override
+    public Mono<AuthorDto> findAuthor(Long id) {
+        return readOne(() -> authorRepository.findById(id).map(AuthorDto::from)
+                .orElseThrow(() -> new ResourceNotFoundException("Author Not Found!")));
+    }
+
+    @Override
+    public Flux<CategoryDto> streamCategories(int pageSize) {
+        return streamAfter(pageSize, categoryRepository::findIdsAfter, categoryRepository::findWithAssociationsByIdIn,
+                Category::getId, CategoryDto::from);
+    }
+
+    @Override
+    public Mono<CategoryDto> findCategory(Long id) {
+        return readOne(() -> categoryRepository.findById(id).map(CategoryDto::from)
+                .orElseThrow(() -> new ResourceNotFoundException("Category Not Found!")));
+    }
+
+    /**
+     * Fetches the first page and expands into the following pages on demand.
+     * expand() only subscribes to the next page once the elements of the current one have been requested,
+     * so a slow client holds back the database instead of filling up memory.
+     * @param pageSize  elements per page
+     * @param idsAfter  ids after an id, ascending, at most the size of the Pageable
+     * @param loader    entities of ids with their associations, in any order
+     * @param idOf      id of an entity
+     * @param convert   entity to DTO; called on the jpaScheduler inside a read-only transaction
+     * @param <E>       entity type
+     * @param <T>       element type
+     * @return          all elements of all pages
+     */
+    private <E, T> Flux<T> streamAfter(int pageSize, BiFunction<Long, Pageable, List<Long>> idsAfter,
+                                       Function<List<Long>, List<E>> loader, Function<E, Long> idOf,
+                                       Function<E, T> convert) {
+        Pageable limit = PageRequest.of(0, pageSize);
+        Function<Long, Mono<KeysetPage<T>>> loadAfter = after -> readOne(() -> {
+            List<Long> ids = idsAfter.apply(after, limit);
+            if (ids.isEmpty()) {
+                return new KeysetPage<>(Collections.<T>emptyList(), after, false);
+            }
+            List<T> content = DeferredJoin.inOrder(ids, loader.apply(ids), idOf).stream()
+                    .map(convert)
+                    .collect(Collectors.toList());
+            return new KeysetPage<>(content, ids.get(ids.size() - 1), ids.size() == pageSize);
+        });
+        return loadAfter.apply(0L)
+                .expand(page -> page.full ? loadAfter.apply(page.lastId) : Mono.empty())
+                .concatMapIterable(page -> page.content)
+                .limitRate(pageSize);
+    }
+
+    private <T> Mono<T> readOne(Supplier<T> supplier) {
+        return Mono.fromCallable(() -> readOnlyTx.execute(status -> supplier.get()))
+                .subscribeOn(jpaScheduler);
+    }
+
+    /**
+     * converted elements of one page and the id to continue after;
+     * a full page may be followed by more rows, a shorter one is the last
+     */
+    private static final class KeysetPage<T> {
+        private final List<T> content;
+        private final long lastId;
+        private final boolean full;
+
+        private KeysetPage(List<T> content, long lastId, boolean full) {
+            this.content = content;
+            this.lastId = lastId;
+            this.full = full;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.Book;
+
+import java.util.List;
+
+/**
+ * "More like this" for the book page
+ * @author platoiscoding.com
+ */
+public interface RecommendationService {
+
+    /**
+     * @param book  book shown
+     * @return      related books, most related first; empty while the index is being built
+     */
+    List<Book> findRelated(Book book);
+
+    /**
+     * @param bookId    book_id
+     * @return          book_ids of the related books, most related first
+     */
+    List<Long> findRelatedIds(Long bookId);
+}
@@ -0,0 +1,39 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.Book;
+import com.example.booksmanager.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The related books are looked up in the RelatedBooksIndex; the database is only asked
+ * for the listed books, by primary key, with the authors and categories the page shows
+ * @author platoiscoding.com
+ */
+@Service
+@Transactional(readOnly = true)
+public class RecommendationServiceImpl implements RecommendationService {
+
+    @Autowired
+    private RelatedBooksIndex relatedBooksIndex;
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Override
+    public List<Book> findRelated(Book book) {
+        List<Long> ids = relatedBooksIndex.related(book.getId());
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return DeferredJoin.inOrder(ids, bookRepository.findWithAssociationsByIdIn(ids), Book::getId);
+    }
+
+    @Override
+    public List<Long> findRelatedIds(Long bookId) {
+        return relatedBooksIndex.related(bookId);
+    }
+}
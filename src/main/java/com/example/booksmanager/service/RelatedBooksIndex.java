@@ -0,0 +1,487 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.domain.CompressedText;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Precomputed "more like this" lists: the k most related books of every book
+ * Two books are related through shared authors and categories; each shared group adds
+ * weight * ln(1 + books / books in the group), so a shared author counts for more than a shared
+ * large category. If description-weight is set, the cosine similarity of the TF-IDF vectors of the
+ * descriptions is added, and books sharing one of their top terms become candidates as well.
+ * Groups and terms with more than max-group-size books are not used to find candidates (they still
+ * add to the score of candidates found otherwise), which bounds the cost of a row.
+ * Authors, categories and group sizes are read from the CatalogGraph, which the relay updates first.
+ * The lists are stored as one int array of book positions (k slots per book), so a page view is an
+ * array lookup. Built after startup and then periodically; the change_events relay recomputes the
+ * rows of changed books and merges them into the rows of their neighbours in between.
+ * @author platoiscoding.com
+ */
+@Component
+public class RelatedBooksIndex implements ChangeEventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RelatedBooksIndex.class);
+
+    //terms of a description that are used to find candidates
+    private static final int TOP_TERMS = 8;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private CatalogGraph catalogGraph;
+
+    @Value("${booksmanager.recommendations.k:8}")
+    private int k;
+    @Value("${booksmanager.recommendations.author-weight:3.0}")
+    private double authorWeight;
+    @Value("${booksmanager.recommendations.category-weight:1.0}")
+    private double categoryWeight;
+    @Value("${booksmanager.recommendations.description-weight:0.0}")
+    private double descriptionWeight;
+    @Value("${booksmanager.recommendations.max-group-size:1000}")
+    private int maxGroupSize;
+
+    /**
+     * computes all rows of the current graph into a new state, which then replaces the current one;
+     * runs after the CatalogGraph is loaded (default order);
+     * synchronized with onChanges, so no change is applied to a state that is about to be replaced
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${booksmanager.recommendations.rebuild-interval:86400000}",
+               initialDelayString = "${booksmanager.recommendations.rebuild-interval:86400000}")
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        CatalogGraph.Snapshot graph = catalogGraph.snapshot();
+        Map<Long, String> descriptions = descriptions("", new Object[0]);
+        State fresh = new State(graph);
+        for (int book = 0; book < graph.books(); book++) {
+            fresh.put(graph.bookId(book), descriptions.get(graph.bookId(book)));
+        }
+        fresh.updateDocumentFrequencies();
+        fresh.computeAll();
+        lock.writeLock().lock();
+        try {
+            state = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("related books computed for {} books in {} ms", graph.books(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @param bookId    book_id
+     * @return          book_ids of the related books, most related first; empty before the first build
+     */
+    public List<Long> related(Long bookId) {
+        lock.readLock().lock();
+        try {
+            return state == null ? Collections.emptyList() : state.related(bookId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public synchronized void onChanges(List<ChangeEvent> events) {
+        Set<Long> bookIds = new HashSet<>();
+        for (ChangeEvent event : events) {
+            if (event.getEntityType() == ChangeEvent.EntityType.BOOK) {
+                bookIds.add(event.getEntityId());
+            }
+        }
+        if (bookIds.isEmpty() || state == null) {
+            return;
+        }
+        Object[] ids = bookIds.toArray();
+        Map<Long, String> descriptions = descriptions(" WHERE book_id IN (" + String.join(",", Collections.nCopies(ids.length, "?")) + ")", ids);
+        lock.writeLock().lock();
+        try {
+            state.apply(bookIds, catalogGraph.snapshot(), descriptions);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param where     restriction on book_id, "" for all books
+     * @return          book_id -> description; empty if descriptions are not used
+     */
+    private Map<Long, String> descriptions(String where, Object[] args) {
+        Map<Long, String> descriptions = new HashMap<>();
+        if (descriptionWeight > 0) {
+            jdbcTemplate.query("SELECT book_id, description FROM books" + where, rs -> {
+                descriptions.put(rs.getLong(1), CompressedText.decode(rs.getString(2)));
+            }, args);
+        }
+        return descriptions;
+    }
+
+    /**
+     * term vectors and top-k rows; books are addressed by a dense position, which stays the same
+     * while the graph numbers its books anew on every change
+     */
+    private final class State {
+
+        private CatalogGraph.Snapshot graph;
+        private final Map<Long, Integer> positions = new HashMap<>();
+        private final List<Integer> freePositions = new ArrayList<>();
+        private long[] bookIds;
+
+        //description vectors: sorted term ids and L2-normalized TF-IDF weights
+        private final Map<String, Integer> termIds = new HashMap<>();
+        private final Map<Integer, Integer> documentFrequency = new HashMap<>();
+        private int documents = 1;
+        private int[][] termsOf;
+        private float[][] weightsOf;
+        private int[][] topTermsOf;
+        private String[] descriptionOf;
+        private final Map<Integer, Set<Integer>> booksByTopTerm = new HashMap<>();
+
+        //k slots per position: related positions (-1 = empty) and their scores, best first
+        private int[] related;
+        private float[] scores;
+
+        State(CatalogGraph.Snapshot graph) {
+            this.graph = graph;
+            allocate(Math.max(16, graph.books()));
+        }
+
+        List<Long> related(Long bookId) {
+            Integer position = positions.get(bookId);
+            if (position == null) {
+                return Collections.emptyList();
+            }
+            List<Long> result = new ArrayList<>(k);
+            for (int slot = position * k; slot < (position + 1) * k && related[slot] >= 0; slot++) {
+                result.add(bookIds[related[slot]]);
+            }
+            return result;
+        }
+
+        void put(Long bookId, String description) {
+            Integer position = positions.get(bookId);
+            if (position == null) {
+                position = freePositions.isEmpty() ? positions.size() : freePositions.remove(freePositions.size() - 1);
+                if (position >= bookIds.length) {
+                    allocate(bookIds.length + bookIds.length / 2);
+                }
+                positions.put(bookId, position);
+                bookIds[position] = bookId;
+            }
+            descriptionOf[position] = description;
+            if (description != null && documentFrequency.size() > 0) {
+                vectorize(position);
+            }
+        }
+
+        void remove(int p) {
+            for (int term : topTermsOf[p]) {
+                removeMember(booksByTopTerm, term, p);
+            }
+            termsOf[p] = null;
+            weightsOf[p] = null;
+            topTermsOf[p] = new int[0];
+            descriptionOf[p] = null;
+        }
+
+        /**
+         * document frequencies of the description terms; the IDF weights are kept until the next rebuild
+         */
+        void updateDocumentFrequencies() {
+            if (descriptionWeight <= 0) {
+                return;
+            }
+            documents = Math.max(1, positions.size());
+            for (int p = 0; p < bookIds.length; p++) {
+                if (descriptionOf[p] != null) {
+                    for (String term : new HashSet<>(tokenize(descriptionOf[p]))) {
+                        documentFrequency.merge(termId(term), 1, Integer::sum);
+                    }
+                }
+            }
+            for (int p = 0; p < bookIds.length; p++) {
+                if (descriptionOf[p] != null) {
+                    vectorize(p);
+                }
+            }
+        }
+
+        void computeAll() {
+            Arrays.fill(related, -1);
+            for (int p : positions.values()) {
+                computeRow(p);
+            }
+        }
+
+        /**
+         * @param changedIds    changed book_ids
+         * @param graph         graph with the changes applied
+         * @param descriptions  current descriptions of those that still exist, if used
+         */
+        void apply(Set<Long> changedIds, CatalogGraph.Snapshot graph, Map<Long, String> descriptions) {
+            this.graph = graph;
+            Set<Integer> changedPositions = new HashSet<>();
+            for (Long bookId : changedIds) {
+                Integer position = positions.get(bookId);
+                if (position != null) {
+                    remove(position);
+                    changedPositions.add(position);
+                }
+                if (graph.book(bookId) < 0) {
+                    if (position != null) {
+                        positions.remove(bookId);
+                        bookIds[position] = 0;
+                        clearRow(position);
+                        freePositions.add(position);
+                    }
+                } else {
+                    put(bookId, descriptions.get(bookId));
+                    changedPositions.add(positions.get(bookId));
+                }
+            }
+            //rows that list a changed book may have to drop it or move it down: recompute them
+            Set<Integer> stale = new HashSet<>();
+            for (int slot = 0; slot < related.length; slot++) {
+                if (related[slot] >= 0 && changedPositions.contains(related[slot])) {
+                    stale.add(slot / k);
+                }
+            }
+            for (int p : changedPositions) {
+                if (bookIds[p] != 0) {
+                    Map<Integer, Float> candidates = computeRow(p);
+                    //scores are symmetric: the changed book may now belong into the rows of its candidates
+                    candidates.forEach((q, score) -> {
+                        if (!stale.contains(q) && !changedPositions.contains(q)) {
+                            offer(q, p, score);
+                        }
+                    });
+                }
+            }
+            for (int p : stale) {
+                if (bookIds[p] != 0 && !changedPositions.contains(p)) {
+                    computeRow(p);
+                }
+            }
+        }
+
+        /**
+         * @return scored candidates of p
+         */
+        private Map<Integer, Float> computeRow(int p) {
+            clearRow(p);
+            int book = graph.book(bookIds[p]);
+            if (book < 0) {
+                return Collections.emptyMap();
+            }
+            Set<Integer> candidates = new HashSet<>();
+            addCandidates(candidates, book, graph.authorsOfBook(), graph.booksOfAuthor());
+            addCandidates(candidates, book, graph.categoriesOfBook(), graph.booksOfCategory());
+            for (int term : topTermsOf[p]) {
+                Set<Integer> group = booksByTopTerm.get(term);
+                if (group != null && group.size() <= maxGroupSize) {
+                    candidates.addAll(group);
+                }
+            }
+            candidates.remove(p);
+            Map<Integer, Float> scored = new HashMap<>();
+            for (int q : candidates) {
+                float score = score(p, book, q);
+                if (score > 0) {
+                    scored.put(q, score);
+                    offer(p, q, score);
+                }
+            }
+            return scored;
+        }
+
+        /**
+         * adds the positions of the books in the groups of book, skipping groups larger than max-group-size
+         */
+        private void addCandidates(Set<Integer> candidates, int book, CatalogGraph.Csr groupsOf, CatalogGraph.Csr members) {
+            for (int i = groupsOf.start(book); i < groupsOf.end(book); i++) {
+                int group = groupsOf.target(i);
+                if (members.degree(group) > maxGroupSize) {
+                    continue;
+                }
+                for (int j = members.start(group); j < members.end(group); j++) {
+                    Integer q = positions.get(graph.bookId(members.target(j)));
+                    if (q != null) {
+                        candidates.add(q);
+                    }
+                }
+            }
+        }
+
+        private float score(int p, int book, int q) {
+            int other = graph.book(bookIds[q]);
+            if (other < 0) {
+                return 0;
+            }
+            double score = authorWeight * shared(book, other, graph.authorsOfBook(), graph.booksOfAuthor())
+                    + categoryWeight * shared(book, other, graph.categoriesOfBook(), graph.booksOfCategory());
+            if (descriptionWeight > 0 && termsOf[p] != null && termsOf[q] != null) {
+                score += descriptionWeight * cosine(p, q);
+            }
+            return (float) score;
+        }
+
+        private double shared(int book, int other, CatalogGraph.Csr groupsOf, CatalogGraph.Csr members) {
+            double sum = 0;
+            for (int i = groupsOf.start(book); i < groupsOf.end(book); i++) {
+                for (int j = groupsOf.start(other); j < groupsOf.end(other); j++) {
+                    if (groupsOf.target(i) == groupsOf.target(j)) {
+                        sum += Math.log(1.0 + (double) graph.books() / members.degree(groupsOf.target(i)));
+                    }
+                }
+            }
+            return sum;
+        }
+
+        private double cosine(int p, int q) {
+            int[] a = termsOf[p];
+            int[] b = termsOf[q];
+            double dot = 0;
+            for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+                if (a[i] == b[j]) {
+                    dot += weightsOf[p][i++] * weightsOf[q][j++];
+                } else if (a[i] < b[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return dot;
+        }
+
+        /**
+         * inserts q into the row of p if it scores better than the last entry
+         */
+        private void offer(int p, int q, float score) {
+            int first = p * k;
+            int last = first + k - 1;
+            for (int slot = first; slot <= last; slot++) {
+                if (related[slot] == q) {
+                    //already listed: take it out and insert it again with the new score
+                    System.arraycopy(related, slot + 1, related, slot, last - slot);
+                    System.arraycopy(scores, slot + 1, scores, slot, last - slot);
+                    related[last] = -1;
+                    break;
+                }
+            }
+            if (related[last] >= 0 && scores[last] >= score) {
+                return;
+            }
+            int slot = last;
+            while (slot > first && (related[slot - 1] < 0 || scores[slot - 1] < score)) {
+                related[slot] = related[slot - 1];
+                scores[slot] = scores[slot - 1];
+                slot--;
+            }
+            related[slot] = q;
+            scores[slot] = score;
+        }
+
+        private void clearRow(int p) {
+            Arrays.fill(related, p * k, (p + 1) * k, -1);
+        }
+
+        private void vectorize(int p) {
+            Map<Integer, Integer> counts = new TreeMap<>();
+            for (String term : tokenize(descriptionOf[p])) {
+                counts.merge(termId(term), 1, Integer::sum);
+            }
+            int[] terms = new int[counts.size()];
+            float[] weights = new float[counts.size()];
+            double norm = 0;
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                double idf = Math.log(1.0 + (double) documents / documentFrequency.getOrDefault(entry.getKey(), 1));
+                terms[i] = entry.getKey();
+                weights[i] = (float) (entry.getValue() * idf);
+                norm += weights[i] * weights[i];
+                i++;
+            }
+            for (i = 0; i < weights.length; i++) {
+                weights[i] /= (float) Math.sqrt(norm);
+            }
+            termsOf[p] = terms;
+            weightsOf[p] = weights;
+            //the TOP_TERMS heaviest terms find candidates
+            Integer[] order = new Integer[terms.length];
+            for (i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> Float.compare(weights[y], weights[x]));
+            topTermsOf[p] = new int[Math.min(TOP_TERMS, terms.length)];
+            for (i = 0; i < topTermsOf[p].length; i++) {
+                topTermsOf[p][i] = terms[order[i]];
+                booksByTopTerm.computeIfAbsent(topTermsOf[p][i], t -> new HashSet<>()).add(p);
+            }
+            //the text is not needed any more
+            descriptionOf[p] = null;
+        }
+
+        private int termId(String term) {
+            return termIds.computeIfAbsent(term, t -> termIds.size());
+        }
+
+        private void allocate(int capacity) {
+            int old = bookIds == null ? 0 : bookIds.length;
+            bookIds = bookIds == null ? new long[capacity] : Arrays.copyOf(bookIds, capacity);
+            termsOf = termsOf == null ? new int[capacity][] : Arrays.copyOf(termsOf, capacity);
+            weightsOf = weightsOf == null ? new float[capacity][] : Arrays.copyOf(weightsOf, capacity);
+            topTermsOf = topTermsOf == null ? new int[capacity][] : Arrays.copyOf(topTermsOf, capacity);
+            descriptionOf = descriptionOf == null ? new String[capacity] : Arrays.copyOf(descriptionOf, capacity);
+            related = related == null ? new int[capacity * k] : Arrays.copyOf(related, capacity * k);
+            scores = scores == null ? new float[capacity * k] : Arrays.copyOf(scores, capacity * k);
+            Arrays.fill(related, old * k, capacity * k, -1);
+            for (int p = old; p < capacity; p++) {
+                topTermsOf[p] = new int[0];
+            }
+        }
+    }
+
+    private static <K> void removeMember(Map<K, Set<Integer>> groups, K group, int p) {
+        Set<Integer> members = groups.get(group);
+        if (members != null) {
+            members.remove(p);
+            if (members.isEmpty()) {
+                groups.remove(group);
+            }
+        }
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String token : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() > 2) {
+                terms.add(token);
+            }
+        }
+        return terms;
+    }
+}
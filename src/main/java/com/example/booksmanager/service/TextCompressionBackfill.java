@@ -0,0 +1,132 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.Book;
+import com.example.booksmanager.domain.CompressedText;
+import com.example.booksmanager.exception.ConcurrentUpdateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * Migrates books.description and authors.bio written as plain text into the compressed form of
+ * CompressedText, and fills books.summary for books written past Book (data.sql, rows from before the column).
+ * Readers accept both forms, so this only frees space and can run while the application serves requests.
+ * Books are done once summary is set; authors are scanned on every start, unless the backfill is switched off
+ * with booksmanager.text-compression.backfill=false once the data has been migrated.
+ * A batch only writes rows whose version is still the one it read, so an edit made in between is not
+ * overwritten with the old text; OptimisticRetry then reads and writes the batch again.
+ * @author platoiscoding.com
+ */
+@Component
+public class TextCompressionBackfill {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TextCompressionBackfill.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+
+    @Value("${booksmanager.text-compression.backfill:true}")
+    private boolean enabled;
+    @Value("${booksmanager.text-compression.backfill-batch-size:500}")
+    private int batchSize;
+
+    /**
+     * @return number of migrated books and authors
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public int backfill() {
+        if (!enabled) {
+            return 0;
+        }
+        int books = migrate("books", this::booksBatch);
+        int authors = migrate("authors", this::authorsBatch);
+        if (books + authors > 0) {
+            LOG.info("text columns migrated for {} books and {} authors", books, authors);
+        }
+        return books + authors;
+    }
+
+    /**
+     * @param table     migrated table, for the log
+     * @param batches   writes the batch after an id in one transaction, null if there are no rows left
+     * @return          number of migrated rows
+     */
+    private int migrate(String table, LongFunction<BackfillBatch> batches) {
+        int migrated = 0;
+        long lastId = 0;
+        while (true) {
+            long after = lastId;
+            BackfillBatch batch;
+            try {
+                batch = optimisticRetry.run(() -> batches.apply(after));
+            } catch (ConcurrentUpdateException e) {
+                LOG.warn("text compression of {} stopped after id {}, the rest follows on the next start: {}",
+                        table, after, e.getMessage());
+                return migrated;
+            }
+            if (batch == null) {
+                return migrated;
+            }
+            migrated += batch.migrated;
+            lastId = batch.lastId;
+        }
+    }
+
+    private BackfillBatch booksBatch(long after) {
+        List<Object[]> rows = batch("SELECT book_id, description, version FROM books WHERE summary IS NULL AND book_id > ? ORDER BY book_id", after);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            String description = CompressedText.decode((String) row[1]);
+            updates.add(new Object[]{CompressedText.encode(description), Book.summarize(description), row[0], row[2]});
+        }
+        OptimisticRetry.checkUpdated(jdbcTemplate.batchUpdate(
+                "UPDATE books SET description = ?, summary = ? WHERE book_id = ? AND version = ?", updates), "book");
+        return new BackfillBatch((Long) rows.get(rows.size() - 1)[0], updates.size(), 0);
+    }
+
+    private BackfillBatch authorsBatch(long after) {
+        List<Object[]> rows = batch("SELECT author_id, bio, version FROM authors WHERE author_id > ? ORDER BY author_id", after);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        List<Object[]> updates = new ArrayList<>();
+        for (Object[] row : rows) {
+            String bio = (String) row[1];
+            String encoded = CompressedText.isEncoded(bio) ? bio : CompressedText.encode(bio);
+            if (bio != null && !encoded.equals(bio)) {
+                updates.add(new Object[]{encoded, row[0], row[2]});
+            }
+        }
+        if (!updates.isEmpty()) {
+            OptimisticRetry.checkUpdated(jdbcTemplate.batchUpdate(
+                    "UPDATE authors SET bio = ? WHERE author_id = ? AND version = ?", updates), "author");
+        }
+        return new BackfillBatch((Long) rows.get(rows.size() - 1)[0], updates.size(), rows.size() - updates.size());
+    }
+
+    private List<Object[]> batch(String sql, long after) {
+        return jdbcTemplate.query(sql,
+                ps -> {
+                    ps.setLong(1, after);
+                    ps.setMaxRows(batchSize);
+                },
+                (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getLong(3)});
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.booksmanager.support;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Position of one reader in a table of events with increasing ids, e.g. change_events
+ * Ids are assigned when a row is inserted but become visible when its transaction commits, so an event can
+ * show up after events with higher ids. The cursor therefore keeps two positions: highest, the highest id
+ * delivered, and position, below which every event has been delivered. Ids in between that have not shown
+ * up yet are gaps; each read looks for them again, until they are older than the grace period and are given
+ * up (rolled back inserts leave gaps that never fill).
+ * Not thread-safe, used by the single relay thread.
+ * @author platoiscoding.com
+ */
+public class EventCursor {
+
+    private final long graceNanos;
+    private long position;
+    private long highest;
+    //delivered ids above position -> instant of delivery (System.nanoTime); a gap below an id is as old as that
+    private final NavigableMap<Long, Long> deliveredAbove = new TreeMap<>();
+
+    /**
+     * @param start         events up to this id are regarded as delivered
+     * @param graceNanos    how long a gap is looked for
+     */
+    public EventCursor(long start, long graceNanos) {
+        this.position = start;
+        this.highest = start;
+        this.graceNanos = graceNanos;
+    }
+
+    /**
+     * @return  all events up to this id have been delivered (or given up)
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * @return  highest id delivered; new events have higher ids
+     */
+    public long highest() {
+        return highest;
+    }
+
+    public boolean hasGaps() {
+        return highest > position;
+    }
+
+    /**
+     * @param id    id of an event read below highest()
+     * @return      whether the event still has to be delivered
+     */
+    public boolean isPending(long id) {
+        return id > position && !deliveredAbove.containsKey(id);
+    }
+
+    /**
+     * @param id    id of a delivered event
+     * @param now   current instant
+     */
+    public void delivered(long id, long now) {
+        if (id <= position) {
+            return;
+        }
+        deliveredAbove.putIfAbsent(id, now);
+        highest = Math.max(highest, id);
+        settle(now);
+    }
+
+    /**
+     * advances position over delivered ids, and over gaps that are older than the grace period
+     * @param now   current instant
+     */
+    public void settle(long now) {
+        while (!deliveredAbove.isEmpty()) {
+            Map.Entry<Long, Long> next = deliveredAbove.firstEntry();
+            if (next.getKey() != position + 1 && now - next.getValue() < graceNanos) {
+                return;
+            }
+            deliveredAbove.pollFirstEntry();
+            position = next.getKey();
+        }
+    }
+}
@@ -1,9 +1,19 @@
 package com.example.booksmanager.support;
 
-import org.springframework.stereotype.Component;
+import org.springframework.ui.Model;
 
-@Component
-public class Message{
+import java.io.Serializable;
+
+/**
+ * Notice shown in the message box of a page (fragments/messageBox)
+ * A value of one request, never shared: a handler gets the Message of its request with Message.of(model),
+ * a handler that redirects passes a new one to the next request as flash attribute "message".
+ * Serializable, as flash attributes are kept in the session until the redirect arrives.
+ * @author platoiscoding.com
+ */
+public class Message implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String success = null;
     private String error = null;
@@ -12,6 +22,32 @@ public class Message{
     public Message() {
     }
 
+    /**
+     * @param model     model of the current request
+     * @return          the message flashed to this request, or a new one; in the model as "message"
+     */
+    public static Message of(Model model) {
+        Object flashed = model.asMap().get("message");
+        if (flashed instanceof Message) {
+            return (Message) flashed;
+        }
+        Message message = new Message();
+        model.addAttribute("message", message);
+        return message;
+    }
+
+    public static Message success(String success) {
+        Message message = new Message();
+        message.setSuccess(success);
+        return message;
+    }
+
+    public static Message error(String error) {
+        Message message = new Message();
+        message.setError(error);
+        return message;
+    }
+
     public String getSuccess() {
         return success;
     }
@@ -35,10 +71,4 @@ public class Message{
     public void setInfo(String info) {
         this.info = info;
     }
-
-    public void reset(){
-        this.error=null;
-        this.success=null;
-        this.info=null;
-    }
 }
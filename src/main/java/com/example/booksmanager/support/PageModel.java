@@ -1,38 +1,82 @@
 package com.example.booksmanager.support;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Component;
 import javax.servlet.http.HttpServletRequest;
 
+/**
+ * Page and size of a list view, from the request parameters 'page' (1-based) and 'size'
+ * Holds no state of its own: request is a proxy of the current request, so one instance serves all threads.
+ */
 @Component
 public class PageModel {
-    private static int PAGE = 0;
-    private static int SIZE = 5;
+    protected static final int DEFAULT_SIZE = 5;
+    protected static final int MAX_SIZE = 100;
+    protected static final int PAGE_LINKS = 9;
 
-    private HttpServletRequest request;
+    private final HttpServletRequest request;
 
     public PageModel(HttpServletRequest request) {
         this.request = request;
     }
 
-    public void initPageAndSize(){
-        if (request.getParameter("page") != null && !request.getParameter("page").isEmpty()) {
-            PAGE = Integer.parseInt(request.getParameter("page")) - 1;
-        }
+    /**
+     * @return  0-based page of the current request, 0 if there is none
+     */
+    public int getPage() {
+        return Math.max(0, parameter("page", 1) - 1);
+    }
 
-        if (request.getParameter("size") != null && !request.getParameter("size").isEmpty()) {
-            PAGE = Integer.parseInt(request.getParameter("size"));
-        }
+    /**
+     * @return  size of the pages of the current request, DEFAULT_SIZE if there is none, at most MAX_SIZE
+     */
+    public int getSize() {
+        int size = parameter("size", DEFAULT_SIZE);
+        return size < 1 ? DEFAULT_SIZE : Math.min(size, MAX_SIZE);
+    }
+
+    /**
+     * @return      current page and size, unsorted
+     */
+    public PageRequest pageRequest() {
+        return PageRequest.of(getPage(), getSize());
     }
 
-    public static void setSIZE(int SIZE) {
-        PageModel.SIZE = SIZE;
+    /**
+     * @param sort  resolved by a SortWhitelist
+     * @return      current page and size with sort
+     */
+    public PageRequest pageRequest(Sort sort) {
+        return PageRequest.of(getPage(), getSize(), sort);
     }
 
-    public static int getPAGE() {
-        return PAGE;
+    /**
+     * numbers of the page links: a window of PAGE_LINKS pages around the current one
+     * rather than a link to every page of the list
+     * @param page  current page
+     * @return      1-based page numbers, ascending
+     */
+    public int[] pageNumbers(Page<?> page) {
+        int total = page.getTotalPages();
+        int first = Math.max(1, Math.min(page.getNumber() + 1 - PAGE_LINKS / 2, total - PAGE_LINKS + 1));
+        int[] numbers = new int[Math.min(PAGE_LINKS, total)];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = first + i;
+        }
+        return numbers;
     }
 
-    public static int getSIZE() {
-        return SIZE;
+    private int parameter(String name, int defaultValue) {
+        String value = request.getParameter(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
-}
\ No newline at end of file
+}
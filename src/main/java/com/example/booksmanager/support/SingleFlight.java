@@ -0,0 +1,99 @@
+package com.example.booksmanager.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent identical calls share one execution
+ * The first caller of a key runs the call; callers of the same key that arrive while it runs wait for it
+ * and get its result, or its exception. Nothing is kept once the call has returned, so this is no cache:
+ * a call that starts after the previous one has returned runs again.
+ * booksmanager.single-flight.calls counts per operation the executed calls and the shared ones,
+ * i.e. the database round trips that were saved.
+ * @author platoiscoding.com
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter shared;
+
+    /**
+     * @param operation     tag 'operation' of the counters
+     * @param registry      registry of the counters, null for none
+     */
+    public SingleFlight(String operation, MeterRegistry registry) {
+        this.executed = registry == null ? null : counter(registry, operation, "executed");
+        this.shared = registry == null ? null : counter(registry, operation, "shared");
+    }
+
+    /**
+     * @param key   identifies the call; equal keys have to mean equal results
+     * @param call  executed if no call of key is running
+     * @return      result of call or of the running call of key
+     */
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            increment(shared);
+            return await(running);
+        }
+        increment(executed);
+        try {
+            V result = call.get();
+            own.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * @return  number of keys whose call is running
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> running) {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a shared call", e);
+        } catch (ExecutionException e) {
+            //the exception of the executing caller, as if the call had failed here
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static Counter counter(MeterRegistry registry, String operation, String outcome) {
+        return Counter.builder("booksmanager.single-flight.calls")
+                .description("calls executed and calls answered by an identical call in flight")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.booksmanager.support;
+
+import com.example.booksmanager.exception.UnsupportedSortException;
+import org.springframework.data.domain.Sort;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The sort keys a list view accepts, each mapped to the properties of a composite index
+ * (declared on the entity, created for the prod profile by migration V3 in db/migration)
+ * The id is always appended as tie-breaker, in the same direction as the key, so that paging is
+ * deterministic and MySQL can walk the index (forwards or backwards) instead of sorting.
+ * Keys that are not listed are rejected with 400.
+ * @author platoiscoding.com
+ */
+public class SortWhitelist {
+
+    private final String defaultKey;
+    private final Map<String, Sort.Direction> directions = new LinkedHashMap<>();
+    private final Map<String, String[]> properties = new LinkedHashMap<>();
+
+    public SortWhitelist(String defaultKey) {
+        this.defaultKey = defaultKey;
+    }
+
+    /**
+     * @param key           value of the 'sort' request parameter
+     * @param direction     direction used when no 'dir' is given
+     * @param indexed       entity properties in index order, without the id
+     * @return              this
+     */
+    public SortWhitelist allow(String key, Sort.Direction direction, String... indexed) {
+        directions.put(key, direction);
+        properties.put(key, indexed);
+        return this;
+    }
+
+    /**
+     * @param key   requested sort key, may be null or empty
+     * @return      the key or the default key
+     */
+    public String key(String key) {
+        if (key == null || key.isEmpty()) {
+            return defaultKey;
+        }
+        if (!properties.containsKey(key)) {
+            throw new UnsupportedSortException("Cannot sort by '" + key + "'. Allowed: " + properties.keySet());
+        }
+        return key;
+    }
+
+    /**
+     * @param key   requested sort key, may be null or empty
+     * @param dir   'asc', 'desc' or null/empty for the key's default direction
+     * @return      direction of all sort properties
+     */
+    public Sort.Direction direction(String key, String dir) {
+        if (dir == null || dir.isEmpty()) {
+            return directions.get(key(key));
+        }
+        return Sort.Direction.fromOptionalString(dir).orElseThrow(
+                () -> new UnsupportedSortException("Unknown sort direction '" + dir + "'. Allowed: [asc, desc]"));
+    }
+
+    /**
+     * @param key   requested sort key, may be null or empty
+     * @param dir   'asc', 'desc' or null/empty
+     * @return      Sort over the indexed properties followed by id
+     */
+    public Sort sort(String key, String dir) {
+        Sort.Direction direction = direction(key, dir);
+        Sort sort = Sort.by(direction, properties.get(key(key)));
+        return "id".equals(key(key)) ? sort : sort.and(Sort.by(direction, "id"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.booksmanager.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket holding up to capacity tokens, refilled with perSecond tokens per second; lock-free
+ * The bucket is kept as the single instant at which it is full again (the GCRA form of a token bucket):
+ * taking n tokens moves that instant n / perSecond seconds further, which is refused if it would end up more
+ * than capacity / perSecond seconds after now. Taking is one compare-and-set, an idle bucket costs nothing.
+ * Instants are System.nanoTime() values.
+ * @author platoiscoding.com
+ */
+public class TokenBucket {
+
+    private final int capacity;
+    private final long nanosPerToken;
+    private final long burstNanos;
+    //instant at which the bucket is full again; earlier instants mean the same as now
+    private final AtomicLong fullAt;
+
+    /**
+     * @param capacity      tokens of a full bucket, the burst a client may send at once
+     * @param perSecond     tokens added per second, the sustained rate
+     * @param now           current instant; the bucket starts full
+     */
+    public TokenBucket(int capacity, double perSecond, long now) {
+        this.capacity = capacity;
+        this.nanosPerToken = (long) (1_000_000_000L / perSecond);
+        this.burstNanos = capacity * nanosPerToken;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * @param tokens    tokens to take, at most capacity
+     * @param now       current instant
+     * @return          0 if the tokens were taken, otherwise the nanos until there are enough of them
+     */
+    public long tryTake(int tokens, long now) {
+        long cost = Math.min(tokens, capacity) * nanosPerToken;
+        while (true) {
+            long current = fullAt.get();
+            //compared by difference, not Math.max: nanoTime() values may overflow
+            long next = (current - now > 0 ? current : now) + cost;
+            if (next - now > burstNanos) {
+                return next - now - burstNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return  whether the bucket is full, i.e. can be dropped and created again without a difference
+     */
+    public boolean isFull(long now) {
+        return fullAt.get() - now <= 0;
+    }
+}
@@ -0,0 +1,45 @@
+-- tables as the first release created them with ddl-auto=create (a database created that way is baselined at this version)
+CREATE TABLE authors (
+    author_id BIGINT NOT NULL AUTO_INCREMENT,
+    created_at DATETIME NOT NULL,
+    updated_at DATETIME NOT NULL,
+    bio LONGTEXT,
+    first_name VARCHAR(255),
+    full_name VARCHAR(255),
+    last_name VARCHAR(255),
+    PRIMARY KEY (author_id)
+) ENGINE=InnoDB;
+
+CREATE TABLE books (
+    book_id BIGINT NOT NULL AUTO_INCREMENT,
+    created_at DATETIME NOT NULL,
+    updated_at DATETIME NOT NULL,
+    description LONGTEXT,
+    published VARCHAR(255),
+    title VARCHAR(255),
+    PRIMARY KEY (book_id)
+) ENGINE=InnoDB;
+
+CREATE TABLE categories (
+    category_id BIGINT NOT NULL AUTO_INCREMENT,
+    created_at DATETIME NOT NULL,
+    updated_at DATETIME NOT NULL,
+    name VARCHAR(255),
+    PRIMARY KEY (category_id)
+) ENGINE=InnoDB;
+
+CREATE TABLE books_authors (
+    book_id BIGINT NOT NULL,
+    author_id BIGINT NOT NULL,
+    PRIMARY KEY (book_id, author_id),
+    CONSTRAINT fk_books_authors_book FOREIGN KEY (book_id) REFERENCES books (book_id),
+    CONSTRAINT fk_books_authors_author FOREIGN KEY (author_id) REFERENCES authors (author_id)
+) ENGINE=InnoDB;
+
+CREATE TABLE books_categories (
+    book_id BIGINT NOT NULL,
+    category_id BIGINT NOT NULL,
+    PRIMARY KEY (book_id, category_id),
+    CONSTRAINT fk_books_categories_book FOREIGN KEY (book_id) REFERENCES books (book_id),
+    CONSTRAINT fk_books_categories_category FOREIGN KEY (category_id) REFERENCES categories (category_id)
+) ENGINE=InnoDB;
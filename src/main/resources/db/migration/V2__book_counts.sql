@@ -0,0 +1,9 @@
+-- denormalized sizes of Author.books and Category.books, kept by the repositories' adjustBookCount
+ALTER TABLE authors ADD COLUMN book_count INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE categories ADD COLUMN book_count INTEGER DEFAULT 0 NOT NULL;
+
+UPDATE authors SET book_count = (SELECT COUNT(*) FROM books_authors WHERE books_authors.author_id = authors.author_id);
+UPDATE categories SET book_count = (SELECT COUNT(*) FROM books_categories WHERE books_categories.category_id = categories.category_id);
+
+CREATE INDEX idx_authors_book_count ON authors (book_count, author_id);
+CREATE INDEX idx_categories_book_count ON categories (book_count, category_id);
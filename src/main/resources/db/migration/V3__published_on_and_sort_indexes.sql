@@ -0,0 +1,18 @@
+-- typed copy of books.published for range filters and chronological sorts;
+-- existing rows are filled by PublishedOnBackfill once the application is up
+ALTER TABLE books ADD COLUMN published_on DATE;
+
+CREATE INDEX idx_books_published_on ON books (published_on, book_id);
+
+-- the keys of the SortWhitelists, with the id as tie-breaker, so list pages walk an index instead of sorting
+CREATE INDEX idx_books_title ON books (title, book_id);
+CREATE INDEX idx_books_created_at ON books (created_at, book_id);
+CREATE INDEX idx_books_updated_at ON books (updated_at, book_id);
+
+CREATE INDEX idx_authors_last_name ON authors (last_name, first_name, author_id);
+CREATE INDEX idx_authors_created_at ON authors (created_at, author_id);
+CREATE INDEX idx_authors_updated_at ON authors (updated_at, author_id);
+
+CREATE INDEX idx_categories_name ON categories (name, category_id);
+CREATE INDEX idx_categories_created_at ON categories (created_at, category_id);
+CREATE INDEX idx_categories_updated_at ON categories (updated_at, category_id);
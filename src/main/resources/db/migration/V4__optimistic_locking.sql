@@ -0,0 +1,4 @@
+-- DateAudit.version, checked by every UPDATE of a book, author or category
+ALTER TABLE authors ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE books ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE categories ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,12 @@
+-- outbox written in the transaction of every change, relayed by ChangeEventRelay
+CREATE TABLE change_events (
+    event_id BIGINT NOT NULL AUTO_INCREMENT,
+    created_at DATETIME NOT NULL,
+    entity_id BIGINT NOT NULL,
+    entity_type VARCHAR(16) NOT NULL,
+    operation VARCHAR(16) NOT NULL,
+    published_at DATETIME,
+    PRIMARY KEY (event_id)
+) ENGINE=InnoDB;
+
+CREATE INDEX idx_change_events_unpublished ON change_events (published_at, event_id);
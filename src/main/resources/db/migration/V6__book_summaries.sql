@@ -0,0 +1,2 @@
+-- Book.summary; filled for the existing rows by TextCompressionBackfill on startup
+ALTER TABLE books ADD COLUMN summary VARCHAR(200);
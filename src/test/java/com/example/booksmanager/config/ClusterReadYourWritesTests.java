@@ -0,0 +1,116 @@
+package com.example.booksmanager.config;
+
+import com.example.booksmanager.service.CategoryService;
+import com.example.booksmanager.service.ChangeEventRelay;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.servlet.http.Cookie;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * cluster mode without a replica: rows changed by "another node" (plain SQL, never relayed here) are stale in
+ * the snapshot, the list rows and the lookup caches of this node, except for a client with the cookie
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "booksmanager.cluster.enabled=true",
+        "booksmanager.snapshot.enabled=true",
+        "booksmanager.warmup.enabled=false",
+        "booksmanager.rate-limit.enabled=false",
+        "booksmanager.concurrency-limit.enabled=false",
+        "booksmanager.outbox.relay-interval=3600000"
+})
+@AutoConfigureMockMvc
+public class ClusterReadYourWritesTests {
+
+    private static final String TITLE = "Title Updated Elsewhere";
+    private static final String CATEGORY = "Category Renamed Elsewhere";
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private CategoryService categoryService;
+    @Autowired
+    private ChangeEventRelay changeEventRelay;
+
+    private String originalTitle;
+    private String originalCategory;
+
+    @Before
+    public void readOriginals() {
+        originalTitle = jdbcTemplate.queryForObject("SELECT title FROM books WHERE book_id = 1000", String.class);
+        originalCategory = jdbcTemplate.queryForObject("SELECT name FROM categories WHERE category_id = 1000", String.class);
+    }
+
+    @After
+    public void restore() {
+        jdbcTemplate.update("UPDATE books SET title = ? WHERE book_id = 1000", originalTitle);
+        jdbcTemplate.update("UPDATE categories SET name = ? WHERE category_id = 1000", originalCategory);
+        jdbcTemplate.queryForList("SELECT category_id FROM categories WHERE name = 'Cluster Test Category'", Long.class)
+                .forEach(categoryService::delete);
+        //a pending category keeps the list rows from being cached
+        changeEventRelay.relay();
+        ReplicationContext.clear();
+    }
+
+    @Test
+    public void writeWithoutReplicaGetsTheCookie() throws Exception {
+        MvcResult result = mockMvc.perform(post("/category/create").param("name", "Cluster Test Category"))
+                .andReturn();
+
+        assertEquals(302, result.getResponse().getStatus());
+        assertNotNull(result.getResponse().getCookie(ReadYourWritesInterceptor.COOKIE_NAME));
+    }
+
+    @Test
+    public void updateOfAnotherNodeIsReadWithTheCookieOnly() throws Exception {
+        //fill the list rows and the lookup caches; the snapshot is built on startup
+        page("/book/1000/row", null);
+        page("/book/new", null);
+
+        jdbcTemplate.update("UPDATE books SET title = ? WHERE book_id = 1000", TITLE);
+        jdbcTemplate.update("UPDATE categories SET name = ? WHERE category_id = 1000", CATEGORY);
+        Cookie cookie = new Cookie(ReadYourWritesInterceptor.COOKIE_NAME, String.valueOf(System.currentTimeMillis() + 60_000));
+
+        //other clients see this node's copies until it relays the change
+        assertFalse(page("/book/1000", null).contains(TITLE));
+        assertFalse(page("/book/1000/row", null).contains(TITLE));
+        assertFalse(page("/book/new", null).contains(CATEGORY));
+
+        //the writer reads the database on whichever node it lands
+        assertTrue(page("/book/1000", cookie).contains(TITLE));
+        assertTrue(page("/book/1000/row", cookie).contains(TITLE));
+        assertTrue(page("/book/new", cookie).contains(CATEGORY));
+
+        //and what it read is not stored for the others
+        assertFalse(page("/book/1000/row", null).contains(TITLE));
+        assertFalse(page("/book/new", null).contains(CATEGORY));
+
+        //an expired cookie is ignored
+        Cookie expired = new Cookie(ReadYourWritesInterceptor.COOKIE_NAME, String.valueOf(System.currentTimeMillis() - 1));
+        assertFalse(page("/book/1000", expired).contains(TITLE));
+    }
+
+    private String page(String path, Cookie cookie) throws Exception {
+        MvcResult result = cookie == null
+                ? mockMvc.perform(get(path)).andReturn()
+                : mockMvc.perform(get(path).cookie(cookie)).andReturn();
+        assertEquals(200, result.getResponse().getStatus());
+        return result.getResponse().getContentAsString();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.booksmanager.config;
+
+import com.example.booksmanager.exception.OverloadedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * AIMD limit of ConcurrencyLimitInterceptor, driven by requests through preHandle and afterCompletion
+ */
+public class ConcurrencyLimitInterceptorTests {
+
+    private static final String STARTED = (String) ReflectionTestUtils.getField(ConcurrencyLimitInterceptor.class, "STARTED");
+    private static final long THRESHOLD_MS = 20;
+
+    @Test
+    public void requestsBeyondTheLimitAreRefused() {
+        ConcurrencyLimitInterceptor limiter = new ConcurrencyLimitInterceptor(2, 1, 10, 60_000, 5, null);
+        MockHttpServletRequest first = start(limiter);
+        start(limiter);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            limiter.preHandle(new MockHttpServletRequest(), response, null);
+            fail("third request within a limit of 2");
+        } catch (OverloadedException e) {
+            assertEquals("1", response.getHeader(HttpHeaders.RETRY_AFTER));
+        }
+        limiter.afterCompletion(first, new MockHttpServletResponse(), null, null);
+        start(limiter);
+    }
+
+    @Test
+    public void limitGrowsByOnePerLimitSuccessesUpToMax() {
+        ConcurrencyLimitInterceptor limiter = new ConcurrencyLimitInterceptor(4, 1, 6, 60_000, 5, null);
+        for (int i = 0; i < 4; i++) {
+            complete(limiter, start(limiter));
+        }
+        //+1/limit per success: about one per limit successes
+        assertEquals(4.92, limiter.getLimit(), 0.01);
+        for (int i = 0; i < 100; i++) {
+            complete(limiter, start(limiter));
+        }
+        assertEquals(6, limiter.getLimit(), 0);
+    }
+
+    @Test
+    public void slowRequestsShrinkTheLimitOncePerThresholdDownToMin() throws InterruptedException {
+        ConcurrencyLimitInterceptor limiter = new ConcurrencyLimitInterceptor(5, 4, 10, THRESHOLD_MS, 5, null);
+        Thread.sleep(THRESHOLD_MS + 5);
+        completeSlow(limiter);
+        assertEquals(4.5, limiter.getLimit(), 0.001);
+        //within the same threshold the other slow requests of the same spike don't count again
+        completeSlow(limiter);
+        completeSlow(limiter);
+        assertEquals(4.5, limiter.getLimit(), 0.001);
+
+        Thread.sleep(THRESHOLD_MS + 5);
+        completeSlow(limiter);
+        assertEquals(4.05, limiter.getLimit(), 0.001);
+        Thread.sleep(THRESHOLD_MS + 5);
+        completeSlow(limiter);
+        assertEquals(4, limiter.getLimit(), 0);
+        Thread.sleep(THRESHOLD_MS + 5);
+        completeSlow(limiter);
+        assertEquals(4, limiter.getLimit(), 0);
+    }
+
+    @Test
+    public void waitingForPooledConnectionsShrinksTheLimit() throws InterruptedException {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AtomicInteger pending = registry.gauge("hikaricp.connections.pending", new AtomicInteger(10));
+        ConcurrencyLimitInterceptor limiter = new ConcurrencyLimitInterceptor(10, 1, 20, THRESHOLD_MS, 5, registry);
+        Thread.sleep(THRESHOLD_MS + 5);
+        complete(limiter, start(limiter));
+        assertEquals(9, limiter.getLimit(), 0.001);
+
+        //the pool is sampled at most every 100 ms
+        pending.set(0);
+        Thread.sleep(110);
+        for (int i = 0; i < 9; i++) {
+            complete(limiter, start(limiter));
+        }
+        assertEquals(9.95, limiter.getLimit(), 0.01);
+        assertEquals(0, registry.get("booksmanager.concurrency-limit.in-flight").gauge().value(), 0);
+    }
+
+    @Test
+    public void asyncRequestsLeaveTheLimitWhenTheThreadIsReleased() {
+        ConcurrencyLimitInterceptor limiter = new ConcurrencyLimitInterceptor(1, 1, 1, 60_000, 5, null);
+        MockHttpServletRequest async = start(limiter);
+        limiter.afterConcurrentHandlingStarted(async, new MockHttpServletResponse(), null);
+        complete(limiter, start(limiter));
+        //the async dispatch completing later doesn't count twice
+        complete(limiter, async);
+        complete(limiter, start(limiter));
+    }
+
+    private static MockHttpServletRequest start(ConcurrencyLimitInterceptor limiter) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        assertTrue(limiter.preHandle(request, new MockHttpServletResponse(), null));
+        return request;
+    }
+
+    private static void complete(ConcurrencyLimitInterceptor limiter, MockHttpServletRequest request) {
+        limiter.afterCompletion(request, new MockHttpServletResponse(), null, null);
+    }
+
+    private static void completeSlow(ConcurrencyLimitInterceptor limiter) {
+        MockHttpServletRequest request = start(limiter);
+        request.setAttribute(STARTED, System.nanoTime() - TimeUnit.SECONDS.toNanos(10));
+        complete(limiter, request);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.booksmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * gauges of MySqlStatementMetrics over a mocked connection that answers the status query with fixed rows
+ */
+public class MySqlStatementMetricsTests {
+
+    private Statement statement;
+    private MySqlStatementMetrics metrics;
+    private MeterRegistry registry;
+
+    @Before
+    public void setUp() throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        statement = mock(Statement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenAnswer(invocation -> status());
+
+        metrics = new MySqlStatementMetrics(dataSource);
+        ReflectionTestUtils.setField(metrics, "cacheMs", 60_000L);
+        registry = new SimpleMeterRegistry();
+        metrics.bindTo(registry);
+    }
+
+    @Test
+    public void oneQueryServesAllGaugesUntilTheValuesExpire() throws SQLException {
+        assertEquals(120, registry.get("mysql.server.statements.prepared").gauge().value(), 0);
+        assertEquals(5000, registry.get("mysql.server.statements.executed").gauge().value(), 0);
+        assertEquals(100, registry.get("mysql.server.statements.closed").gauge().value(), 0);
+        assertEquals(20, registry.get("mysql.server.statements.open").gauge().value(), 0);
+        verify(statement).executeQuery(MySqlStatementMetrics.QUERY);
+
+        ReflectionTestUtils.setField(metrics, "cacheMs", 0L);
+        registry.get("mysql.server.statements.prepared").gauge().value();
+        verify(statement, times(2)).executeQuery(MySqlStatementMetrics.QUERY);
+    }
+
+    @Test
+    public void failedReadIsNaNAndIsNotRetriedByEveryGauge() throws SQLException {
+        when(statement.executeQuery(anyString())).thenThrow(new SQLException("Access denied"));
+
+        assertTrue(Double.isNaN(registry.get("mysql.server.statements.prepared").gauge().value()));
+        assertTrue(Double.isNaN(registry.get("mysql.server.statements.open").gauge().value()));
+        verify(statement).executeQuery(anyString());
+    }
+
+    /**
+     * rows of SHOW GLOBAL STATUS, with names in the case of MySQL 5.7
+     */
+    private static ResultSet status() throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true, true, true, true, false);
+        when(rs.getString(1)).thenReturn("Com_stmt_prepare", "Com_stmt_execute", "Com_stmt_close", "Prepared_stmt_count");
+        when(rs.getDouble(2)).thenReturn(120.0, 5000.0, 100.0, 20.0);
+        return rs;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.booksmanager.config;
+
+import com.example.booksmanager.service.CategoryService;
+import com.example.booksmanager.service.CoalescedReads;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * two embedded H2 databases stand in for primary and replica;
+ * each contains a marker row naming itself, the replica has the schema of the primary but no rows
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "booksmanager.datasource.replica.jdbc-url=jdbc:h2:mem:booksmanager_replica;DB_CLOSE_DELAY=-1",
+        "booksmanager.datasource.replica.username=sa",
+        "booksmanager.warmup.enabled=false",
+        "booksmanager.rate-limit.enabled=false",
+        "booksmanager.concurrency-limit.enabled=false"
+})
+@AutoConfigureMockMvc
+public class ReplicationRoutingTests {
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private CategoryService categoryService;
+    @Autowired
+    private CoalescedReads coalescedReads;
+
+    private DataSource primary;
+    private DataSource replica;
+
+    @Before
+    public void createMarkers() {
+        DataSource target = dataSource;
+        while (target instanceof DelegatingDataSource) {
+            target = ((DelegatingDataSource) target).getTargetDataSource();
+        }
+        ReplicationRoutingDataSource routing = (ReplicationRoutingDataSource) target;
+        primary = routing.getTarget(ReplicationRoutingDataSource.Route.PRIMARY);
+        replica = routing.getTarget(ReplicationRoutingDataSource.Route.REPLICA);
+        copySchema(primary, replica);
+        createMarker(primary, "primary");
+        createMarker(replica, "replica");
+    }
+
+    @After
+    public void clearContext() {
+        ReplicationContext.clear();
+    }
+
+    @Test
+    public void readOnlyTransactionGoesToReplica() {
+        assertEquals("replica", markerIn(true));
+    }
+
+    @Test
+    public void writeTransactionGoesToPrimary() {
+        assertEquals("primary", markerIn(false));
+        assertTrue(ReplicationContext.hasWritten());
+    }
+
+    @Test
+    public void readYourWritesCookieForcesPrimary() throws Exception {
+        ReadYourWritesInterceptor interceptor = new ReadYourWritesInterceptor(5000);
+
+        //request that writes gets the cookie
+        MockHttpServletRequest writeRequest = new MockHttpServletRequest("POST", "/book/create");
+        MockHttpServletResponse writeResponse = new MockHttpServletResponse();
+        interceptor.preHandle(writeRequest, writeResponse, null);
+        markerIn(false);
+        interceptor.postHandle(writeRequest, writeResponse, null, null);
+        Cookie cookie = writeResponse.getCookie(ReadYourWritesInterceptor.COOKIE_NAME);
+        assertNotNull(cookie);
+        interceptor.afterCompletion(writeRequest, writeResponse, null, null);
+
+        //the redirect that follows reads from the primary
+        MockHttpServletRequest redirectRequest = new MockHttpServletRequest("GET", "/book/1");
+        redirectRequest.setCookies(cookie);
+        interceptor.preHandle(redirectRequest, new MockHttpServletResponse(), null);
+        assertEquals("primary", markerIn(true));
+        interceptor.afterCompletion(redirectRequest, new MockHttpServletResponse(), null, null);
+
+        //without the cookie it is the replica again
+        assertEquals("replica", markerIn(true));
+    }
+
+    /**
+     * the lookups that can be shared (Propagation.SUPPORTS) read from the replica whether they are shared or not
+     */
+    @Test
+    public void lookupGoesToReplicaWithAndWithoutSingleFlight() {
+        new JdbcTemplate(replica).update("INSERT INTO categories (category_id, created_at, updated_at, name, book_count, version)"
+                + " VALUES (1000, NOW(), NOW(), 'Replica Category', 0, 0)");
+        assertEquals("Replica Category", categoryService.findById(1000L).getName());
+
+        ReflectionTestUtils.setField(coalescedReads, "enabled", false);
+        try {
+            assertEquals("Replica Category", categoryService.findById(1000L).getName());
+        } finally {
+            ReflectionTestUtils.setField(coalescedReads, "enabled", true);
+        }
+    }
+
+    /**
+     * under open-in-view the request keeps one EntityManager: the read-only duplicate check must not
+     * leave the replica connection behind for the create that follows
+     */
+    @Test
+    public void validateThenCreateWritesToPrimary() throws Exception {
+        MvcResult result = mockMvc.perform(post("/category/create").param("name", "Routing Test Category"))
+                .andReturn();
+
+        assertEquals(302, result.getResponse().getStatus());
+        assertEquals(1, categoriesNamed(primary, "Routing Test Category"));
+        assertEquals(0, categoriesNamed(replica, "Routing Test Category"));
+        assertNotNull(result.getResponse().getCookie(ReadYourWritesInterceptor.COOKIE_NAME));
+    }
+
+    private int categoriesNamed(DataSource target, String name) {
+        return new JdbcTemplate(target).queryForObject("SELECT COUNT(*) FROM categories WHERE name = ?",
+                Integer.class, name);
+    }
+
+    private void copySchema(DataSource from, DataSource to) {
+        JdbcTemplate replicaJdbc = new JdbcTemplate(to);
+        replicaJdbc.execute("DROP ALL OBJECTS");
+        new JdbcTemplate(from).queryForList("SCRIPT NODATA", String.class).stream()
+                .filter(statement -> !statement.startsWith("CREATE USER"))
+                .forEach(replicaJdbc::execute);
+    }
+
+    private String markerIn(boolean readOnly) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(readOnly);
+        return tx.execute(status -> new JdbcTemplate(dataSource)
+                .queryForObject("SELECT name FROM routing_marker", String.class));
+    }
+
+    private void createMarker(DataSource target, String name) {
+        JdbcTemplate jdbc = new JdbcTemplate(target);
+        jdbc.execute("DROP TABLE IF EXISTS routing_marker");
+        jdbc.execute("CREATE TABLE routing_marker (name VARCHAR(16))");
+        jdbc.update("INSERT INTO routing_marker (name) VALUES (?)", name);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.booksmanager.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * proxies of SlowQueryDataSource over an embedded database: identity of their own, timing of the statements
+ */
+public class SlowQueryDataSourceTests {
+
+    private EmbeddedDatabase database;
+    private SlowQueryLog slowQueryLog;
+    private SlowQueryDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        slowQueryLog = mock(SlowQueryLog.class);
+        dataSource = new SlowQueryDataSource(database, slowQueryLog);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void proxiesAreEqualOnlyToThemselves() throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Connection other = dataSource.getConnection()) {
+            Connection target = connection.unwrap(Connection.class);
+            assertEquals(connection, connection);
+            assertNotEquals(connection, target);
+            assertNotEquals(connection, other);
+            assertEquals(System.identityHashCode(connection), connection.hashCode());
+            assertTrue(connection.toString().startsWith("SlowQuery["));
+
+            Set<Object> open = new HashSet<>();
+            open.add(connection);
+            open.add(other);
+            assertTrue(open.contains(connection));
+            assertFalse(open.contains(target));
+
+            PreparedStatement statement = connection.prepareStatement("SELECT 1");
+            assertEquals(statement, statement);
+            assertNotEquals(statement, connection.prepareStatement("SELECT 1"));
+            assertEquals(System.identityHashCode(statement), statement.hashCode());
+            assertTrue(statement.toString().startsWith("SlowQuery["));
+        }
+    }
+
+    @Test
+    public void slowStatementsAreRecordedWithTheirParameterTypes() throws Exception {
+        when(slowQueryLog.isSlow(anyLong())).thenReturn(true);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT ? , ?")) {
+            statement.setLong(1, 42L);
+            statement.setNull(2, Types.VARCHAR);
+            try (ResultSet rs = statement.executeQuery()) {
+                assertTrue(rs.next());
+            }
+            try (Statement plain = connection.createStatement()) {
+                plain.execute("SELECT 2");
+            }
+        }
+        verify(slowQueryLog).record(eq("SELECT ? , ?"), eq("[Long, null]"), anyLong());
+        verify(slowQueryLog).record(eq("SELECT 2"), eq("[]"), anyLong());
+    }
+}
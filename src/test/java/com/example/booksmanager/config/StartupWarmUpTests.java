@@ -0,0 +1,112 @@
+package com.example.booksmanager.config;
+
+import com.example.booksmanager.service.AuthorService;
+import com.example.booksmanager.service.CategoryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * readiness of StartupWarmUp when filling the caches fails, without a web server (no pages requested)
+ */
+public class StartupWarmUpTests {
+
+    private CategoryService categoryService;
+    private AuthorService authorService;
+    private StartupWarmUp warmUp;
+
+    @Before
+    public void setUp() {
+        categoryService = mock(CategoryService.class);
+        authorService = mock(AuthorService.class);
+        warmUp = new StartupWarmUp();
+        ReflectionTestUtils.setField(warmUp, "categoryService", categoryService);
+        ReflectionTestUtils.setField(warmUp, "authorService", authorService);
+        ReflectionTestUtils.setField(warmUp, "environment", mock(Environment.class));
+        ReflectionTestUtils.setField(warmUp, "timeoutMs", 60_000L);
+        ReflectionTestUtils.setField(warmUp, "retryIntervalMs", 10L);
+    }
+
+    @After
+    public void tearDown() {
+        warmUp.stop();
+    }
+
+    @Test
+    public void readyOnceTheCachesAreFilled() throws InterruptedException {
+        when(categoryService.getAll()).thenReturn(Collections.emptySet());
+        when(authorService.getAll()).thenReturn(Collections.emptySet());
+        warmUp.start();
+        Health health = awaitStatus(Status.UP);
+        assertEquals(2, health.getDetails().get("succeeded"));
+        assertEquals(Collections.emptyList(), health.getDetails().get("failedSteps"));
+    }
+
+    @Test
+    public void failingCriticalStepKeepsTheNodeOutUntilItSucceeds() throws InterruptedException {
+        CountDownLatch databaseBack = new CountDownLatch(1);
+        when(categoryService.getAll()).thenAnswer(invocation -> {
+            if (databaseBack.getCount() > 0) {
+                throw new DataAccessResourceFailureException("database down");
+            }
+            return Collections.emptySet();
+        });
+        when(authorService.getAll()).thenReturn(Collections.emptySet());
+        warmUp.start();
+
+        Health waiting = awaitDetail("waitingFor");
+        assertEquals(Status.OUT_OF_SERVICE, waiting.getStatus());
+        assertEquals("allCategories", waiting.getDetails().get("waitingFor"));
+        assertEquals(Collections.singletonList("allCategories"), waiting.getDetails().get("failedSteps"));
+        verify(authorService, never()).getAll();
+
+        databaseBack.countDown();
+        Health ready = awaitStatus(Status.UP);
+        assertFalse(ready.getDetails().containsKey("waitingFor"));
+        assertTrue((Integer) ready.getDetails().get("failed") > 0);
+        assertEquals(Collections.emptyList(), ready.getDetails().get("failedSteps"));
+        verify(authorService).getAll();
+    }
+
+    @Test
+    public void shutdownWhileWaitingLeavesTheNodeOut() throws InterruptedException {
+        when(categoryService.getAll()).thenThrow(new DataAccessResourceFailureException("database down"));
+        warmUp.start();
+        awaitDetail("waitingFor");
+        warmUp.stop();
+        Thread.sleep(50);
+        assertEquals(Status.OUT_OF_SERVICE, warmUp.health().getStatus());
+    }
+
+    private Health awaitStatus(Status status) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        Health health;
+        while (!(health = warmUp.health()).getStatus().equals(status)) {
+            assertTrue("no " + status + " within 10 s: " + health, System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+        return health;
+    }
+
+    private Health awaitDetail(String detail) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        Health health;
+        while (!(health = warmUp.health()).getDetails().containsKey(detail)) {
+            assertTrue("no " + detail + " within 10 s: " + health, System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+        return health;
+    }
+}
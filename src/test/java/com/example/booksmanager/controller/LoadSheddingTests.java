@@ -0,0 +1,116 @@
+package com.example.booksmanager.controller;
+
+import com.example.booksmanager.service.BrowseService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * 429 from the rate limit and 503 from the concurrency limit, with their Retry-After;
+ * each test sends from addresses of its own, so the buckets of the other tests don't count
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "booksmanager.warmup.enabled=false",
+        "booksmanager.rate-limit.heavy-read.capacity=3",
+        "booksmanager.rate-limit.heavy-read.per-second=0.01",
+        "booksmanager.rate-limit.heavy-read.deep-page=10",
+        "booksmanager.concurrency-limit.initial=1",
+        "booksmanager.concurrency-limit.min=1",
+        "booksmanager.concurrency-limit.max=1"
+})
+@AutoConfigureMockMvc
+public class LoadSheddingTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @SpyBean
+    private BrowseService browseService;
+
+    private ExecutorService executor;
+
+    @Before
+    public void startThread() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void stopThread() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void clientWithoutTokensGets429() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, status(from(get("/categories"), "10.0.0.1")));
+        }
+        MvcResult refused = mockMvc.perform(from(get("/categories"), "10.0.0.1")).andReturn();
+        assertEquals(429, refused.getResponse().getStatus());
+        //the next token comes in just under 100 s, rounded up
+        assertEquals("100", refused.getResponse().getHeader(HttpHeaders.RETRY_AFTER));
+
+        //another client has a bucket of its own
+        assertEquals(200, status(from(get("/categories"), "10.0.0.2")));
+    }
+
+    @Test
+    public void deepPagesCostMoreTokens() throws Exception {
+        //page 21: 1 + 20 / deep-page tokens, the whole bucket
+        assertEquals(200, status(from(get("/books").param("page", "21"), "10.0.0.3")));
+        assertEquals(429, status(from(get("/books"), "10.0.0.3")));
+    }
+
+    @Test
+    public void requestBeyondTheConcurrencyLimitGets503() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return invocation.callRealMethod();
+        }).when(browseService).browse(any(), any());
+
+        Future<Integer> slow = executor.submit(() -> status(from(get("/browse"), "10.0.0.4")));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        MvcResult refused = mockMvc.perform(from(get("/categories"), "10.0.0.5")).andReturn();
+        assertEquals(503, refused.getResponse().getStatus());
+        assertEquals("1", refused.getResponse().getHeader(HttpHeaders.RETRY_AFTER));
+
+        release.countDown();
+        assertEquals(Integer.valueOf(200), slow.get(10, TimeUnit.SECONDS));
+        assertEquals(200, status(from(get("/categories"), "10.0.0.5")));
+    }
+
+    private int status(MockHttpServletRequestBuilder request) throws Exception {
+        return mockMvc.perform(request).andReturn().getResponse().getStatus();
+    }
+
+    private static MockHttpServletRequestBuilder from(MockHttpServletRequestBuilder request, String address) {
+        return request.with(r -> {
+            r.setRemoteAddr(address);
+            return r;
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.booksmanager.controller;
+
+import com.example.booksmanager.support.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * parallel requests, each with a message of its own: no response may show the message of another one
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "booksmanager.warmup.enabled=false",
+        "booksmanager.rate-limit.enabled=false",
+        "booksmanager.concurrency-limit.enabled=false"
+})
+@AutoConfigureMockMvc
+public class MessageConcurrencyTests {
+
+    private static final int THREADS = 16;
+    private static final int REQUESTS = 200;
+    private static final Pattern NOTICE = Pattern.compile("notice-(\\d+)");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private ExecutorService executor;
+
+    @Before
+    public void startThreads() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void stopThreads() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void eachPageShowsItsOwnFlashedMessage() throws Exception {
+        inParallel(i -> {
+            MvcResult result = mockMvc.perform(get("/author/1000").flashAttr("message", Message.success("notice-" + i)))
+                    .andReturn();
+            assertEquals(200, result.getResponse().getStatus());
+            Matcher notices = NOTICE.matcher(result.getResponse().getContentAsString());
+            assertTrue("no message in response " + i, notices.find());
+            assertEquals(String.valueOf(i), notices.group(1));
+            assertFalse("more than one message in response " + i, notices.find());
+        });
+    }
+
+    @Test
+    public void eachWriteFlashesItsOwnOutcome() throws Exception {
+        inParallel(i -> {
+            boolean valid = i % 2 == 0;
+            MvcResult created = mockMvc.perform(post("/author/create")
+                    .param("firstName", valid ? "Parallel" : "")
+                    .param("lastName", "Writer " + i)
+                    .param("bio", "Author number " + i + " of the parallel requests."))
+                    .andReturn();
+            Message message = (Message) created.getFlashMap().get("message");
+            assertNotNull("no message flashed for request " + i, message);
+            if (valid) {
+                assertEquals(AuthorController.NEW_AUTHOR_SUCCESS, message.getSuccess());
+                assertNull(message.getError());
+            } else {
+                assertNotNull(message.getError());
+                assertNull(message.getSuccess());
+            }
+
+            String page = mockMvc.perform(get(created.getResponse().getRedirectedUrl()).flashAttrs(created.getFlashMap()))
+                    .andReturn().getResponse().getContentAsString();
+            assertEquals(valid, page.contains(AuthorController.NEW_AUTHOR_SUCCESS));
+            assertEquals(!valid, page.contains("alert-danger"));
+        });
+    }
+
+    private void inParallel(Request request) throws Exception {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            int n = i;
+            futures.add(executor.submit((Callable<Void>) () -> {
+                request.perform(n);
+                return null;
+            }));
+        }
+        for (Future<Void> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    private interface Request {
+        void perform(int i) throws Exception;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.booksmanager.domain;
+
+import org.hibernate.type.descriptor.java.JavaTypeDescriptor;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * values of CompressedText and CompressedTextType in both directions
+ */
+public class CompressedTextTests {
+
+    private static final String LONG = String.join(" ", Collections.nCopies(40,
+            "Harry Potter and the Philosopher's Stone is a fantasy novel written by J. K. Rowling."));
+
+    @Test
+    public void nullAndEmptyStayAsTheyAre() {
+        assertNull(CompressedText.encode(null));
+        assertNull(CompressedText.decode(null));
+        assertEquals("", CompressedText.encode(""));
+        assertEquals("", CompressedText.decode(""));
+    }
+
+    @Test
+    public void shortTextIsStoredPlain() {
+        String text = "A short bio, with ümlauts.";
+        assertEquals(text, CompressedText.encode(text));
+        assertEquals(text, CompressedText.decode(text));
+        String justBelow = String.join("", Collections.nCopies(CompressedText.MIN_LENGTH - 1, "x"));
+        assertEquals(justBelow, CompressedText.encode(justBelow));
+    }
+
+    @Test
+    public void longTextIsStoredCompressed() {
+        String column = CompressedText.encode(LONG);
+        assertTrue(CompressedText.isEncoded(column));
+        assertTrue(column.length() < LONG.length() / 4);
+        assertEquals(LONG, CompressedText.decode(column));
+
+        String multiByte = String.join("", Collections.nCopies(100, "Grüße aus Köln, 東京. "));
+        assertEquals(multiByte, CompressedText.decode(CompressedText.encode(multiByte)));
+    }
+
+    @Test
+    public void textThatDoesntGetShorterIsStoredPlain() {
+        StringBuilder random = new StringBuilder();
+        Random rnd = new Random(42);
+        while (random.length() < 400) {
+            random.append((char) ('!' + rnd.nextInt(90)));
+        }
+        String text = random.toString();
+        assertEquals(text, CompressedText.encode(text));
+    }
+
+    @Test
+    public void plainTextStartingWithThePrefixIsTellable() {
+        //written now: compressed even though short, so decode gives it back
+        String written = CompressedText.PREFIX + "abc";
+        assertTrue(CompressedText.isEncoded(CompressedText.encode(written)));
+        assertNotEquals(written, CompressedText.encode(written));
+        assertEquals(written, CompressedText.decode(CompressedText.encode(written)));
+
+        //stored before the encoding: doesn't decode, read as it is
+        assertEquals(written, CompressedText.decode(written));
+        String notBase64 = CompressedText.PREFIX + "not base64!";
+        assertEquals(notBase64, CompressedText.decode(notBase64));
+        assertEquals(CompressedText.PREFIX, CompressedText.decode(CompressedText.PREFIX));
+        //a prefix of a compressed value, i.e. a truncated stream
+        String compressed = CompressedText.encode(LONG);
+        String truncated = compressed.substring(0, compressed.length() / 2 / 4 * 4);
+        assertEquals(truncated, CompressedText.decode(truncated));
+    }
+
+    @Test
+    public void typeBindsCompressedAndReadsPlain() {
+        JavaTypeDescriptor<String> descriptor = new CompressedTextType().getJavaTypeDescriptor();
+        String bound = descriptor.unwrap(LONG, String.class, null);
+        assertTrue(CompressedText.isEncoded(bound));
+        assertEquals(LONG, descriptor.wrap(bound, null));
+        assertEquals("short", descriptor.unwrap("short", String.class, null));
+        assertEquals("legacy", descriptor.wrap("legacy", null));
+        assertNull(descriptor.unwrap(null, String.class, null));
+        assertNull(descriptor.wrap(null, null));
+    }
+}
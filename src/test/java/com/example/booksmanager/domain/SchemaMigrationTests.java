@@ -0,0 +1,171 @@
+package com.example.booksmanager.domain;
+
+import org.flywaydb.core.Flyway;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.hibernate.tool.schema.TargetType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * migrations in db/migration applied as the prod profile applies them, to H2 databases in MySQL mode
+ */
+public class SchemaMigrationTests {
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("SET MODE MySQL");
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void emptyDatabaseIsMigratedToTheLatestVersion() {
+        int applied = migrate();
+        assertEquals(countMigrations(), applied);
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM change_events", Integer.class));
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM SPRING_SESSION", Integer.class));
+        assertEquals(0, migrate());
+    }
+
+    @Test
+    public void databaseOfTheFirstReleaseIsBaselinedAndMigrated() throws SQLException {
+        //tables created by ddl-auto=create of the first release, with rows but without a history table
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/migration/V1__baseline.sql"));
+        }
+        jdbcTemplate.update("INSERT INTO books (book_id, created_at, updated_at, description, title, published)"
+                + " VALUES (1, NOW(), NOW(), 'Desert planet', 'Dune', '08/1965')");
+        jdbcTemplate.update("INSERT INTO authors (author_id, created_at, updated_at, bio, first_name, last_name)"
+                + " VALUES (10, NOW(), NOW(), 'Writer', 'Frank', 'Herbert')");
+        jdbcTemplate.update("INSERT INTO categories (category_id, created_at, updated_at, name) VALUES (20, NOW(), NOW(), 'Classics')");
+        jdbcTemplate.update("INSERT INTO books_authors VALUES (1, 10)");
+        jdbcTemplate.update("INSERT INTO books_categories VALUES (1, 20)");
+
+        assertEquals(countMigrations() - 1, migrate());
+        assertEquals("Dune", jdbcTemplate.queryForObject("SELECT title FROM books WHERE book_id = 1", String.class));
+        assertEquals(Long.valueOf(0), jdbcTemplate.queryForObject("SELECT version FROM books WHERE book_id = 1", Long.class));
+        //V2 counts the existing join rows
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("SELECT book_count FROM authors", Integer.class));
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("SELECT book_count FROM categories", Integer.class));
+        //summary is filled by TextCompressionBackfill on startup
+        assertNull(jdbcTemplate.queryForObject("SELECT summary FROM books WHERE book_id = 1", String.class));
+    }
+
+    @Test
+    public void migratedTablesHaveTheColumnsAndIndexesOfTheEntities() {
+        migrate();
+        //the schema ddl-auto=create builds from the entities, for comparison
+        EmbeddedDatabase mapped = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        try {
+            createMappedSchema(mapped);
+            Map<String, Set<String>> expected = columns(new JdbcTemplate(mapped));
+            Map<String, Set<String>> migrated = columns(jdbcTemplate);
+            migrated.keySet().retainAll(expected.keySet());
+            assertEquals(expected, migrated);
+            //the list sorts and the outbox relay depend on them, Hibernate's validate doesn't check them
+            assertEquals(indexes(new JdbcTemplate(mapped)), indexes(jdbcTemplate));
+        } finally {
+            mapped.shutdown();
+        }
+    }
+
+    /**
+     * @return number of migrations applied
+     */
+    private int migrate() {
+        //settings of application-prod.properties
+        return Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load()
+                .migrate();
+    }
+
+    private int countMigrations() {
+        return Flyway.configure().dataSource(dataSource).load().info().all().length;
+    }
+
+    private static void createMappedSchema(DataSource dataSource) {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.DATASOURCE, dataSource)
+                .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+                .applySetting(AvailableSettings.PHYSICAL_NAMING_STRATEGY, SpringPhysicalNamingStrategy.class.getName())
+                .applySetting(AvailableSettings.IMPLICIT_NAMING_STRATEGY, SpringImplicitNamingStrategy.class.getName())
+                .build();
+        try {
+            new SchemaExport().create(EnumSet.of(TargetType.DATABASE), new MetadataSources(registry)
+                    .addAnnotatedClass(Book.class)
+                    .addAnnotatedClass(Author.class)
+                    .addAnnotatedClass(Category.class)
+                    .addAnnotatedClass(ChangeEvent.class)
+                    .buildMetadata());
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    /**
+     * @return "column" or "column NOT NULL" by table
+     */
+    private static Map<String, Set<String>> columns(JdbcTemplate jdbcTemplate) {
+        Map<String, Set<String>> columns = new TreeMap<>();
+        //names are lower case in MySQL mode
+        jdbcTemplate.query("SELECT UPPER(table_name), UPPER(column_name), is_nullable FROM information_schema.columns"
+                + " WHERE UPPER(table_schema) = 'PUBLIC'", rs -> {
+            columns.computeIfAbsent(rs.getString(1), table -> new TreeSet<>())
+                    .add(rs.getString(2) + ("NO".equals(rs.getString(3)) ? " NOT NULL" : ""));
+        });
+        return columns;
+    }
+
+    /**
+     * @return table followed by the columns in index order, by name of the idx_ indexes
+     */
+    private static Map<String, List<String>> indexes(JdbcTemplate jdbcTemplate) {
+        Map<String, List<String>> indexes = new TreeMap<>();
+        jdbcTemplate.query("SELECT UPPER(index_name), UPPER(table_name), UPPER(column_name) FROM information_schema.indexes"
+                + " WHERE UPPER(index_name) LIKE 'IDX\\_%' ORDER BY index_name, ordinal_position", rs -> {
+            String table = rs.getString(2);
+            indexes.computeIfAbsent(rs.getString(1), name -> new ArrayList<>(Collections.singletonList(table)))
+                    .add(rs.getString(3));
+        });
+        return indexes;
+    }
+}
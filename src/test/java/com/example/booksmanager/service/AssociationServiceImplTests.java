@@ -0,0 +1,176 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.Author;
+import com.example.booksmanager.domain.Category;
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.dto.Association;
+import com.example.booksmanager.repository.AuthorRepository;
+import com.example.booksmanager.repository.CategoryRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * co-authors and overlapping categories on the CatalogGraph of an embedded database, before and after
+ * batches of changes; names come from repositories that know every id
+ * (author 10 wrote books 1, 2 and 3, with 11 on 1 and 2 and with 12 on 3; 13 wrote 4 alone)
+ */
+public class AssociationServiceImplTests {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CatalogGraph graph;
+    private AssociationServiceImpl associationService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE books (book_id BIGINT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE authors (author_id BIGINT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE categories (category_id BIGINT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE books_authors (book_id BIGINT, author_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE books_categories (book_id BIGINT, category_id BIGINT)");
+        jdbcTemplate.update("INSERT INTO books VALUES (1), (2), (3), (4), (5)");
+        jdbcTemplate.update("INSERT INTO authors VALUES (10), (11), (12), (13)");
+        jdbcTemplate.update("INSERT INTO categories VALUES (20), (21), (22)");
+        jdbcTemplate.update("INSERT INTO books_authors VALUES (1, 10), (1, 11), (2, 10), (2, 11), (3, 10), (3, 12),"
+                + " (4, 13), (5, 12)");
+        jdbcTemplate.update("INSERT INTO books_categories VALUES (1, 20), (1, 21), (2, 20), (3, 21), (3, 22), (4, 22),"
+                + " (5, 20), (5, 21)");
+
+        graph = new CatalogGraph();
+        ReflectionTestUtils.setField(graph, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(graph, "meterRegistry", mock(ObjectProvider.class));
+        graph.load();
+
+        AuthorRepository authorRepository = mock(AuthorRepository.class);
+        when(authorRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<Author> authors = new ArrayList<>();
+            for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+                Author author = new Author();
+                author.setId(id);
+                author.setFirstName("Author");
+                author.setLastName(String.valueOf(id));
+                authors.add(author);
+            }
+            return authors;
+        });
+        CategoryRepository categoryRepository = mock(CategoryRepository.class);
+        when(categoryRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<Category> categories = new ArrayList<>();
+            for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+                Category category = new Category();
+                category.setId(id);
+                category.setName("Category " + id);
+                categories.add(category);
+            }
+            return categories;
+        });
+        associationService = new AssociationServiceImpl();
+        ReflectionTestUtils.setField(associationService, "catalogGraph", graph);
+        ReflectionTestUtils.setField(associationService, "authorRepository", authorRepository);
+        ReflectionTestUtils.setField(associationService, "categoryRepository", categoryRepository);
+        //not serving: the names are read from the repositories
+        ReflectionTestUtils.setField(associationService, "catalogSnapshot", mock(CatalogSnapshot.class));
+        ReflectionTestUtils.setField(associationService, "limit", 10);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void associationsAreCountedByBooksInCommon() {
+        assertEquals(Arrays.asList("11 x2", "12 x1"), coAuthors(10));
+        assertEquals(Collections.singletonList("10 x2"), coAuthors(11));
+        assertEquals(Collections.emptyList(), coAuthors(13));
+        assertEquals(Collections.emptyList(), coAuthors(42));
+        assertEquals("Author 11", associationService.findCoAuthors(10L).get(0).getName());
+
+        //books of 21 are 1, 3 and 5: 20 through 1 and 5, 22 through 3
+        assertEquals(Arrays.asList("20 x2", "22 x1"), overlapping(21));
+        assertEquals("Category 20", associationService.findOverlappingCategories(21L).get(0).getName());
+    }
+
+    @Test
+    public void resultsAreCutAtTheLimit() {
+        ReflectionTestUtils.setField(associationService, "limit", 1);
+        assertEquals(Collections.singletonList("11 x2"), coAuthors(10));
+        assertEquals(Collections.singletonList("20 x2"), overlapping(21));
+    }
+
+    @Test
+    public void createdAndUpdatedBooksChangeTheCounts() {
+        //6 by 10 and 13, 4 now by 12 as well, 2 loses author 11 and gets category 22
+        jdbcTemplate.update("INSERT INTO books VALUES (6)");
+        jdbcTemplate.update("INSERT INTO books_authors VALUES (6, 10), (6, 13), (4, 12)");
+        jdbcTemplate.update("INSERT INTO books_categories VALUES (6, 22), (2, 22)");
+        jdbcTemplate.update("DELETE FROM books_authors WHERE book_id = 2 AND author_id = 11");
+        apply(book(6L, ChangeEvent.Operation.CREATED), book(4L, ChangeEvent.Operation.UPDATED),
+                book(2L, ChangeEvent.Operation.UPDATED));
+
+        //equal counts in id order
+        assertEquals(Arrays.asList("11 x1", "12 x1", "13 x1"), coAuthors(10));
+        assertEquals(Arrays.asList("10 x1", "12 x1"), coAuthors(13));
+        assertEquals(Arrays.asList("10 x1", "13 x1"), coAuthors(12));
+        assertEquals(Arrays.asList("20 x1", "21 x1"), overlapping(22));
+    }
+
+    @Test
+    public void deletedBooksAndAuthorsAreNoLongerReached() {
+        jdbcTemplate.update("DELETE FROM books_authors WHERE book_id = 1 OR author_id = 12");
+        jdbcTemplate.update("DELETE FROM books_categories WHERE book_id = 1");
+        jdbcTemplate.update("DELETE FROM books WHERE book_id = 1");
+        jdbcTemplate.update("DELETE FROM authors WHERE author_id = 12");
+        apply(book(1L, ChangeEvent.Operation.DELETED),
+                new ChangeEvent(ChangeEvent.EntityType.AUTHOR, 12L, ChangeEvent.Operation.DELETED));
+
+        assertEquals(Collections.singletonList("11 x1"), coAuthors(10));
+        assertEquals(Collections.emptyList(), coAuthors(12));
+        assertEquals(Collections.singletonList("21 x1"), overlapping(20));
+    }
+
+    private void apply(ChangeEvent... events) {
+        graph.onChanges(Arrays.asList(events));
+    }
+
+    private static ChangeEvent book(long bookId, ChangeEvent.Operation operation) {
+        return new ChangeEvent(ChangeEvent.EntityType.BOOK, bookId, operation);
+    }
+
+    private List<String> coAuthors(long authorId) {
+        return describe(associationService.findCoAuthors(authorId));
+    }
+
+    private List<String> overlapping(long categoryId) {
+        return describe(associationService.findOverlappingCategories(categoryId));
+    }
+
+    /**
+     * @return "id xcount" of each association, in order
+     */
+    private static List<String> describe(List<Association> associations) {
+        return associations.stream().map(association -> association.getId() + " x" + association.getCount())
+                .collect(Collectors.toList());
+    }
+}
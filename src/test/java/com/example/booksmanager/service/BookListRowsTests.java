@@ -0,0 +1,113 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.Author;
+import com.example.booksmanager.domain.Book;
+import com.example.booksmanager.dto.BookRow;
+import com.example.booksmanager.dto.EntityRef;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * rows of BookListRows after writes through the services; the relay is run by the test
+ * (books 1000 and 1001 are by author 1000, book 1004 is not)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "booksmanager.warmup.enabled=false",
+        "booksmanager.rate-limit.enabled=false",
+        "booksmanager.concurrency-limit.enabled=false",
+        "booksmanager.outbox.relay-interval=3600000"
+})
+public class BookListRowsTests {
+
+    @Autowired
+    private BookListRows bookListRows;
+    @Autowired
+    private BookService bookService;
+    @Autowired
+    private AuthorService authorService;
+    @Autowired
+    private ChangeEventRelay changeEventRelay;
+
+    private String originalTitle;
+    private String originalLastName;
+
+    @After
+    public void restore() {
+        if (originalTitle != null) {
+            Book book = bookService.findById(1000L);
+            book.setTitle(originalTitle);
+            bookService.update(1000L, book);
+        }
+        if (originalLastName != null) {
+            Author author = authorService.findById(1000L);
+            author.setLastName(originalLastName);
+            authorService.update(1000L, author);
+        }
+        changeEventRelay.relay();
+    }
+
+    @Test
+    public void updatedBookIsReadAgain() {
+        changeEventRelay.relay();
+        BookRow cached = bookListRows.row(1000L);
+        BookRow other = bookListRows.row(1004L);
+        assertSame(cached, bookListRows.row(1000L));
+
+        Book book = bookService.findById(1000L);
+        originalTitle = book.getTitle();
+        book.setTitle("Updated Title");
+        bookService.update(1000L, book);
+
+        //committed, not relayed yet: read from the database, the stored row is not served nor replaced
+        assertEquals("Updated Title", bookListRows.row(1000L).getTitle());
+        assertSame(cached, rows().get(1000L));
+
+        changeEventRelay.relay();
+        BookRow refreshed = bookListRows.row(1000L);
+        assertEquals("Updated Title", refreshed.getTitle());
+        assertSame(refreshed, bookListRows.row(1000L));
+        assertEquals(names(cached), names(refreshed));
+        //rows of the other books are kept
+        assertSame(other, bookListRows.row(1004L));
+    }
+
+    @Test
+    public void renamedAuthorClearsAllRows() {
+        changeEventRelay.relay();
+        bookListRows.rows(Arrays.asList(1000L, 1001L, 1004L));
+        assertTrue(rows().keySet().containsAll(Arrays.asList(1000L, 1001L, 1004L)));
+
+        Author author = authorService.findById(1000L);
+        originalLastName = author.getLastName();
+        author.setLastName("Renamed");
+        authorService.update(1000L, author);
+        changeEventRelay.relay();
+
+        assertTrue(rows().isEmpty());
+        String renamed = author.getFirstName() + " Renamed";
+        assertTrue(names(bookListRows.row(1000L)).contains(renamed));
+        assertTrue(names(bookListRows.row(1001L)).contains(renamed));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, BookRow> rows() {
+        return (Map<Long, BookRow>) ReflectionTestUtils.getField(bookListRows, "rows");
+    }
+
+    private static List<String> names(BookRow row) {
+        return row.getAuthors().stream().map(EntityRef::getName).collect(Collectors.toList());
+    }
+}
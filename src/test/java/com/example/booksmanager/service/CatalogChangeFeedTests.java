@@ -0,0 +1,153 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.dto.ChangeFeedEvent;
+import com.example.booksmanager.exception.TooManySubscribersException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * buffers of CatalogChangeFeed filled by onChanges and emptied by flush, into sinks that record what they get;
+ * the flusher thread is not started
+ */
+public class CatalogChangeFeedTests {
+
+    private CatalogChangeFeed feed;
+
+    @Before
+    public void setUp() {
+        feed = new CatalogChangeFeed();
+        ReflectionTestUtils.setField(feed, "maxSubscribers", 2);
+        ReflectionTestUtils.setField(feed, "bufferSize", 3);
+        ReflectionTestUtils.setField(feed, "heartbeatIntervalMs", 60_000L);
+    }
+
+    @Test
+    public void changesOfARowAreCoalescedPerSubscriber() {
+        RecordingSink books = new RecordingSink();
+        RecordingSink all = new RecordingSink();
+        feed.subscribe(EnumSet.of(ChangeEvent.EntityType.BOOK), books);
+        feed.subscribe(EnumSet.allOf(ChangeEvent.EntityType.class), all);
+
+        feed.onChanges(Arrays.asList(book(1L, ChangeEvent.Operation.CREATED), book(2L, ChangeEvent.Operation.UPDATED),
+                new ChangeEvent(ChangeEvent.EntityType.AUTHOR, 10L, ChangeEvent.Operation.UPDATED)));
+        feed.onChanges(Arrays.asList(book(1L, ChangeEvent.Operation.UPDATED), book(2L, ChangeEvent.Operation.DELETED)));
+        feed.flush();
+
+        //created then updated is still a new row; in the order of the first change
+        assertEquals(Collections.singletonList("BOOK:1 CREATED, BOOK:2 DELETED"), books.calls);
+        assertEquals(Collections.singletonList("BOOK:1 CREATED, BOOK:2 DELETED, AUTHOR:10 UPDATED"), all.calls);
+
+        //nothing new, no heartbeat due
+        feed.flush();
+        assertEquals(1, books.calls.size());
+
+        //a row created and then deleted within one flush is sent as deleted
+        feed.onChanges(Arrays.asList(book(3L, ChangeEvent.Operation.CREATED), book(3L, ChangeEvent.Operation.DELETED)));
+        feed.flush();
+        assertEquals("BOOK:3 DELETED", books.calls.get(1));
+    }
+
+    @Test
+    public void subscriberThatFallsBehindIsToldToResync() {
+        RecordingSink behind = new RecordingSink();
+        feed.subscribe(EnumSet.allOf(ChangeEvent.EntityType.class), behind);
+
+        //four rows for a buffer of three; the changes after the overflow are not buffered either
+        feed.onChanges(Arrays.asList(book(1L, ChangeEvent.Operation.UPDATED), book(2L, ChangeEvent.Operation.UPDATED),
+                book(3L, ChangeEvent.Operation.UPDATED), book(4L, ChangeEvent.Operation.UPDATED)));
+        feed.onChanges(Collections.singletonList(book(5L, ChangeEvent.Operation.UPDATED)));
+        feed.flush();
+        assertEquals(Collections.singletonList("resync"), behind.calls);
+
+        //after the resync changes are buffered again
+        feed.onChanges(Collections.singletonList(book(6L, ChangeEvent.Operation.UPDATED)));
+        feed.flush();
+        assertEquals(Arrays.asList("resync", "BOOK:6 UPDATED"), behind.calls);
+    }
+
+    @Test
+    public void idleSubscriberGetsHeartbeatsAndAFailedOneIsDropped() {
+        ReflectionTestUtils.setField(feed, "heartbeatIntervalMs", 0L);
+        RecordingSink idle = new RecordingSink();
+        RecordingSink gone = new RecordingSink();
+        gone.fail = true;
+        feed.subscribe(EnumSet.allOf(ChangeEvent.EntityType.class), idle);
+        feed.subscribe(EnumSet.allOf(ChangeEvent.EntityType.class), gone);
+
+        feed.flush();
+        assertEquals(Collections.singletonList("heartbeat"), idle.calls);
+        assertEquals(Collections.singletonList("heartbeat"), gone.calls);
+
+        //the connection that failed no longer counts against the cap
+        feed.subscribe(EnumSet.allOf(ChangeEvent.EntityType.class), new RecordingSink());
+        feed.onChanges(Collections.singletonList(book(1L, ChangeEvent.Operation.UPDATED)));
+        feed.flush();
+        assertEquals(1, gone.calls.size());
+    }
+
+    @Test
+    public void subscribersBeyondTheCapAreRefusedWith503() {
+        CatalogChangeFeed.Subscription first = feed.subscribe(EnumSet.allOf(ChangeEvent.EntityType.class), new RecordingSink());
+        feed.subscribe(EnumSet.allOf(ChangeEvent.EntityType.class), new RecordingSink());
+        try {
+            feed.subscribe(EnumSet.allOf(ChangeEvent.EntityType.class), new RecordingSink());
+            fail("two subscribers are the cap");
+        } catch (TooManySubscribersException e) {
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+                    TooManySubscribersException.class.getAnnotation(ResponseStatus.class).value());
+        }
+
+        first.cancel();
+        assertNotNull(feed.subscribe(EnumSet.allOf(ChangeEvent.EntityType.class), new RecordingSink()));
+    }
+
+    private static ChangeEvent book(long bookId, ChangeEvent.Operation operation) {
+        return new ChangeEvent(ChangeEvent.EntityType.BOOK, bookId, operation);
+    }
+
+    /**
+     * records every call: the events of a send as "TYPE:id OPERATION, ...", otherwise the name of the method
+     */
+    private static class RecordingSink implements CatalogChangeFeed.Sink {
+
+        private final List<String> calls = new ArrayList<>();
+        private boolean fail;
+
+        @Override
+        public void send(List<ChangeFeedEvent> events) throws IOException {
+            record(events.stream().map(event -> event.getType() + ":" + event.getId() + " " + event.getOperation())
+                    .collect(Collectors.joining(", ")));
+        }
+
+        @Override
+        public void resync() throws IOException {
+            record("resync");
+        }
+
+        @Override
+        public void heartbeat() throws IOException {
+            record("heartbeat");
+        }
+
+        private void record(String call) throws IOException {
+            calls.add(call);
+            if (fail) {
+                throw new IOException("connection closed");
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntToLongFunction;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * arrays of CatalogGraph as loaded, as changed by batches of the relay and as restored from a snapshot file,
+ * against an embedded database
+ */
+public class CatalogGraphTests {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CatalogGraph graph;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE books (book_id BIGINT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE authors (author_id BIGINT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE categories (category_id BIGINT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE books_authors (book_id BIGINT, author_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE books_categories (book_id BIGINT, category_id BIGINT)");
+        jdbcTemplate.update("INSERT INTO books VALUES (1), (2), (3), (4), (5)");
+        jdbcTemplate.update("INSERT INTO authors VALUES (10), (11), (12), (13)");
+        jdbcTemplate.update("INSERT INTO categories VALUES (20), (21), (22)");
+        jdbcTemplate.update("INSERT INTO books_authors VALUES (1, 10), (1, 11), (2, 10), (2, 11), (3, 10), (3, 12),"
+                + " (4, 13), (5, 12)");
+        jdbcTemplate.update("INSERT INTO books_categories VALUES (1, 20), (1, 21), (2, 20), (3, 21), (3, 22), (4, 22),"
+                + " (5, 20), (5, 21)");
+        graph = graph();
+        graph.load();
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void loadedGraphHoldsEveryRelationInBothDirections() {
+        CatalogGraph.Snapshot snapshot = graph.snapshot();
+        assertEquals(5, snapshot.books());
+        assertEquals(4, snapshot.authors());
+        assertEquals(3, snapshot.categories());
+        //dense indexes in id order
+        assertEquals(2, snapshot.book(3));
+        assertEquals(3L, snapshot.bookId(2));
+        assertEquals(-1, snapshot.book(6));
+        assertEquals(-1, snapshot.author(9));
+
+        assertEquals(Arrays.asList(10L, 11L), authorsOf(snapshot, 1));
+        assertEquals(Arrays.asList(1L, 2L, 3L), booksOfAuthor(snapshot, 10));
+        assertEquals(Arrays.asList(21L, 22L), categoriesOf(snapshot, 3));
+        assertEquals(Arrays.asList(1L, 2L, 5L), booksOfCategory(snapshot, 20));
+        assertEquals(3, snapshot.booksOfAuthor().degree(snapshot.author(10)));
+        assertEquals(1, snapshot.booksOfAuthor().degree(snapshot.author(13)));
+        //offsets of the four directions: 5 + 4 + 5 + 3 nodes plus one each, 8 edges each way per relation
+        assertEquals(8L * (5 + 4 + 3) + 4L * (6 + 8 + 5 + 8 + 6 + 8 + 4 + 8), snapshot.bytes());
+    }
+
+    @Test
+    public void createdAndUpdatedBooksAreReloaded() {
+        CatalogGraph.Snapshot before = graph.snapshot();
+        jdbcTemplate.update("INSERT INTO books VALUES (6)");
+        jdbcTemplate.update("INSERT INTO books_authors VALUES (6, 13), (6, 10)");
+        jdbcTemplate.update("INSERT INTO books_categories VALUES (6, 22)");
+        jdbcTemplate.update("DELETE FROM books_authors WHERE book_id = 2 AND author_id = 11");
+        jdbcTemplate.update("UPDATE books_categories SET category_id = 22 WHERE book_id = 5 AND category_id = 20");
+        apply(book(6L, ChangeEvent.Operation.CREATED), book(2L, ChangeEvent.Operation.UPDATED),
+                book(5L, ChangeEvent.Operation.UPDATED));
+
+        assertGraphOfAFreshLoad();
+        assertEquals(Arrays.asList(10L, 13L), authorsOf(graph.snapshot(), 6));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 6L), booksOfAuthor(graph.snapshot(), 10));
+        assertEquals(Arrays.asList(3L, 4L, 5L, 6L), booksOfCategory(graph.snapshot(), 22));
+        //readers of the previous snapshot keep it
+        assertEquals(5, before.books());
+        assertEquals(Arrays.asList(10L, 11L), authorsOf(before, 2));
+    }
+
+    @Test
+    public void deletedBooksAuthorsAndCategoriesAreDropped() {
+        jdbcTemplate.update("DELETE FROM books_authors WHERE book_id = 1 OR author_id = 12");
+        jdbcTemplate.update("DELETE FROM books_categories WHERE book_id = 1 OR category_id = 21");
+        jdbcTemplate.update("DELETE FROM books WHERE book_id = 1");
+        jdbcTemplate.update("DELETE FROM authors WHERE author_id = 12");
+        jdbcTemplate.update("DELETE FROM categories WHERE category_id = 21");
+        apply(book(1L, ChangeEvent.Operation.DELETED),
+                new ChangeEvent(ChangeEvent.EntityType.AUTHOR, 12L, ChangeEvent.Operation.DELETED),
+                new ChangeEvent(ChangeEvent.EntityType.CATEGORY, 21L, ChangeEvent.Operation.DELETED));
+
+        assertGraphOfAFreshLoad();
+        CatalogGraph.Snapshot snapshot = graph.snapshot();
+        assertEquals(-1, snapshot.book(1));
+        assertEquals(-1, snapshot.author(12));
+        assertEquals(-1, snapshot.category(21));
+        //unchanged books lose the edges to the deleted author and category
+        assertEquals(Collections.singletonList(10L), authorsOf(snapshot, 3));
+        assertEquals(Collections.singletonList(22L), categoriesOf(snapshot, 3));
+        assertEquals(Arrays.asList(2L, 3L), booksOfAuthor(snapshot, 10));
+    }
+
+    @Test
+    public void restoredGraphIsServedUntilTheDatabaseIsLoaded() {
+        CatalogGraph restored = graph();
+        restored.restore(new long[]{1, 2}, new long[]{10}, new long[]{20, 21},
+                new long[]{1, 10, 2, 10}, new long[]{1, 21, 2, 20});
+        assertEquals(Arrays.asList(1L, 2L), booksOfAuthor(restored.snapshot(), 10));
+        assertEquals(Collections.singletonList(21L), categoriesOf(restored.snapshot(), 1));
+
+        restored.load();
+        assertEquals(describe(graph.snapshot()), describe(restored.snapshot()));
+        //a file read after the load doesn't replace the graph
+        restored.restore(new long[]{1}, new long[0], new long[0], new long[0], new long[0]);
+        assertEquals(5, restored.snapshot().books());
+    }
+
+    private void assertGraphOfAFreshLoad() {
+        CatalogGraph fresh = graph();
+        fresh.load();
+        assertEquals(describe(fresh.snapshot()), describe(graph.snapshot()));
+    }
+
+    private void apply(ChangeEvent... events) {
+        graph.onChanges(Arrays.asList(events));
+    }
+
+    @SuppressWarnings("unchecked")
+    private CatalogGraph graph() {
+        CatalogGraph catalogGraph = new CatalogGraph();
+        ReflectionTestUtils.setField(catalogGraph, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(catalogGraph, "meterRegistry", mock(ObjectProvider.class));
+        return catalogGraph;
+    }
+
+    private static ChangeEvent book(long bookId, ChangeEvent.Operation operation) {
+        return new ChangeEvent(ChangeEvent.EntityType.BOOK, bookId, operation);
+    }
+
+    /**
+     * @return neighbour ids of every node, by "book 1 authors" etc.
+     */
+    private static Map<String, List<Long>> describe(CatalogGraph.Snapshot snapshot) {
+        Map<String, List<Long>> nodes = new TreeMap<>();
+        for (int book = 0; book < snapshot.books(); book++) {
+            nodes.put("book " + snapshot.bookId(book) + " authors", authorsOf(snapshot, snapshot.bookId(book)));
+            nodes.put("book " + snapshot.bookId(book) + " categories", categoriesOf(snapshot, snapshot.bookId(book)));
+        }
+        for (int author = 0; author < snapshot.authors(); author++) {
+            nodes.put("author " + snapshot.authorId(author), booksOfAuthor(snapshot, snapshot.authorId(author)));
+        }
+        for (int category = 0; category < snapshot.categories(); category++) {
+            nodes.put("category " + snapshot.categoryId(category), booksOfCategory(snapshot, snapshot.categoryId(category)));
+        }
+        return nodes;
+    }
+
+    private static List<Long> authorsOf(CatalogGraph.Snapshot snapshot, long bookId) {
+        return ids(snapshot.authorsOfBook().neighbours(snapshot.book(bookId)), snapshot::authorId);
+    }
+
+    private static List<Long> categoriesOf(CatalogGraph.Snapshot snapshot, long bookId) {
+        return ids(snapshot.categoriesOfBook().neighbours(snapshot.book(bookId)), snapshot::categoryId);
+    }
+
+    private static List<Long> booksOfAuthor(CatalogGraph.Snapshot snapshot, long authorId) {
+        return ids(snapshot.booksOfAuthor().neighbours(snapshot.author(authorId)), snapshot::bookId);
+    }
+
+    private static List<Long> booksOfCategory(CatalogGraph.Snapshot snapshot, long categoryId) {
+        return ids(snapshot.booksOfCategory().neighbours(snapshot.category(categoryId)), snapshot::bookId);
+    }
+
+    /**
+     * @return ids of the nodes, sorted: the order of the edges within a node is not defined
+     */
+    private static List<Long> ids(int[] nodes, IntToLongFunction idOf) {
+        return Arrays.stream(nodes).mapToLong(idOf).sorted().boxed().collect(Collectors.toList());
+    }
+}
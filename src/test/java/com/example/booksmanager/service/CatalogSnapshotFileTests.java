@@ -0,0 +1,169 @@
+package com.example.booksmanager.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * snapshot written to a file and mapped again, against a small catalog in an embedded database
+ */
+public class CatalogSnapshotFileTests {
+
+    //longer than the write buffer of CatalogSnapshotFile, written to the channel directly
+    private static final String LONG_DESCRIPTION = String.join("", Collections.nCopies(10_000, "a long story. "));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE books (book_id BIGINT PRIMARY KEY, title VARCHAR(255), published VARCHAR(255),"
+                + " description CLOB, summary VARCHAR(1000))");
+        jdbcTemplate.execute("CREATE TABLE authors (author_id BIGINT PRIMARY KEY, full_name VARCHAR(255), bio CLOB)");
+        jdbcTemplate.execute("CREATE TABLE categories (category_id BIGINT PRIMARY KEY, name VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE books_authors (book_id BIGINT, author_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE books_categories (book_id BIGINT, category_id BIGINT)");
+        jdbcTemplate.update("INSERT INTO books VALUES (1, 'Dune', '1965', 'Desert planet', NULL),"
+                + " (2, 'Emma', '1815', ?, 'Matchmaking'), (3, 'Ulysses', NULL, NULL, NULL)", LONG_DESCRIPTION);
+        jdbcTemplate.update("INSERT INTO authors VALUES (10, 'Frank Herbert', NULL), (11, 'Jane Austen', 'Novelist')");
+        jdbcTemplate.update("INSERT INTO categories VALUES (20, 'Classics'), (21, 'Science Fiction')");
+        jdbcTemplate.update("INSERT INTO books_authors VALUES (1, 10), (2, 11)");
+        jdbcTemplate.update("INSERT INTO books_categories VALUES (1, 21), (1, 20), (2, 20)");
+        file = folder.getRoot().toPath().resolve("catalog.snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void writtenFileIsMappedWithTheSameRecordsAndLinks() throws IOException {
+        CatalogSnapshot snapshot = built();
+        snapshot.writeFile();
+
+        CatalogSnapshotFile.Contents contents = CatalogSnapshotFile.read(file);
+        assertNotNull(contents);
+        assertTrue(contents.image.buffer.isReadOnly());
+        assertArrayEquals(new long[]{1, 2, 3}, contents.image.books.ids);
+        assertArrayEquals(new long[]{10, 11}, contents.image.authors.ids);
+        assertArrayEquals(new long[]{20, 21}, contents.image.categories.ids);
+        assertEquals("Dune", contents.image.field(contents.image.books.offset(1), 0));
+        assertEquals(LONG_DESCRIPTION, contents.image.field(contents.image.books.offset(2), 2));
+        assertEquals("Matchmaking", contents.image.field(contents.image.books.offset(2), 3));
+        assertNull(contents.image.field(contents.image.books.offset(3), 1));
+        assertEquals("Novelist", contents.image.field(contents.image.authors.offset(11), 1));
+        assertEquals("Science Fiction", contents.image.field(contents.image.categories.offset(21), 0));
+        assertEquals(0, contents.image.garbage);
+        assertArrayEquals(new long[]{1, 10, 2, 11}, contents.bookAuthors);
+        assertEquals(3, contents.bookCategories.length / 2);
+        assertTrue(System.currentTimeMillis() - contents.writtenAt < 60_000);
+    }
+
+    @Test
+    public void fileOfAnotherVersionIsIgnored() throws IOException {
+        built().writeFile();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, CatalogSnapshotFile.VERSION + 1), 4);
+        }
+        assertNull(CatalogSnapshotFile.read(file));
+
+        CatalogSnapshot snapshot = snapshot(jdbcTemplate, graph(jdbcTemplate));
+        snapshot.open();
+        assertFalse(snapshot.isServing());
+    }
+
+    @Test
+    public void mappedFileIsServedWhileTheDatabaseIsDown() throws IOException {
+        built().writeFile();
+        JdbcTemplate down = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:down;IFEXISTS=TRUE", "sa", ""));
+        CatalogSnapshot snapshot = snapshot(down, graph(down));
+        snapshot.open();
+        assertTrue(snapshot.isServing());
+
+        snapshot.build();
+        //the scheduled write tries to rebuild as well
+        snapshot.writeFile();
+        assertTrue(snapshot.isServing());
+        CatalogSnapshot.BookView dune = snapshot.book(1);
+        assertEquals("Dune", dune.getTitle());
+        assertEquals("Desert planet", dune.getSummary());
+        assertEquals(Collections.singletonList("Frank Herbert"), dune.getAuthors().stream()
+                .map(CatalogSnapshot.AuthorView::getFullName).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("Science Fiction", "Classics"), dune.getCategories().stream()
+                .map(CatalogSnapshot.CategoryView::getName).collect(Collectors.toList()));
+        assertEquals(LONG_DESCRIPTION, snapshot.book(2).getDescription());
+        assertNull(snapshot.book(4));
+    }
+
+    @Test
+    public void mappedFileIsReplacedOnceTheDatabaseIsBack() throws IOException {
+        built().writeFile();
+        jdbcTemplate.update("UPDATE books SET title = 'Dune Messiah' WHERE book_id = 1");
+        CatalogGraph graph = graph(jdbcTemplate);
+        CatalogSnapshot snapshot = snapshot(jdbcTemplate, graph);
+        snapshot.open();
+        assertEquals("Dune", snapshot.book(1).getTitle());
+
+        graph.load();
+        snapshot.build();
+        assertEquals("Dune Messiah", snapshot.book(1).getTitle());
+        assertFalse(((CatalogSnapshot.Image) ReflectionTestUtils.getField(snapshot, "image")).buffer.isReadOnly());
+    }
+
+    private CatalogSnapshot built() {
+        CatalogGraph graph = graph(jdbcTemplate);
+        graph.load();
+        CatalogSnapshot snapshot = snapshot(jdbcTemplate, graph);
+        snapshot.open();
+        snapshot.build();
+        return snapshot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CatalogGraph graph(JdbcTemplate jdbcTemplate) {
+        CatalogGraph graph = new CatalogGraph();
+        ReflectionTestUtils.setField(graph, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(graph, "meterRegistry", mock(ObjectProvider.class));
+        return graph;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CatalogSnapshot snapshot(JdbcTemplate jdbcTemplate, CatalogGraph graph) {
+        CatalogSnapshot snapshot = new CatalogSnapshot();
+        ReflectionTestUtils.setField(snapshot, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(snapshot, "catalogGraph", graph);
+        ReflectionTestUtils.setField(snapshot, "meterRegistry", mock(ObjectProvider.class));
+        ReflectionTestUtils.setField(snapshot, "enabled", true);
+        ReflectionTestUtils.setField(snapshot, "initialCapacity", 1024);
+        ReflectionTestUtils.setField(snapshot, "file", file.toString());
+        return snapshot;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * merging of the id tables, changes applied to the image and compaction, against an embedded database
+ */
+public class CatalogSnapshotTests {
+
+    private static final String LONG_DESCRIPTION = String.join("", Collections.nCopies(1_000, "a long story. "));
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CatalogGraph graph;
+    private CatalogSnapshot snapshot;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE books (book_id BIGINT PRIMARY KEY, title VARCHAR(255), published VARCHAR(255),"
+                + " description CLOB, summary VARCHAR(1000))");
+        jdbcTemplate.execute("CREATE TABLE authors (author_id BIGINT PRIMARY KEY, full_name VARCHAR(255), bio CLOB)");
+        jdbcTemplate.execute("CREATE TABLE categories (category_id BIGINT PRIMARY KEY, name VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE books_authors (book_id BIGINT, author_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE books_categories (book_id BIGINT, category_id BIGINT)");
+        jdbcTemplate.update("INSERT INTO books VALUES (1, 'Dune', '1965', 'Desert planet', NULL),"
+                + " (2, 'Emma', '1815', ?, 'Matchmaking'), (3, 'Ulysses', NULL, NULL, NULL)", LONG_DESCRIPTION);
+        jdbcTemplate.update("INSERT INTO authors VALUES (10, 'Frank Herbert', NULL), (11, 'Jane Austen', 'Novelist')");
+        jdbcTemplate.update("INSERT INTO categories VALUES (20, 'Classics')");
+        jdbcTemplate.update("INSERT INTO books_authors VALUES (1, 10), (2, 11), (3, 10)");
+        jdbcTemplate.update("INSERT INTO books_categories VALUES (1, 20), (2, 20)");
+
+        graph = new CatalogGraph();
+        ReflectionTestUtils.setField(graph, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(graph, "meterRegistry", mock(ObjectProvider.class));
+        snapshot = new CatalogSnapshot();
+        ReflectionTestUtils.setField(snapshot, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(snapshot, "catalogGraph", graph);
+        ReflectionTestUtils.setField(snapshot, "meterRegistry", mock(ObjectProvider.class));
+        ReflectionTestUtils.setField(snapshot, "enabled", true);
+        //smaller than the catalog: the writer has to grow the buffer
+        ReflectionTestUtils.setField(snapshot, "initialCapacity", 1024);
+        ReflectionTestUtils.setField(snapshot, "file", "");
+        graph.load();
+        snapshot.build();
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void tableWithReplacesChangedIdsDropsDeletedAndAddsNew() {
+        CatalogSnapshot.Table table = new CatalogSnapshot.Table(new long[]{1, 3, 5, 7}, new int[]{10, 30, 50, 70});
+        //3 changed, 5 deleted, 4 and 9 new
+        CatalogSnapshot.Table loaded = new CatalogSnapshot.Table(new long[]{3, 4, 9}, new int[]{300, 400, 900});
+        CatalogSnapshot.Table merged = table.with(new HashSet<>(Arrays.asList(3L, 4L, 5L, 9L)), loaded);
+        assertArrayEquals(new long[]{1, 3, 4, 7, 9}, merged.ids);
+        assertArrayEquals(new int[]{10, 300, 400, 70, 900}, merged.offsets);
+        assertEquals(-1, merged.offset(5));
+        //the table of the current image is not touched
+        assertArrayEquals(new long[]{1, 3, 5, 7}, table.ids);
+
+        CatalogSnapshot.Table empty = new CatalogSnapshot.Table(new long[0], new int[0]);
+        assertSame(table, table.with(Collections.emptySet(), empty));
+        assertArrayEquals(new long[]{1, 7}, table.with(new HashSet<>(Arrays.asList(3L, 5L)), empty).ids);
+    }
+
+    @Test
+    public void changesAreReadBackFromTheImage() {
+        CatalogSnapshot.BookView before = snapshot.book(1);
+        jdbcTemplate.update("UPDATE books SET title = 'Dune Messiah' WHERE book_id = 1");
+        jdbcTemplate.update("DELETE FROM books_authors WHERE book_id = 3");
+        jdbcTemplate.update("DELETE FROM books WHERE book_id = 3");
+        jdbcTemplate.update("INSERT INTO books VALUES (4, 'Persuasion', '1817', NULL, NULL)");
+        jdbcTemplate.update("INSERT INTO books_authors VALUES (4, 11)");
+        jdbcTemplate.update("UPDATE authors SET full_name = 'Frank Patrick Herbert' WHERE author_id = 10");
+        apply(new ChangeEvent(ChangeEvent.EntityType.BOOK, 1L, ChangeEvent.Operation.UPDATED),
+                new ChangeEvent(ChangeEvent.EntityType.BOOK, 3L, ChangeEvent.Operation.DELETED),
+                new ChangeEvent(ChangeEvent.EntityType.BOOK, 4L, ChangeEvent.Operation.CREATED),
+                new ChangeEvent(ChangeEvent.EntityType.AUTHOR, 10L, ChangeEvent.Operation.UPDATED));
+
+        assertEquals("Dune Messiah", snapshot.book(1).getTitle());
+        assertEquals(Collections.singletonList("Frank Patrick Herbert"), authorNames(snapshot.book(1)));
+        assertNull(snapshot.book(3));
+        assertEquals("Persuasion", snapshot.book(4).getTitle());
+        assertEquals(Collections.singletonList("Jane Austen"), authorNames(snapshot.book(4)));
+        assertEquals("Emma", snapshot.book(2).getTitle());
+        assertEquals(LONG_DESCRIPTION, snapshot.book(2).getDescription());
+        assertEquals(Arrays.asList(2L, 4L), snapshot.booksOfAuthor(snapshot.author(11), PageRequest.of(0, 10))
+                .getContent().stream().map(CatalogSnapshot.BookView::getId).collect(Collectors.toList()));
+        //a view of the previous image keeps reading it
+        assertEquals("Dune", before.getTitle());
+    }
+
+    @Test
+    public void replacedRecordsAreCompactedOnceTheyAreHalfOfTheBuffer() {
+        CatalogSnapshot.Image built = image();
+        assertEquals(0, built.garbage);
+
+        jdbcTemplate.update("UPDATE books SET title = 'Emma.' WHERE book_id = 2");
+        apply(new ChangeEvent(ChangeEvent.EntityType.BOOK, 2L, ChangeEvent.Operation.UPDATED));
+        CatalogSnapshot.Image appended = image();
+        assertTrue(appended.garbage > 0);
+        assertTrue(appended.end > built.end);
+
+        jdbcTemplate.update("UPDATE books SET title = 'Emma' WHERE book_id = 2");
+        apply(new ChangeEvent(ChangeEvent.EntityType.BOOK, 2L, ChangeEvent.Operation.UPDATED));
+        CatalogSnapshot.Image compacted = image();
+        assertEquals(0, compacted.garbage);
+        assertEquals(built.end, compacted.end);
+        assertNotSame(appended.buffer, compacted.buffer);
+        assertEquals("Emma", snapshot.book(2).getTitle());
+        assertEquals(LONG_DESCRIPTION, snapshot.book(2).getDescription());
+        assertEquals("Dune", snapshot.book(1).getTitle());
+        assertEquals("Novelist", snapshot.author(11).getBio());
+    }
+
+    private void apply(ChangeEvent... events) {
+        List<ChangeEvent> batch = Arrays.asList(events);
+        graph.onChanges(batch);
+        snapshot.onChanges(batch);
+    }
+
+    private CatalogSnapshot.Image image() {
+        return (CatalogSnapshot.Image) ReflectionTestUtils.getField(snapshot, "image");
+    }
+
+    private static List<String> authorNames(CatalogSnapshot.BookView book) {
+        return book.getAuthors().stream().map(CatalogSnapshot.AuthorView::getFullName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import com.example.booksmanager.repository.ChangeEventRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * cluster mode of ChangeEventRelay: events that become visible out of id order and listeners that fail,
+ * against a mocked outbox
+ */
+public class ChangeEventRelayTests {
+
+    private static final long GAP_GRACE_MS = 50;
+
+    //committed events by id
+    private final TreeMap<Long, ChangeEvent> visible = new TreeMap<>();
+    private final List<List<Long>> batches = new ArrayList<>();
+    private final List<ChangeEventListener> listeners = new ArrayList<>();
+    private ChangeEventRepository repository;
+    private ChangeEventRelay relay;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        repository = mock(ChangeEventRepository.class);
+        when(repository.findMaxId()).thenAnswer(invocation -> visible.isEmpty() ? 0L : visible.lastKey());
+        when(repository.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenAnswer(invocation -> {
+            Pageable page = invocation.getArgument(1);
+            return visible.tailMap(invocation.getArgument(0), false).values().stream()
+                    .limit(page.getPageSize())
+                    .collect(Collectors.toList());
+        });
+        when(repository.findByIdBetweenOrderByIdAsc(anyLong(), anyLong())).thenAnswer(invocation ->
+                new ArrayList<>(visible.subMap(invocation.getArgument(0), true, invocation.getArgument(1), true).values()));
+
+        relay = new ChangeEventRelay(transactionManager);
+        ReflectionTestUtils.setField(relay, "changeEventRepository", repository);
+        listeners.add(events -> batches.add(ids(events)));
+        ReflectionTestUtils.setField(relay, "listeners", listeners);
+        ReflectionTestUtils.setField(relay, "meterRegistry", mock(ObjectProvider.class));
+        ReflectionTestUtils.setField(relay, "batchSize", 2);
+        ReflectionTestUtils.setField(relay, "cluster", true);
+        ReflectionTestUtils.setField(relay, "gapGraceMs", GAP_GRACE_MS);
+        ReflectionTestUtils.setField(relay, "listenerAttempts", 3);
+        ReflectionTestUtils.setField(relay, "listenerRetryMs", 0L);
+        ReflectionTestUtils.setField(relay, "listenerBacklog", 100);
+        commit(1);
+        assertEquals(0, relay.relay());
+        verifyZeroInteractions(repository);
+        relay.start();
+        assertEquals(0, relay.relay());
+    }
+
+    @Test
+    public void eventCommittedAfterAHigherOneIsDeliveredLate() {
+        commit(2);
+        commit(4);
+        commit(5);
+        assertEquals(3, relay.relay());
+        assertEquals(Arrays.asList(Arrays.asList(2L, 4L), Collections.singletonList(5L)), batches);
+
+        batches.clear();
+        commit(3);
+        commit(6);
+        assertEquals(2, relay.relay());
+        assertEquals(Collections.singletonList(Arrays.asList(3L, 6L)), batches);
+
+        //delivered once
+        batches.clear();
+        assertEquals(0, relay.relay());
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    public void gapThatNeverFillsIsGivenUpAfterTheGrace() throws InterruptedException {
+        //3 was rolled back
+        commit(2);
+        commit(4);
+        assertEquals(2, relay.relay());
+        assertEquals(0, relay.relay());
+
+        Thread.sleep(GAP_GRACE_MS + 10);
+        relay.relay();
+        //an insert committed later than that is not looked for anymore
+        commit(3);
+        commit(5);
+        batches.clear();
+        assertEquals(1, relay.relay());
+        assertEquals(Collections.singletonList(Collections.singletonList(5L)), batches);
+    }
+
+    @Test
+    public void failedListenerGetsItsBatchesAgainAloneAndInOrder() {
+        List<List<Long>> retried = new ArrayList<>();
+        boolean[] down = {true};
+        listeners.add(events -> {
+            if (down[0]) {
+                throw new IllegalStateException("listener down");
+            }
+            retried.add(ids(events));
+        });
+        commit(2);
+        commit(4);
+        assertEquals(2, relay.relay());
+        commit(3);
+        assertEquals(1, relay.relay());
+        //the other listener has carried on, each batch once
+        assertEquals(Arrays.asList(Arrays.asList(2L, 4L), Collections.singletonList(3L)), batches);
+        assertTrue(retried.isEmpty());
+
+        down[0] = false;
+        assertEquals(0, relay.relay());
+        assertEquals(Arrays.asList(Arrays.asList(2L, 4L), Collections.singletonList(3L)), retried);
+        assertEquals(2, batches.size());
+
+        commit(5);
+        relay.relay();
+        assertEquals(Collections.singletonList(5L), retried.get(2));
+        assertEquals(Collections.singletonList(5L), batches.get(2));
+    }
+
+    @Test
+    public void failedListenerIsRetriedAfterAPause() {
+        ReflectionTestUtils.setField(relay, "listenerRetryMs", 60_000L);
+        int[] attempts = {0};
+        listeners.add(events -> {
+            attempts[0]++;
+            throw new IllegalStateException("listener down");
+        });
+        commit(2);
+        relay.relay();
+        commit(3);
+        relay.relay();
+        relay.relay();
+        //the second batch is queued behind the first, neither is tried before the pause is over
+        assertEquals(1, attempts[0]);
+        assertEquals(Arrays.asList(Collections.singletonList(2L), Collections.singletonList(3L)), batches);
+    }
+
+    @Test
+    public void batchIsSkippedForAListenerAfterTheLastAttempt() {
+        List<List<Long>> attempts = new ArrayList<>();
+        listeners.add(events -> {
+            attempts.add(ids(events));
+            if (events.get(0).getId() == 2L) {
+                throw new IllegalStateException("can't apply 2");
+            }
+        });
+        commit(2);
+        commit(3);
+        relay.relay();
+        relay.relay();
+        relay.relay();
+        //three attempts, then the listener goes on with the next batch
+        commit(4);
+        relay.relay();
+        assertEquals(Arrays.asList(Arrays.asList(2L, 3L), Arrays.asList(2L, 3L), Arrays.asList(2L, 3L),
+                Collections.singletonList(4L)), attempts);
+        relay.relay();
+        assertEquals(4, attempts.size());
+    }
+
+    @Test
+    public void fullQueueOfAFailedListenerDropsItsOldestBatch() {
+        ReflectionTestUtils.setField(relay, "listenerAttempts", 100);
+        ReflectionTestUtils.setField(relay, "listenerBacklog", 3);
+        boolean[] down = {true};
+        List<List<Long>> retried = new ArrayList<>();
+        listeners.add(events -> {
+            if (down[0]) {
+                throw new IllegalStateException("listener down");
+            }
+            retried.add(ids(events));
+        });
+        for (long id = 2; id <= 5; id++) {
+            commit(id);
+            relay.relay();
+        }
+        down[0] = false;
+        relay.relay();
+        assertEquals(Arrays.asList(Collections.singletonList(3L), Collections.singletonList(4L),
+                Collections.singletonList(5L)), retried);
+    }
+
+    private static List<Long> ids(List<ChangeEvent> events) {
+        return events.stream().map(ChangeEvent::getId).collect(Collectors.toList());
+    }
+
+    private void commit(long id) {
+        ChangeEvent event = new ChangeEvent(ChangeEvent.EntityType.BOOK, id, ChangeEvent.Operation.UPDATED);
+        ReflectionTestUtils.setField(event, "id", id);
+        visible.put(id, event);
+    }
+}
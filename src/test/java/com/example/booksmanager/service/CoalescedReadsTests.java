@@ -0,0 +1,152 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.config.ReplicationContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * which lookups CoalescedReads shares, against a transaction manager that only counts transactions
+ */
+public class CoalescedReadsTests {
+
+    private static final int THREADS = 8;
+
+    private PlatformTransactionManager transactionManager;
+    private MeterRegistry registry;
+    private CoalescedReads reads;
+    private ExecutorService executor;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        registry = new SimpleMeterRegistry();
+        ObjectProvider<MeterRegistry> meterRegistry = mock(ObjectProvider.class);
+        when(meterRegistry.getIfAvailable()).thenReturn(registry);
+        reads = new CoalescedReads(transactionManager);
+        ReflectionTestUtils.setField(reads, "entityManagerFactory", mock(EntityManagerFactory.class));
+        ReflectionTestUtils.setField(reads, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(reads, "enabled", true);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        ReplicationContext.clear();
+    }
+
+    @Test
+    public void concurrentLookupsShareOneReadOnlyTransaction() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> reads.read("book.findById", 1000L, () -> {
+                loads.incrementAndGet();
+                await(release);
+                return "book";
+            })));
+        }
+        awaitCalls(THREADS);
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("book", result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    public void failedLookupLeavesNothingBehind() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                reads.read("book.findById", 1000L, () -> {
+                    throw new IllegalStateException("gone");
+                });
+                fail("the lookup failed");
+            } catch (IllegalStateException e) {
+                assertEquals("gone", e.getMessage());
+            }
+        }
+        //each attempt ran (and rolled back) a transaction of its own
+        verify(transactionManager, times(2)).rollback(any());
+        assertEquals("book", reads.read("book.findById", 1000L, () -> "book"));
+    }
+
+    @Test
+    public void lookupsInsideATransactionAreNotShared() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        assertEquals("book", reads.read("book.findById", 1000L, () -> "book"));
+        verifyZeroInteractions(transactionManager);
+        assertNull(registry.find("booksmanager.single-flight.calls").counter());
+    }
+
+    @Test
+    public void lookupsReadingOwnWritesAreNotShared() {
+        ReplicationContext.forcePrimary();
+        assertEquals("book", reads.read("book.findById", 1000L, () -> "book"));
+        //still read-only, the routing sends it to the primary
+        verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+        assertNull(registry.find("booksmanager.single-flight.calls").counter());
+    }
+
+    @Test
+    public void lookupsWithSingleFlightDisabledRunInAReadOnlyTransaction() {
+        ReflectionTestUtils.setField(reads, "enabled", false);
+        assertEquals("book", reads.read("book.findById", 1000L, () -> "book"));
+        verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+        verify(transactionManager).commit(any());
+        assertNull(registry.find("booksmanager.single-flight.calls").counter());
+    }
+
+    private void awaitCalls(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (calls("executed") + calls("shared") < count) {
+            assertTrue("lookups didn't arrive", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private double calls(String outcome) {
+        return registry.find("booksmanager.single-flight.calls").tag("outcome", outcome).counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
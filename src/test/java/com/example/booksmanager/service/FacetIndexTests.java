@@ -0,0 +1,127 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.dto.FacetQuery;
+import com.example.booksmanager.dto.FacetResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * queries, counts and order of FacetIndex, filled by put instead of the database
+ */
+public class FacetIndexTests {
+
+    private FacetIndex index;
+
+    @Before
+    public void setUp() {
+        index = new FacetIndex();
+        ReflectionTestUtils.setField(index, "maxAuthorFacets", 2);
+        ReflectionTestUtils.setField(index, "countCacheSize", 10);
+        //book, authors, categories, published
+        index.put(1L, ids(10), ids(100), LocalDate.of(1990, 5, 1));
+        index.put(2L, ids(10, 11), ids(100, 101), LocalDate.of(2001, 3, 1));
+        index.put(3L, ids(11), ids(101), LocalDate.of(2001, 7, 1));
+        index.put(4L, ids(12), ids(100), LocalDate.of(1995, 1, 1));
+        index.put(5L, ids(10), ids(102), null);
+        index.put(6L, ids(13), ids(101), LocalDate.of(2001, 3, 1));
+    }
+
+    @Test
+    public void filtersAreOrWithinAndAcrossFacets() {
+        assertEquals(Arrays.asList(3L, 6L, 2L, 4L, 1L), query(ids(100, 101), null, null, null).getBookIds());
+        assertEquals(Arrays.asList(2L, 1L), query(ids(100), ids(10), null, null).getBookIds());
+        assertEquals(Arrays.asList(3L, 6L, 2L), query(null, null, 2000, 2010).getBookIds());
+        assertEquals(Collections.emptyList(), query(ids(102), null, 2000, null).getBookIds());
+        assertEquals(0, query(null, null, 2010, 2000).getTotal());
+    }
+
+    @Test
+    public void countsIgnoreTheFilterOfTheirOwnFacet() {
+        FacetResult result = query(ids(100), ids(10), null, null);
+        assertEquals(2, result.getTotal());
+        //categories of the books by author 10, authors of the books in category 100
+        assertEquals(Integer.valueOf(2), result.getCategoryCounts().get(100L));
+        assertEquals(Integer.valueOf(1), result.getCategoryCounts().get(101L));
+        assertEquals(Integer.valueOf(1), result.getCategoryCounts().get(102L));
+        assertEquals(Integer.valueOf(2), result.getAuthorCounts().get(10L));
+        //years of the books in category 100 by author 10
+        assertEquals(Integer.valueOf(1), result.getYearCounts().get(1990));
+        assertEquals(Integer.valueOf(1), result.getYearCounts().get(2001));
+        assertFalse(result.getYearCounts().containsKey(1995));
+    }
+
+    @Test
+    public void authorCountsAreTheTopN() {
+        FacetResult result = query(null, null, null, null);
+        assertEquals(6, result.getTotal());
+        assertEquals(Arrays.asList(10L, 11L), new ArrayList<>(result.getAuthorCounts().keySet()));
+        assertEquals(Integer.valueOf(3), result.getAuthorCounts().get(10L));
+        assertEquals(Integer.valueOf(3), result.getCategoryCounts().get(101L));
+        assertEquals(Integer.valueOf(3), result.getYearCounts().get(2001));
+    }
+
+    @Test
+    public void pagesAreOrderedByPublicationDate() {
+        //2001-07, 2001-03 (6 before 2), 1995, 1990, then the book without a date
+        List<Long> all = query(null, null, null, null).getBookIds();
+        assertEquals(Arrays.asList(3L, 6L, 2L, 4L, 1L, 5L), all);
+        for (int offset = 0; offset <= all.size(); offset++) {
+            for (int limit = 1; limit <= 3; limit++) {
+                List<Long> page = index.query(new FacetQuery(null, null, null, null), offset, limit).getBookIds();
+                assertEquals("offset " + offset + " limit " + limit,
+                        all.subList(offset, Math.min(all.size(), offset + limit)), page);
+            }
+        }
+    }
+
+    @Test
+    public void putMovesABookAndRemoveTakesItOut() {
+        index.put(1L, ids(13), ids(101), LocalDate.of(2005, 1, 1));
+        assertEquals(Arrays.asList(1L, 3L, 6L, 2L), query(ids(101), null, null, null).getBookIds());
+        assertEquals(Collections.singletonList(2L), query(ids(100), ids(10), null, null).getBookIds());
+        assertFalse(query(null, null, null, null).getYearCounts().containsKey(1990));
+
+        index.remove(1L);
+        index.remove(42L);
+        FacetResult result = query(null, null, null, null);
+        assertEquals(Arrays.asList(3L, 6L, 2L, 4L, 5L), result.getBookIds());
+        assertEquals(Integer.valueOf(2), result.getAuthorCounts().get(10L));
+        assertEquals(Integer.valueOf(3), result.getCategoryCounts().get(101L));
+        assertFalse(result.getYearCounts().containsKey(2005));
+    }
+
+    @Test
+    public void cachedCountsAreDroppedByAChange() {
+        FacetResult before = query(null, ids(10), null, null);
+        assertSame(before.getCategoryCounts(), query(null, ids(10), null, null).getCategoryCounts());
+        assertEquals(Integer.valueOf(1), before.getCategoryCounts().get(102L));
+
+        index.put(7L, ids(10), ids(102), LocalDate.of(2010, 1, 1));
+        FacetResult after = query(null, ids(10), null, null);
+        assertEquals(Integer.valueOf(2), after.getCategoryCounts().get(102L));
+        assertEquals(Long.valueOf(7L), after.getBookIds().get(0));
+    }
+
+    private FacetResult query(Set<Long> categoryIds, Set<Long> authorIds, Integer fromYear, Integer toYear) {
+        return index.query(new FacetQuery(categoryIds, authorIds, fromYear, toYear), 0, 100);
+    }
+
+    private static Set<Long> ids(long... ids) {
+        Set<Long> set = new HashSet<>();
+        for (long id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.exception.ConcurrentUpdateException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import javax.persistence.OptimisticLockException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * retries of OptimisticRetry against a transaction manager that only counts commits and rollbacks
+ */
+public class OptimisticRetryTests {
+
+    private PlatformTransactionManager transactionManager;
+    private OptimisticRetry retry;
+
+    @Before
+    public void setUp() {
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        retry = new OptimisticRetry(transactionManager);
+        ReflectionTestUtils.setField(retry, "attempts", 3);
+    }
+
+    @Test
+    public void retriesAfterVersionConflicts() {
+        AtomicInteger calls = new AtomicInteger();
+        String result = retry.run(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new OptimisticLockException("changed");
+            }
+            return "written";
+        });
+
+        assertEquals("written", result);
+        assertEquals(3, calls.get());
+        verify(transactionManager, times(2)).rollback(any());
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    public void givesUpAfterTheLastAttempt() {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            retry.run(() -> {
+                calls.incrementAndGet();
+                OptimisticRetry.checkUpdated(new int[]{1, 0}, "book");
+            });
+            fail("expected ConcurrentUpdateException");
+        } catch (ConcurrentUpdateException e) {
+            assertTrue(e.getCause() instanceof OptimisticLockingFailureException);
+        }
+        assertEquals(3, calls.get());
+        verify(transactionManager, never()).commit(any());
+    }
+
+    @Test
+    public void otherFailuresAreNotRetried() {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            retry.run(() -> {
+                calls.incrementAndGet();
+                throw new IllegalStateException("broken");
+            });
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void batchCountsWithoutConflict() {
+        //-2 is Statement.SUCCESS_NO_INFO of drivers that rewrite batches
+        OptimisticRetry.checkUpdated(new int[]{1, 1, -2}, "book");
+    }
+}
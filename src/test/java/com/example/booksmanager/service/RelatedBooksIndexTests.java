@@ -0,0 +1,148 @@
+package com.example.booksmanager.service;
+
+import com.example.booksmanager.domain.ChangeEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * rows of RelatedBooksIndex after batches of changes, against the rows of an index built afresh
+ * from the same graph; small k, so the rows are cut off
+ */
+public class RelatedBooksIndexTests {
+
+    private static final long[] BOOKS = {1, 2, 3, 4, 5, 6, 7, 8};
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CatalogGraph graph;
+    private RelatedBooksIndex index;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE books (book_id BIGINT PRIMARY KEY, description CLOB)");
+        jdbcTemplate.execute("CREATE TABLE authors (author_id BIGINT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE categories (category_id BIGINT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE books_authors (book_id BIGINT, author_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE books_categories (book_id BIGINT, category_id BIGINT)");
+        jdbcTemplate.update("INSERT INTO books (book_id) VALUES (1), (2), (3), (4), (5), (6)");
+        jdbcTemplate.update("INSERT INTO authors VALUES (10), (11), (12), (13)");
+        jdbcTemplate.update("INSERT INTO categories VALUES (20), (21), (22)");
+        jdbcTemplate.update("INSERT INTO books_authors VALUES (1, 10), (2, 10), (3, 11), (4, 11), (4, 12), (5, 12), (6, 10)");
+        jdbcTemplate.update("INSERT INTO books_categories VALUES (1, 20), (2, 20), (2, 21), (3, 21), (4, 22), (5, 20),"
+                + " (5, 21), (6, 22)");
+
+        graph = new CatalogGraph();
+        ReflectionTestUtils.setField(graph, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(graph, "meterRegistry", mock(ObjectProvider.class));
+        graph.load();
+        index = index();
+        index.rebuild();
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void builtRowsListTheBooksSharingAnAuthorOrACategory() {
+        assertEquals(Arrays.asList(2L, 6L, 5L), index.related(1L));
+        //no shared author or category
+        assertFalse(index.related(3L).contains(1L));
+        assertEquals(Collections.emptyList(), index.related(42L));
+    }
+
+    @Test
+    public void updatedBooksAreMovedInTheRowsOfTheirOldAndNewNeighbours() {
+        //2 moves from author 10 to 11, 5 leaves category 21, 6 joins category 20, 7 and 8 are new
+        jdbcTemplate.update("UPDATE books_authors SET author_id = 11 WHERE book_id = 2");
+        jdbcTemplate.update("DELETE FROM books_categories WHERE book_id = 5 AND category_id = 21");
+        jdbcTemplate.update("INSERT INTO books_categories VALUES (6, 20)");
+        jdbcTemplate.update("INSERT INTO books (book_id) VALUES (7), (8)");
+        jdbcTemplate.update("INSERT INTO books_authors VALUES (7, 12), (8, 13)");
+        jdbcTemplate.update("INSERT INTO books_categories VALUES (7, 20), (8, 21)");
+        apply(updated(2L), updated(5L), updated(6L), created(7L), created(8L));
+
+        assertRowsOfAFreshBuild();
+        assertTrue(index.related(3L).contains(2L));
+        assertTrue(index.related(8L).contains(3L));
+    }
+
+    @Test
+    public void deletedBooksAreDroppedFromAllRows() {
+        jdbcTemplate.update("DELETE FROM books_authors WHERE book_id IN (1, 4)");
+        jdbcTemplate.update("DELETE FROM books_categories WHERE book_id IN (1, 4)");
+        jdbcTemplate.update("DELETE FROM books WHERE book_id IN (1, 4)");
+        apply(deleted(1L), deleted(4L));
+
+        assertRowsOfAFreshBuild();
+        assertEquals(Collections.emptyList(), index.related(1L));
+        for (long book : BOOKS) {
+            assertFalse(index.related(book).contains(1L));
+            assertFalse(index.related(book).contains(4L));
+        }
+
+        //a deleted position is taken by the next new book
+        jdbcTemplate.update("INSERT INTO books (book_id) VALUES (7)");
+        jdbcTemplate.update("INSERT INTO books_authors VALUES (7, 10)");
+        jdbcTemplate.update("INSERT INTO books_categories VALUES (7, 22)");
+        apply(created(7L));
+        assertRowsOfAFreshBuild();
+    }
+
+    private void assertRowsOfAFreshBuild() {
+        RelatedBooksIndex fresh = index();
+        fresh.rebuild();
+        for (long book : BOOKS) {
+            assertEquals("book " + book, fresh.related(book), index.related(book));
+        }
+    }
+
+    /**
+     * delivers the batch as the relay does: the graph first
+     */
+    private void apply(ChangeEvent... events) {
+        List<ChangeEvent> batch = Arrays.asList(events);
+        graph.onChanges(batch);
+        index.onChanges(batch);
+    }
+
+    private RelatedBooksIndex index() {
+        RelatedBooksIndex related = new RelatedBooksIndex();
+        ReflectionTestUtils.setField(related, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(related, "catalogGraph", graph);
+        ReflectionTestUtils.setField(related, "k", 3);
+        ReflectionTestUtils.setField(related, "authorWeight", 3.0);
+        ReflectionTestUtils.setField(related, "categoryWeight", 1.0);
+        ReflectionTestUtils.setField(related, "maxGroupSize", 1000);
+        return related;
+    }
+
+    private static ChangeEvent created(long bookId) {
+        return new ChangeEvent(ChangeEvent.EntityType.BOOK, bookId, ChangeEvent.Operation.CREATED);
+    }
+
+    private static ChangeEvent updated(long bookId) {
+        return new ChangeEvent(ChangeEvent.EntityType.BOOK, bookId, ChangeEvent.Operation.UPDATED);
+    }
+
+    private static ChangeEvent deleted(long bookId) {
+        return new ChangeEvent(ChangeEvent.EntityType.BOOK, bookId, ChangeEvent.Operation.DELETED);
+    }
+}
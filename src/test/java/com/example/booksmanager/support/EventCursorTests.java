@@ -0,0 +1,80 @@
+package com.example.booksmanager.support;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * positions of EventCursor for events committed out of id order, on instants given by the test
+ */
+public class EventCursorTests {
+
+    private static final long GRACE = 1_000;
+
+    @Test
+    public void eventsInOrderMoveThePosition() {
+        EventCursor cursor = new EventCursor(10, GRACE);
+        cursor.delivered(11, 0);
+        cursor.delivered(12, 0);
+        assertEquals(12, cursor.position());
+        assertEquals(12, cursor.highest());
+        assertFalse(cursor.hasGaps());
+        //already delivered, e.g. when the batch is read again
+        cursor.delivered(12, 0);
+        cursor.delivered(5, 0);
+        assertEquals(12, cursor.position());
+    }
+
+    @Test
+    public void laterCommitOfALowerIdLeavesAGapThatFillsIn() {
+        EventCursor cursor = new EventCursor(10, GRACE);
+        cursor.delivered(11, 0);
+        //12 and 13 are inserted, 13 commits first
+        cursor.delivered(13, 0);
+        assertEquals(11, cursor.position());
+        assertEquals(13, cursor.highest());
+        assertTrue(cursor.hasGaps());
+        assertTrue(cursor.isPending(12));
+        assertFalse(cursor.isPending(13));
+        assertFalse(cursor.isPending(11));
+
+        cursor.settle(GRACE - 1);
+        assertEquals(11, cursor.position());
+        cursor.delivered(12, GRACE - 1);
+        assertEquals(13, cursor.position());
+        assertFalse(cursor.hasGaps());
+    }
+
+    @Test
+    public void gapIsGivenUpAfterTheGracePeriod() {
+        EventCursor cursor = new EventCursor(10, GRACE);
+        //12 was rolled back
+        cursor.delivered(11, 0);
+        cursor.delivered(13, 100);
+        cursor.delivered(15, 500);
+        cursor.settle(100 + GRACE - 1);
+        assertEquals(11, cursor.position());
+
+        cursor.settle(100 + GRACE);
+        //the gap below 15 is younger
+        assertEquals(13, cursor.position());
+        assertTrue(cursor.isPending(14));
+        assertFalse(cursor.isPending(12));
+
+        cursor.delivered(14, 600);
+        assertEquals(15, cursor.position());
+        assertFalse(cursor.hasGaps());
+    }
+
+    @Test
+    public void eachGapIsTimedFromTheEventAboveIt() {
+        EventCursor cursor = new EventCursor(10, GRACE);
+        cursor.delivered(12, 0);
+        cursor.delivered(14, 800);
+        cursor.settle(GRACE);
+        assertEquals(12, cursor.position());
+        assertTrue(cursor.isPending(13));
+        cursor.settle(800 + GRACE);
+        assertEquals(14, cursor.position());
+    }
+}
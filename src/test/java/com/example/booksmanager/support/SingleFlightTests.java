@@ -0,0 +1,137 @@
+package com.example.booksmanager.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * concurrent calls of one key: one execution, its result or its exception for all of them
+ */
+public class SingleFlightTests {
+
+    private static final int THREADS = 8;
+
+    private MeterRegistry registry;
+    private SingleFlight<String, String> flight;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        flight = new SingleFlight<>("test", registry);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void stopThreads() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void concurrentCallsOfAKeyShareOneExecution() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = submitAll(() -> flight.execute("key", () -> {
+            loads.incrementAndGet();
+            await(release);
+            return "value";
+        }));
+        awaitCalls(THREADS);
+        assertEquals(1, flight.inFlight());
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("value", result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(0, flight.inFlight());
+        assertEquals(THREADS - 1, calls("shared"), 0);
+
+        //nothing is kept: the next call runs again
+        assertEquals("again", flight.execute("key", () -> "again"));
+    }
+
+    @Test
+    public void exceptionOfTheExecutionReachesAllCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = submitAll(() -> flight.execute("key", () -> {
+            await(release);
+            throw new IllegalArgumentException("no such key");
+        }));
+        awaitCalls(THREADS);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail("the call failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+                assertEquals("no such key", e.getCause().getMessage());
+            }
+        }
+        assertEquals(0, flight.inFlight());
+        assertEquals("value", flight.execute("key", () -> "value"));
+    }
+
+    @Test
+    public void differentKeysDontWaitForEachOther() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> blocked = executor.submit(() -> flight.execute("slow", () -> {
+            await(release);
+            return "slow";
+        }));
+        awaitCalls(1);
+        assertEquals("fast", flight.execute("fast", () -> "fast"));
+        release.countDown();
+        assertEquals("slow", blocked.get(10, TimeUnit.SECONDS));
+        assertEquals(2, calls("executed"), 0);
+    }
+
+    private List<Future<String>> submitAll(Callable<String> call) {
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(call));
+        }
+        return results;
+    }
+
+    /**
+     * the counters are incremented before a call runs or waits
+     */
+    private void awaitCalls(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (calls("executed") + calls("shared") < count) {
+            assertTrue("calls didn't arrive", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private double calls(String outcome) {
+        return registry.get("booksmanager.single-flight.calls").tag("outcome", outcome).counter().count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.booksmanager.support;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * burst, refill and waits of TokenBucket, on instants given by the test
+ */
+public class TokenBucketTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    //close to the overflow of System.nanoTime(), which the bucket only ever compares by difference
+    private static final long START = Long.MAX_VALUE - SECOND;
+
+    @Test
+    public void fullBucketAllowsTheBurstAndThenTheWait() {
+        TokenBucket bucket = new TokenBucket(3, 2, START);
+        assertEquals(0, bucket.tryTake(1, START));
+        assertEquals(0, bucket.tryTake(1, START));
+        assertEquals(0, bucket.tryTake(1, START));
+        //one token comes every half second
+        assertEquals(SECOND / 2, bucket.tryTake(1, START));
+        assertEquals(SECOND, bucket.tryTake(2, START));
+        assertFalse(bucket.isFull(START));
+    }
+
+    @Test
+    public void tokensComeBackAtTheRate() {
+        TokenBucket bucket = new TokenBucket(3, 2, START);
+        assertEquals(0, bucket.tryTake(3, START));
+        assertEquals(SECOND / 4, bucket.tryTake(1, START + SECOND / 4));
+        assertEquals(0, bucket.tryTake(1, START + SECOND / 2));
+        assertTrue(bucket.tryTake(1, START + SECOND / 2) > 0);
+        //a second later two more tokens, not more than capacity after a long pause
+        assertEquals(0, bucket.tryTake(2, START + 3 * SECOND / 2));
+        assertFalse(bucket.isFull(START + 2 * SECOND));
+        assertTrue(bucket.isFull(START + 3 * SECOND));
+        long later = START + 60 * SECOND;
+        assertEquals(0, bucket.tryTake(3, later));
+        assertEquals(SECOND / 2, bucket.tryTake(1, later));
+    }
+
+    @Test
+    public void refusedRequestsTakeNothing() {
+        TokenBucket bucket = new TokenBucket(1, 1, START);
+        assertEquals(0, bucket.tryTake(1, START));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(SECOND, bucket.tryTake(1, START));
+        }
+        assertEquals(0, bucket.tryTake(1, START + SECOND));
+    }
+
+    @Test
+    public void requestsAboveCapacityCostTheWholeBucket() {
+        TokenBucket bucket = new TokenBucket(2, 1, START);
+        assertEquals(0, bucket.tryTake(5, START));
+        assertEquals(SECOND, bucket.tryTake(1, START));
+    }
+}